@@ -0,0 +1,106 @@
+/*
+ * *************************************************************************************************************************************************************
+ *
+ * MapView: a JavaFX map renderer for tile-based servers
+ * http://tidalwave.it/projects/mapview
+ *
+ * Copyright (C) 2024 - 2025 by Tidalwave s.a.s. (http://tidalwave.it)
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.  See the License for the specific language governing permissions and limitations under the License.
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * git clone https://bitbucket.org/tidalwave/mapview-src
+ * git clone https://github.com/tidalwave-it/mapview-src
+ *
+ * *************************************************************************************************************************************************************
+ */
+package it.tidalwave.mapview.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import it.tidalwave.mapview.MapArea;
+import it.tidalwave.mapview.MapCoordinates;
+import it.tidalwave.mapview.OpenStreetMapTileSource;
+import it.tidalwave.mapview.impl.MapViewModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/***************************************************************************************************************************************************************
+ *
+ * Benchmarks of {@link MapViewModel}, whose methods are called by the JavaFX thread at every step of a drag or a zoom.
+ *
+ * @author  Fabrizio Giudici
+ *
+ **************************************************************************************************************************************************************/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1) @Measurement(iterations = 5, time = 1) @Fork(1)
+public class MapViewModelBenchmark
+  {
+    private static final MapCoordinates CENTER = MapCoordinates.of(44.4056, 8.9463);
+
+    /** An area about as large as a long hike, so the fitting zoom is found after a few attempts. */
+    private static final MapArea AREA = MapArea.of(44.52, 9.10, 44.31, 8.78);
+
+    /** The size of the view: a laptop screen and a 4K one. */
+    @Param({"1280x800", "3840x2160"})
+    public String viewSize;
+
+    private final MapViewModel model = new MapViewModel(new OpenStreetMapTileSource());
+
+    /**********************************************************************************************************************************************************/
+    @Setup
+    public void setup()
+      {
+        final var size = viewSize.split("x");
+        model.updateGridSize(Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+        model.setCenterAndZoom(CENTER, 12);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Benchmark
+    public MapViewModel recompute()
+      {
+        model.recompute();
+        return model;
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Benchmark
+    public void iterateOnGrid (final Blackhole blackhole)
+      {
+        model.iterateOnGrid((gridColumn, gridRow, key) -> blackhole.consume(key));
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Benchmark
+    public void iterateOnGridWithUris (final Blackhole blackhole)
+      {
+        model.iterateOnGrid((tilePos, uri) -> blackhole.consume(uri));
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Benchmark
+    public int computeFittingZoom()
+      {
+        return model.computeFittingZoom(AREA);
+      }
+  }
@@ -0,0 +1,96 @@
+/*
+ * *************************************************************************************************************************************************************
+ *
+ * MapView: a JavaFX map renderer for tile-based servers
+ * http://tidalwave.it/projects/mapview
+ *
+ * Copyright (C) 2024 - 2025 by Tidalwave s.a.s. (http://tidalwave.it)
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.  See the License for the specific language governing permissions and limitations under the License.
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * git clone https://bitbucket.org/tidalwave/mapview-src
+ * git clone https://github.com/tidalwave-it/mapview-src
+ *
+ * *************************************************************************************************************************************************************
+ */
+package it.tidalwave.mapview.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import it.tidalwave.mapview.OpenStreetMapTileSource;
+import it.tidalwave.mapview.impl.CRC16;
+import it.tidalwave.mapview.impl.NameMangler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/***************************************************************************************************************************************************************
+ *
+ * Benchmarks of {@link NameMangler#mangle(String)} and {@link CRC16#crc16(String)}, which compute the path of every tile looked up in the disk cache.
+ *
+ * @author  Fabrizio Giudici
+ *
+ **************************************************************************************************************************************************************/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1) @Measurement(iterations = 5, time = 1) @Fork(1)
+public class NameManglerBenchmark
+  {
+    /** The number of URLs, as many as the tiles of a large grid. */
+    private static final int URL_COUNT = 256;
+
+    private final String[] urls = new String[URL_COUNT];
+
+    private final String[] paths = new String[URL_COUNT];
+
+    /**********************************************************************************************************************************************************/
+    @Setup
+    public void setup()
+      {
+        final var tileSource = new OpenStreetMapTileSource();
+
+        for (int i = 0; i < URL_COUNT; i++)
+          {
+            urls[i] = tileSource.getTileUri(8_000 + i % 16, 5_000 + i / 16, 14).toString();
+            paths[i] = NameMangler.mangle(urls[i]).substring("ab/cd/".length()); // the string whose CRC is computed
+          }
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Benchmark @OperationsPerInvocation(URL_COUNT)
+    public void mangle (final Blackhole blackhole)
+      {
+        for (final var url : urls)
+          {
+            blackhole.consume(NameMangler.mangle(url));
+          }
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Benchmark @OperationsPerInvocation(URL_COUNT)
+    public void crc16 (final Blackhole blackhole)
+      {
+        for (final var path : paths)
+          {
+            blackhole.consume(CRC16.crc16(path));
+          }
+      }
+  }
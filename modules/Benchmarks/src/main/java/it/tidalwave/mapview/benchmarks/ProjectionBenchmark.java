@@ -0,0 +1,150 @@
+/*
+ * *************************************************************************************************************************************************************
+ *
+ * MapView: a JavaFX map renderer for tile-based servers
+ * http://tidalwave.it/projects/mapview
+ *
+ * Copyright (C) 2024 - 2025 by Tidalwave s.a.s. (http://tidalwave.it)
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.  See the License for the specific language governing permissions and limitations under the License.
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * git clone https://bitbucket.org/tidalwave/mapview-src
+ * git clone https://github.com/tidalwave-it/mapview-src
+ *
+ * *************************************************************************************************************************************************************
+ */
+package it.tidalwave.mapview.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import it.tidalwave.mapview.MapCoordinates;
+import it.tidalwave.mapview.spi.WGS84PseudoMercatorProjection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.Blackhole;
+
+/***************************************************************************************************************************************************************
+ *
+ * Benchmarks of the batch conversions of {@link WGS84PseudoMercatorProjection}, comparing the scalar and the vectorized kernels, as well as the
+ * conversion of points one at a time. The kernel is selected at class initialization, so each flavour runs in a fork with its own JVM options. The
+ * vectorized flavour requires MapView to be built with the {@code vector-kernel} profile: otherwise it fails, rather than silently measuring the scalar
+ * kernel.
+ *
+ * @author  Fabrizio Giudici
+ *
+ **************************************************************************************************************************************************************/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1) @Measurement(iterations = 5, time = 1)
+public class ProjectionBenchmark
+  {
+    private static final String SCALAR = "-D" + WGS84PseudoMercatorProjection.PROP_VECTORIZED + "=false";
+
+    private static final String VECTORIZED = "--add-modules=jdk.incubator.vector";
+
+    private static final int ZOOM = 15;
+
+    /** The number of points in a batch: a short track and a long one (processed in parallel chunks). */
+    @Param({"1000", "200000"})
+    public int size;
+
+    private final WGS84PseudoMercatorProjection projection = new WGS84PseudoMercatorProjection(256);
+
+    private double[] latitudes;
+
+    private double[] longitudes;
+
+    private double[] xs;
+
+    private double[] ys;
+
+    private double[] outputs1;
+
+    private double[] outputs2;
+
+    /**********************************************************************************************************************************************************/
+    @Setup
+    public void setup (final BenchmarkParams params)
+      {
+        final var vectorizedExpected = params.getJvmArgs().contains(VECTORIZED);
+
+        if (projection.isVectorized() != vectorizedExpected)
+          {
+            throw new IllegalStateException(String.format("%s expects the %s kernel, but %s is in use (was MapView built with -Pvector-kernel?)",
+                                                          params.getBenchmark(),
+                                                          vectorizedExpected ? "vectorized" : "scalar",
+                                                          projection.isVectorized() ? "vectorized" : "scalar"));
+          }
+
+        final var random = new Random(size);
+        latitudes = random.doubles(size, -85, 85).toArray();
+        longitudes = random.doubles(size, -180, 180).toArray();
+        xs = new double[size];
+        ys = new double[size];
+        outputs1 = new double[size];
+        outputs2 = new double[size];
+        projection.coordinatesToMapPoints(latitudes, longitudes, ZOOM, xs, ys);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Benchmark @Fork(value = 1, jvmArgsAppend = SCALAR)
+    public void forwardOneByOne (final Blackhole blackhole)
+      {
+        for (int i = 0; i < size; i++)
+          {
+            blackhole.consume(projection.coordinatesToMapPoint(MapCoordinates.of(latitudes[i], longitudes[i]), ZOOM));
+          }
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Benchmark @Fork(value = 1, jvmArgsAppend = SCALAR)
+    public double[] forwardScalar()
+      {
+        projection.coordinatesToMapPoints(latitudes, longitudes, ZOOM, outputs1, outputs2);
+        return outputs1;
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Benchmark @Fork(value = 1, jvmArgsAppend = VECTORIZED)
+    public double[] forwardVectorized()
+      {
+        projection.coordinatesToMapPoints(latitudes, longitudes, ZOOM, outputs1, outputs2);
+        return outputs1;
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Benchmark @Fork(value = 1, jvmArgsAppend = SCALAR)
+    public double[] inverseScalar()
+      {
+        projection.mapPointsToCoordinates(xs, ys, ZOOM, outputs1, outputs2);
+        return outputs1;
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Benchmark @Fork(value = 1, jvmArgsAppend = VECTORIZED)
+    public double[] inverseVectorized()
+      {
+        projection.mapPointsToCoordinates(xs, ys, ZOOM, outputs1, outputs2);
+        return outputs1;
+      }
+  }
@@ -0,0 +1,228 @@
+/*
+ * *************************************************************************************************************************************************************
+ *
+ * MapView: a JavaFX map renderer for tile-based servers
+ * http://tidalwave.it/projects/mapview
+ *
+ * Copyright (C) 2024 - 2025 by Tidalwave s.a.s. (http://tidalwave.it)
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.  See the License for the specific language governing permissions and limitations under the License.
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * git clone https://bitbucket.org/tidalwave/mapview-src
+ * git clone https://github.com/tidalwave-it/mapview-src
+ *
+ * *************************************************************************************************************************************************************
+ */
+package it.tidalwave.mapview.benchmarks;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import it.tidalwave.mapview.OpenStreetMapTileSource;
+import it.tidalwave.mapview.TileSource;
+import it.tidalwave.mapview.impl.AbstractTile;
+import it.tidalwave.mapview.impl.NameMangler;
+import it.tidalwave.mapview.impl.TileCache;
+import it.tidalwave.mapview.impl.TileKey;
+import it.tidalwave.mapview.javafx.MapView;
+import lombok.Getter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/***************************************************************************************************************************************************************
+ *
+ * Benchmarks of {@link TileCache#loadTileInBackground(AbstractTile)} when tiles are in the memory cache, which is what happens for most of the tiles at
+ * every step of a drag. The memory cache is primed through the disk cache, which is filled with placeholder files in a temporary folder; downloads are
+ * disabled and tiles don't decode images, so neither the network nor JavaFX are needed.
+ *
+ * @author  Fabrizio Giudici
+ *
+ **************************************************************************************************************************************************************/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1) @Measurement(iterations = 5, time = 1) @Fork(1)
+public class TileCacheBenchmark
+  {
+    /** The side of the square of tiles, as large as the grid of a big screen; they must fit in the default memory cache budget. */
+    private static final int SIDE = 16;
+
+    private static final int ZOOM = 14;
+
+    private static final long PRIMING_TIMEOUT = TimeUnit.SECONDS.toNanos(30);
+
+    /***********************************************************************************************************************************************************
+     * A tile that doesn't decode images, but just keeps track of the last bitmap it was given.
+     **********************************************************************************************************************************************************/
+    @Getter
+    static class BenchmarkTile implements AbstractTile
+      {
+        @Nonnull
+        private final TileSource source;
+
+        private final int zoom;
+
+        private final int column;
+
+        private final int row;
+
+        private final long key;
+
+        @Nonnull
+        private final URI uri;
+
+        @Nullable
+        private Object bitmap;
+
+        BenchmarkTile (@Nonnull final TileSource source, final int zoom, final int column, final int row)
+          {
+            this.source = source;
+            this.zoom = zoom;
+            this.column = column;
+            this.row = row;
+            this.key = TileKey.of(source, zoom, column, row);
+            this.uri = source.getTileUri(column, row, zoom);
+          }
+
+        @Override @Nonnull
+        public Optional<Object> setImageByPath (@Nullable final Path imagePath)
+          {
+            return Optional.ofNullable(imagePath).map(Path::toString);
+          }
+
+        @Override
+        public void setImageByBitmap (@Nullable final Object bitmap)
+          {
+            this.bitmap = bitmap;
+          }
+
+        @Override
+        public void setPlaceholderBitmap (@Nonnull final Object bitmap, final double x, final double y, final double size)
+          {
+            this.bitmap = bitmap;
+          }
+
+        @Override @Nonnull
+        public Optional<Object> decodeBitmap (@Nonnull final Path imagePath)
+          {
+            return Optional.empty();
+          }
+
+        @Override @Nonnull
+        public Object composeBitmap (@Nonnull final Object[] quadrants)
+          {
+            return quadrants[0];
+          }
+      }
+
+    private final List<BenchmarkTile> tiles = new ArrayList<>();
+
+    private Path cacheFolder;
+
+    private TileCache tileCache;
+
+    /**********************************************************************************************************************************************************/
+    @Setup
+    public void setup()
+            throws IOException, InterruptedException
+      {
+        final var tileSource = new OpenStreetMapTileSource();
+        cacheFolder = Files.createTempDirectory("mapview-benchmark-");
+
+        for (int row = 5_000; row < 5_000 + SIDE; row++)
+          {
+            for (int column = 8_000; column < 8_000 + SIDE; column++)
+              {
+                final var tile = new BenchmarkTile(tileSource, ZOOM, column, row);
+                final var path = cacheFolder.resolve(tileSource.getCachePrefix()).resolve(NameMangler.mangle(tile.getUri().toString()));
+                Files.createDirectories(path.getParent());
+                Files.write(path, new byte[0]);
+                tiles.add(tile);
+              }
+          }
+
+        tileCache = new TileCache(MapView.options().withCacheFolder(cacheFolder).withDownloadAllowed(false).withWaitingImage(() -> null));
+        primeMemoryCache();
+      }
+
+    /**********************************************************************************************************************************************************/
+    @TearDown
+    public void tearDown()
+            throws IOException
+      {
+        tileCache.dispose();
+
+        try (final var stream = Files.walk(cacheFolder))
+          {
+            for (final var path : stream.sorted(Comparator.reverseOrder()).toList())
+              {
+                Files.delete(path);
+              }
+          }
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Benchmark @OperationsPerInvocation(SIDE * SIDE)
+    public void loadTileInBackgroundFromMemory()
+      {
+        for (final var tile : tiles)
+          {
+            tileCache.loadTileInBackground(tile);
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * Loads tiles until all of them are served by the memory cache. A hit sets the bitmap at once, while a miss sets the waiting image (here
+     * {@code null}) and loads the tile from the disk cache in background, which puts it into the memory cache.
+     **********************************************************************************************************************************************************/
+    private void primeMemoryCache()
+            throws InterruptedException
+      {
+        final var deadline = System.nanoTime() + PRIMING_TIMEOUT;
+        var misses = tiles.size();
+
+        while (misses > 0)
+          {
+            if (System.nanoTime() > deadline)
+              {
+                throw new IllegalStateException("Tiles not in the memory cache: " + misses);
+              }
+
+            Thread.sleep(10);
+            misses = 0;
+
+            for (final var tile : tiles)
+              {
+                tileCache.loadTileInBackground(tile);
+                misses += (tile.getBitmap() == null) ? 1 : 0;
+              }
+          }
+      }
+  }
@@ -0,0 +1,74 @@
+/*
+ * *************************************************************************************************************************************************************
+ *
+ * MapView: a JavaFX map renderer for tile-based servers
+ * http://tidalwave.it/projects/mapview
+ *
+ * Copyright (C) 2024 - 2025 by Tidalwave s.a.s. (http://tidalwave.it)
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.  See the License for the specific language governing permissions and limitations under the License.
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * git clone https://bitbucket.org/tidalwave/mapview-src
+ * git clone https://github.com/tidalwave-it/mapview-src
+ *
+ * *************************************************************************************************************************************************************
+ */
+package it.tidalwave.mapview.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import it.tidalwave.mapview.OpenStreetMapTileSource;
+import it.tidalwave.mapview.TileSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/***************************************************************************************************************************************************************
+ *
+ * Benchmarks of {@link OpenStreetMapTileSource#getTileUri(int, int, int)}, which is called for each tile that isn't in the memory cache.
+ *
+ * @author  Fabrizio Giudici
+ *
+ **************************************************************************************************************************************************************/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1) @Measurement(iterations = 5, time = 1) @Fork(1)
+public class TileSourceBenchmark
+  {
+    /** The side of the square of tiles, as large as the grid of a big screen. */
+    private static final int SIDE = 16;
+
+    private static final int ZOOM = 14;
+
+    private final TileSource tileSource = new OpenStreetMapTileSource();
+
+    /**********************************************************************************************************************************************************/
+    @Benchmark @OperationsPerInvocation(SIDE * SIDE)
+    public void getTileUri (final Blackhole blackhole)
+      {
+        for (int row = 5_000; row < 5_000 + SIDE; row++)
+          {
+            for (int column = 8_000; column < 8_000 + SIDE; column++)
+              {
+                blackhole.consume(tileSource.getTileUri(column, row, ZOOM));
+              }
+          }
+      }
+  }
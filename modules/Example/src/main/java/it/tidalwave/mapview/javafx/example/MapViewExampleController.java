@@ -26,6 +26,7 @@
 package it.tidalwave.mapview.javafx.example;
 
 import jakarta.annotation.Nonnull;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
@@ -174,7 +175,7 @@ public class MapViewExampleController
     @SuppressFBWarnings("RV_RETURN_VALUE_IGNORED_BAD_PRACTICE")
     public void renderTrack()
       {
-        record PointsAndArea(List<WayPoint> points, MapArea area) {}
+        record PointsAndArea(double[] latitudes, double[] longitudes, MapArea area) {}
 
         final var task = new Task<PointsAndArea>()
           {
@@ -185,7 +186,9 @@ public class MapViewExampleController
                 final var points = track.segments().flatMap(TrackSegment::points).toList();
                 final var area = computeFitArea(points);
                 log.info("track with {} points, fit area: {}", points.size(), area);
-                return new PointsAndArea(points, area);
+                final var latitudes = points.stream().mapToDouble(wp -> wp.getLatitude().doubleValue()).toArray();
+                final var longitudes = points.stream().mapToDouble(wp -> wp.getLongitude().doubleValue()).toArray();
+                return new PointsAndArea(latitudes, longitudes, area);
               }
           };
 
@@ -195,8 +198,7 @@ public class MapViewExampleController
               {
                 final var pointsAndArea = task.get();
                 mapView.removeOverlay(TRACK_OVERLAY_NAME);
-                mapView.addOverlay(TRACK_OVERLAY_NAME, helper ->
-                        helper.addAll(pointsAndArea.points.stream().map(wp -> createPoint(helper, wp)).toList()));
+                mapView.addOverlay(TRACK_OVERLAY_NAME, helper -> helper.addAll(createPoints(helper, pointsAndArea.latitudes, pointsAndArea.longitudes)));
                 mapView.fitArea(pointsAndArea.area);
               }
             catch (InterruptedException e)
@@ -217,10 +219,21 @@ public class MapViewExampleController
      *
      **********************************************************************************************************************************************************/
     @Nonnull
-    private static Node createPoint (@Nonnull final MapView.OverlayHelper helper, @Nonnull final WayPoint wp)
+    private static List<Node> createPoints (@Nonnull final MapView.OverlayHelper helper,
+                                            @Nonnull final double[] latitudes,
+                                            @Nonnull final double[] longitudes)
       {
-        final var point = helper.toOverlayPoint(MapCoordinates.of(wp.getLatitude().doubleValue(), wp.getLongitude().doubleValue()));
-        return new Circle(point.getX(), point.getY(), 2.5, Color.RED);
+        final var xs = new double[latitudes.length];
+        final var ys = new double[latitudes.length];
+        helper.toOverlayPoints(latitudes, longitudes, xs, ys);
+        final var nodes = new ArrayList<Node>(xs.length);
+
+        for (int i = 0; i < xs.length; i++)
+          {
+            nodes.add(new Circle(xs[i], ys[i], 2.5, Color.RED));
+          }
+
+        return nodes;
       }
 
     /***********************************************************************************************************************************************************
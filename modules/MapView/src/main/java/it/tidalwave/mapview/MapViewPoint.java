@@ -80,7 +80,7 @@ public final class MapViewPoint implements Cartesian
     @Nonnull
     public MapPoint translated (final double dx, final double dy)
       {
-        return MapPoint.of(x + dx, x + dy);
+        return MapPoint.of(x + dx, y + dy);
       }
 
     /***********************************************************************************************************************************************************
@@ -27,9 +27,9 @@ package it.tidalwave.mapview;
 
 import jakarta.annotation.Nonnull;
 import java.net.URI;
-import java.net.URISyntaxException;
 import it.tidalwave.mapview.spi.WGS84PseudoMercatorProjection;
 import it.tidalwave.mapview.spi.TileSourceSupport;
+import it.tidalwave.mapview.spi.UrlTemplate;
 import lombok.extern.slf4j.Slf4j;
 
 /***************************************************************************************************************************************************************
@@ -48,22 +48,31 @@ public class OpenStreetMapTileSource extends TileSourceSupport
     
     private static final int DEFAULT_ZOOM_LEVEL = 9;
 
-    /** The pattern, in {@link String#formatted(Object...)} syntax, of the URI. */
+    /** The usage policy forbids heavy use, so requests are kept at the pace of an interactive user. */
+    private static final double MAX_REQUESTS_PER_SECOND = 10;
+
+    /** The pattern of the URI, as passed to the constructor: in {@link UrlTemplate} syntax or, as before 1.0-ALPHA-5, in
+        {@link String#formatted(Object...)} syntax. */
     @Nonnull
     protected final String pattern;
 
+    /** The compiled {@link #pattern}. */
+    @Nonnull
+    private final UrlTemplate template;
+
     /***********************************************************************************************************************************************************
      * Creates a new instance.
      **********************************************************************************************************************************************************/
     public OpenStreetMapTileSource()
       {
-        this(TOP_ZOOM_LEVEL, "https://tile.openstreetmap.org/%d/%d/%d.png", "OpenStreetMap", "OpenStreetMap");
+        this(TOP_ZOOM_LEVEL, "https://tile.openstreetmap.org/{z}/{x}/{y}.png", "OpenStreetMap", "OpenStreetMap");
       }
 
     /***********************************************************************************************************************************************************
-     * Constructor for subclasses.
+     * Constructor for subclasses. For compatibility, the pattern can also be in {@link String#formatted(Object...)} syntax, with the zoom level, the column
+     * and the row as arguments.
      * @param   maxZoom         the maximum allowed zoom level
-     * @param   pattern         the URI pattern
+     * @param   pattern         the URI pattern, in {@link UrlTemplate} syntax
      * @param   displayName     the display name of the provider
      * @param   cachePrefix     the prefix for the cache
      **********************************************************************************************************************************************************/
@@ -71,9 +80,28 @@ public class OpenStreetMapTileSource extends TileSourceSupport
                                        @Nonnull final String pattern,
                                        @Nonnull final String displayName,
                                        @Nonnull final String cachePrefix)
+      {
+        this(maxZoom, pattern, displayName, cachePrefix, new String[0]);
+      }
+
+    /***********************************************************************************************************************************************************
+     * Constructor for subclasses whose pattern contains the {@code {s}} placeholder.
+     * @param   maxZoom         the maximum allowed zoom level
+     * @param   pattern         the URI pattern, in {@link UrlTemplate} syntax or, for compatibility, in {@link String#formatted(Object...)} syntax
+     * @param   displayName     the display name of the provider
+     * @param   cachePrefix     the prefix for the cache
+     * @param   subdomains      the subdomains for the {@code {s}} placeholder
+     * @since   1.0-ALPHA-5
+     **********************************************************************************************************************************************************/
+    protected OpenStreetMapTileSource (final int maxZoom,
+                                       @Nonnull final String pattern,
+                                       @Nonnull final String displayName,
+                                       @Nonnull final String cachePrefix,
+                                       @Nonnull final String ... subdomains)
       {
         super(new WGS84PseudoMercatorProjection(TILE_SIZE), 1, maxZoom, DEFAULT_ZOOM_LEVEL, TILE_SIZE, displayName, cachePrefix);
         this.pattern = pattern;
+        this.template = UrlTemplate.compile(toTemplateSyntax(pattern), subdomains);
       }
 
     /***********************************************************************************************************************************************************
@@ -82,14 +110,16 @@ public class OpenStreetMapTileSource extends TileSourceSupport
     @Override @Nonnull
     public final URI getTileUri (final int column, final int row, final int zoom)
       {
-        try
-          {
-            return new URI(pattern.formatted(zoom, column, row));
-          }
-        catch (URISyntaxException e)
-          {
-            throw new IllegalArgumentException(e);
-          }
+        return template.toUri(column, row, zoom);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@inheritDoc}
+     **********************************************************************************************************************************************************/
+    @Override
+    public double getMaxRequestsPerSecond()
+      {
+        return MAX_REQUESTS_PER_SECOND;
       }
 
     /***********************************************************************************************************************************************************
@@ -100,4 +130,14 @@ public class OpenStreetMapTileSource extends TileSourceSupport
       {
         return getClass().getSimpleName();
       }
+
+    /***********************************************************************************************************************************************************
+     * {@return the given pattern in {@link UrlTemplate} syntax}, converting it if it's in {@link String#formatted(Object...)} syntax.
+     * @param   pattern         the pattern
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    private static String toTemplateSyntax (@Nonnull final String pattern)
+      {
+        return pattern.contains("%d") ? pattern.replaceFirst("%d", "{z}").replaceFirst("%d", "{x}").replaceFirst("%d", "{y}") : pattern;
+      }
   }
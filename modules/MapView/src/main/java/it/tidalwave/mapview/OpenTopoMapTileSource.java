@@ -44,6 +44,6 @@ public class OpenTopoMapTileSource extends OpenStreetMapTileSource
      **********************************************************************************************************************************************************/
     public OpenTopoMapTileSource()
       {
-        super(TOP_ZOOM_LEVEL, "https://tile.opentopomap.org/%d/%d/%d.png", "OpenTopoMap", "OpenTopoMap");
+        super(TOP_ZOOM_LEVEL, "https://tile.opentopomap.org/{z}/{x}/{y}.png", "OpenTopoMap", "OpenTopoMap");
       }
   }
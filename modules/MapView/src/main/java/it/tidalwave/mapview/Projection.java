@@ -26,7 +26,9 @@
 package it.tidalwave.mapview;
 
 import jakarta.annotation.Nonnull;
+import java.nio.DoubleBuffer;
 import org.apiguardian.api.API;
+import static org.apiguardian.api.API.Status.EXPERIMENTAL;
 import static org.apiguardian.api.API.Status.STABLE;
 
 /***************************************************************************************************************************************************************
@@ -55,10 +57,185 @@ public interface Projection
     @Nonnull
     public MapCoordinates mapPointToCoordinates (@Nonnull MapPoint mapPoint, double zoom);
 
+    /***********************************************************************************************************************************************************
+     * Converts the given coordinates and zoom level into a map point, storing {@code x} and {@code y} into {@code result[0]} and {@code result[1]}. This
+     * variant doesn't allocate objects and is meant for code in hot paths. The default implementation delegates to
+     * {@link #coordinatesToMapPoint(MapCoordinates, double)}; implementations should override it.
+     * @param  latitude      the latitude
+     * @param  longitude     the longitude
+     * @param  zoom          the zoom level
+     * @param  result        the array (at least two elements long) that receives the result
+     * @since  1.0-ALPHA-5
+     **********************************************************************************************************************************************************/
+    @API(status = EXPERIMENTAL)
+    public default void coordinatesToMapPoint (final double latitude, final double longitude, final double zoom, @Nonnull final double[] result)
+      {
+        final var mapPoint = coordinatesToMapPoint(MapCoordinates.of(latitude, longitude), zoom);
+        result[0] = mapPoint.x();
+        result[1] = mapPoint.y();
+      }
+
+    /***********************************************************************************************************************************************************
+     * Converts the given map point and zoom level into coordinates, storing latitude and longitude into {@code result[0]} and {@code result[1]}. This
+     * variant doesn't allocate objects and is meant for code in hot paths. The default implementation delegates to
+     * {@link #mapPointToCoordinates(MapPoint, double)}; implementations should override it.
+     * @param  x             the x coordinate of the point
+     * @param  y             the y coordinate of the point
+     * @param  zoom          the zoom level
+     * @param  result        the array (at least two elements long) that receives the result
+     * @since  1.0-ALPHA-5
+     **********************************************************************************************************************************************************/
+    @API(status = EXPERIMENTAL)
+    public default void mapPointToCoordinates (final double x, final double y, final double zoom, @Nonnull final double[] result)
+      {
+        final var coordinates = mapPointToCoordinates(MapPoint.of(x, y), zoom);
+        result[0] = coordinates.latitude();
+        result[1] = coordinates.longitude();
+      }
+
+    /***********************************************************************************************************************************************************
+     * Converts a batch of coordinates into map points at the given zoom level. The i-th point is computed from {@code latitudes[i]} and
+     * {@code longitudes[i]} and stored into {@code xs[i]} and {@code ys[i]}. This is much cheaper than converting points one at a time, e.g. for
+     * rendering a track with many points. The default implementation delegates to
+     * {@link #coordinatesToMapPoint(double, double, double, double[])}; implementations should override it.
+     * @param  latitudes     the latitudes
+     * @param  longitudes    the longitudes
+     * @param  zoom          the zoom level
+     * @param  xs            the array that receives the x coordinates
+     * @param  ys            the array that receives the y coordinates
+     * @throws IllegalArgumentException if the arrays don't have the same length
+     * @since  1.0-ALPHA-5
+     **********************************************************************************************************************************************************/
+    @API(status = EXPERIMENTAL)
+    public default void coordinatesToMapPoints (@Nonnull final double[] latitudes,
+                                                @Nonnull final double[] longitudes,
+                                                final double zoom,
+                                                @Nonnull final double[] xs,
+                                                @Nonnull final double[] ys)
+      {
+        final var length = checkLengths(latitudes.length, longitudes.length, xs.length, ys.length);
+        final var result = new double[2];
+
+        for (int i = 0; i < length; i++)
+          {
+            coordinatesToMapPoint(latitudes[i], longitudes[i], zoom, result);
+            xs[i] = result[0];
+            ys[i] = result[1];
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * Converts a batch of coordinates into map points at the given zoom level, as
+     * {@link #coordinatesToMapPoints(double[], double[], double, double[], double[])}, but reading from and writing to buffers. The {@code remaining()}
+     * elements of each buffer are processed and, as with other bulk operations on buffers, the position of each buffer is advanced past them.
+     * @param  latitudes     the latitudes
+     * @param  longitudes    the longitudes
+     * @param  zoom          the zoom level
+     * @param  xs            the buffer that receives the x coordinates
+     * @param  ys            the buffer that receives the y coordinates
+     * @throws IllegalArgumentException if the buffers don't have the same number of remaining elements
+     * @since  1.0-ALPHA-5
+     **********************************************************************************************************************************************************/
+    @API(status = EXPERIMENTAL)
+    public default void coordinatesToMapPoints (@Nonnull final DoubleBuffer latitudes,
+                                                @Nonnull final DoubleBuffer longitudes,
+                                                final double zoom,
+                                                @Nonnull final DoubleBuffer xs,
+                                                @Nonnull final DoubleBuffer ys)
+      {
+        final var length = checkLengths(latitudes.remaining(), longitudes.remaining(), xs.remaining(), ys.remaining());
+        final var result = new double[2];
+
+        for (int i = 0; i < length; i++)
+          {
+            coordinatesToMapPoint(latitudes.get(), longitudes.get(), zoom, result);
+            xs.put(result[0]);
+            ys.put(result[1]);
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * Converts a batch of map points at the given zoom level into coordinates. The i-th coordinates are computed from {@code xs[i]} and {@code ys[i]}
+     * and stored into {@code latitudes[i]} and {@code longitudes[i]}. The default implementation delegates to
+     * {@link #mapPointToCoordinates(double, double, double, double[])}; implementations should override it.
+     * @param  xs            the x coordinates
+     * @param  ys            the y coordinates
+     * @param  zoom          the zoom level
+     * @param  latitudes     the array that receives the latitudes
+     * @param  longitudes    the array that receives the longitudes
+     * @throws IllegalArgumentException if the arrays don't have the same length
+     * @since  1.0-ALPHA-5
+     **********************************************************************************************************************************************************/
+    @API(status = EXPERIMENTAL)
+    public default void mapPointsToCoordinates (@Nonnull final double[] xs,
+                                                @Nonnull final double[] ys,
+                                                final double zoom,
+                                                @Nonnull final double[] latitudes,
+                                                @Nonnull final double[] longitudes)
+      {
+        final var length = checkLengths(xs.length, ys.length, latitudes.length, longitudes.length);
+        final var result = new double[2];
+
+        for (int i = 0; i < length; i++)
+          {
+            mapPointToCoordinates(xs[i], ys[i], zoom, result);
+            latitudes[i] = result[0];
+            longitudes[i] = result[1];
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * Converts a batch of map points at the given zoom level into coordinates, as
+     * {@link #mapPointsToCoordinates(double[], double[], double, double[], double[])}, but reading from and writing to buffers. The {@code remaining()}
+     * elements of each buffer are processed and the position of each buffer is advanced past them.
+     * @param  xs            the x coordinates
+     * @param  ys            the y coordinates
+     * @param  zoom          the zoom level
+     * @param  latitudes     the buffer that receives the latitudes
+     * @param  longitudes    the buffer that receives the longitudes
+     * @throws IllegalArgumentException if the buffers don't have the same number of remaining elements
+     * @since  1.0-ALPHA-5
+     **********************************************************************************************************************************************************/
+    @API(status = EXPERIMENTAL)
+    public default void mapPointsToCoordinates (@Nonnull final DoubleBuffer xs,
+                                                @Nonnull final DoubleBuffer ys,
+                                                final double zoom,
+                                                @Nonnull final DoubleBuffer latitudes,
+                                                @Nonnull final DoubleBuffer longitudes)
+      {
+        final var length = checkLengths(xs.remaining(), ys.remaining(), latitudes.remaining(), longitudes.remaining());
+        final var result = new double[2];
+
+        for (int i = 0; i < length; i++)
+          {
+            mapPointToCoordinates(xs.get(), ys.get(), zoom, result);
+            latitudes.put(result[0]);
+            longitudes.put(result[1]);
+          }
+      }
+
     /***********************************************************************************************************************************************************
      * {@return the map scale (expressed in meters per pixel) at the given zoom level}.
      * @param  coordinates   coordinates
      * @param  zoom          the zoom level
      **********************************************************************************************************************************************************/
     public double metersPerPixel (@Nonnull MapCoordinates coordinates, double zoom);
+
+    /***********************************************************************************************************************************************************
+     * {@return the common length of the arrays or buffers of a batch conversion}.
+     * @param  length1       the length of the first input
+     * @param  length2       the length of the second input
+     * @param  length3       the length of the first output
+     * @param  length4       the length of the second output
+     * @throws IllegalArgumentException if the lengths differ
+     **********************************************************************************************************************************************************/
+    private static int checkLengths (final int length1, final int length2, final int length3, final int length4)
+      {
+        if ((length1 != length2) || (length1 != length3) || (length1 != length4))
+          {
+            throw new IllegalArgumentException(String.format("Mismatched lengths: %d, %d, %d, %d", length1, length2, length3, length4));
+          }
+
+        return length1;
+      }
   }
@@ -81,4 +81,13 @@ public interface TileSource extends Projection
      * {@return the size of the tiles created by this source}.
      **********************************************************************************************************************************************************/
     public int getTileSize();
+
+    /***********************************************************************************************************************************************************
+     * {@return the maximum number of requests per second to each host of this source}, as required by its usage policy. By default there's no limit.
+     * @since   1.0-ALPHA-5
+     **********************************************************************************************************************************************************/
+    public default double getMaxRequestsPerSecond()
+      {
+        return Double.POSITIVE_INFINITY;
+      }
 }
@@ -56,11 +56,42 @@ public interface AbstractTile
     public void setImageByBitmap (@Nullable Object bitmap);
 
     /***********************************************************************************************************************************************************
-     * {@return the URI of this tile}.
+     * Sets a square region of a bitmap, scaled up to the size of this tile, as a placeholder until the image of this tile is set. The region is expressed
+     * in fractions of the size of the bitmap.
+     * @param     bitmap            the bitmap
+     * @param     x                 the left side of the region
+     * @param     y                 the top side of the region
+     * @param     size              the size of the region
+     **********************************************************************************************************************************************************/
+    public void setPlaceholderBitmap (@Nonnull Object bitmap, double x, double y, double size);
+
+    /***********************************************************************************************************************************************************
+     * {@return a bitmap decoded from a given path}, without setting it as the image of this tile.
+     * @param     imagePath         the path of the image
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    public Optional<Object> decodeBitmap (@Nonnull Path imagePath);
+
+    /***********************************************************************************************************************************************************
+     * {@return a bitmap composed of four bitmaps}, each one scaled down to a quarter, without setting it as the image of this tile. This is used to
+     * synthesize the image of a tile from the ones of its children at the next zoom level.
+     * @param     quadrants         the bitmaps, in the order: top left, top right, bottom left, bottom right
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    public Object composeBitmap (@Nonnull Object[] quadrants);
+
+    /***********************************************************************************************************************************************************
+     * {@return the URI of this tile}. Since it's expensive to create, implementations should only create it when it's requested for the first time.
      **********************************************************************************************************************************************************/
     @Nonnull
     public URI getUri();
 
+    /***********************************************************************************************************************************************************
+     * {@return the key of this tile}, to be used in place of its URI for lookups.
+     * @see       TileKey
+     **********************************************************************************************************************************************************/
+    public long getKey();
+
     /***********************************************************************************************************************************************************
      * {@return the source of this tile}.
      **********************************************************************************************************************************************************/
@@ -71,4 +102,14 @@ public interface AbstractTile
      * {@return the zoom level of this tile}.
      **********************************************************************************************************************************************************/
     public int getZoom();
+
+    /***********************************************************************************************************************************************************
+     * {@return the column of this tile in the map at its zoom level}.
+     **********************************************************************************************************************************************************/
+    public int getColumn();
+
+    /***********************************************************************************************************************************************************
+     * {@return the row of this tile in the map at its zoom level}.
+     **********************************************************************************************************************************************************/
+    public int getRow();
   }
@@ -0,0 +1,526 @@
+/*
+ * *************************************************************************************************************************************************************
+ *
+ * MapView: a JavaFX map renderer for tile-based servers
+ * http://tidalwave.it/projects/mapview
+ *
+ * Copyright (C) 2024 - 2025 by Tidalwave s.a.s. (http://tidalwave.it)
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.  See the License for the specific language governing permissions and limitations under the License.
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * git clone https://bitbucket.org/tidalwave/mapview-src
+ * git clone https://github.com/tidalwave-it/mapview-src
+ *
+ * *************************************************************************************************************************************************************
+ */
+package it.tidalwave.mapview.impl;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import lombok.With;
+import lombok.extern.slf4j.Slf4j;
+
+/***************************************************************************************************************************************************************
+ *
+ * An in-memory index of the tiles in the disk cache, so that checking whether a tile is cached is a hash lookup rather than a filesystem call, which can be
+ * slow on network filesystems and is often performed by the JavaFX thread. The index is loaded at startup by a background thread; until it has finished,
+ * tiles not indexed yet are looked up on the filesystem and added. Afterwards it's kept up to date by notifying it of each stored and evicted tile.
+ *
+ * When disposed, the index is saved into a file in the cache folder, which is loaded at the next startup in place of walking the whole cache folder. The
+ * file is deleted once loaded, so after a crash the folder is walked again, rather than trusting an outdated index. Still, the index can't see changes
+ * made by others, such as tiles deleted by hand: so a tile that can't be read must be notified with {@link #removed(Path)}, and downloaded again.
+ *
+ * For each tile the index also keeps its size, the last time it was accessed and, once its metadata have been read or written, its expiry; and it keeps
+ * running totals of the bytes and tiles in the folder of each tile source (see {@link it.tidalwave.mapview.TileSource#getCachePrefix()}), so
+ * {@link DiskCacheJanitor} can enforce quotas without walking the cache folder. Tiles not accessed since they were indexed by walking the cache folder
+ * get their last modified time, that is when they were downloaded.
+ *
+ * @author  Fabrizio Giudici
+ *
+ **************************************************************************************************************************************************************/
+@Slf4j
+public class DiskCacheIndex
+  {
+    /** The name of the file the index is saved into, in the cache folder. */
+    /* visible for testing */ static final String INDEX_FILE = ".index";
+
+    /** The first line of the index file, to tell its format. */
+    private static final String INDEX_HEADER = "# MapView disk cache index v2";
+
+    /** The separator of the fields in the index file. */
+    private static final String SEPARATOR = "\t";
+
+    /***********************************************************************************************************************************************************
+     * A tile in the disk cache.
+     * @param   path            the path of the tile
+     * @param   size            the size in bytes
+     * @param   lastAccess      the last access time, in milliseconds since the epoch
+     * @param   expiry          the time after which the tile is stale, or {@code null} if not known yet
+     **********************************************************************************************************************************************************/
+    @With
+    public record Entry (@Nonnull Path path, long size, long lastAccess, @Nullable Instant expiry) {}
+
+    /** The folder of the disk cache. */
+    @Nonnull
+    private final Path cacheFolder;
+
+    /** The cached tiles. */
+    /* visible for testing */ final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+
+    /** The number of bytes of the tiles in each tile source folder. */
+    private final Map<Path, AtomicLong> bytesByFolder = new ConcurrentHashMap<>();
+
+    /** The number of tiles in each tile source folder. */
+    private final Map<Path, AtomicInteger> tilesByFolder = new ConcurrentHashMap<>();
+
+    /** The tiles removed while the index is being loaded, so they are not added back by the loader. Guarded by itself. */
+    private final Set<Path> removedWhileLoading = new HashSet<>();
+
+    /** Whether the whole cache folder has been indexed. */
+    private volatile boolean complete;
+
+    /** The thread loading the index. */
+    @Nonnull
+    private final Thread thread;
+
+    /***********************************************************************************************************************************************************
+     * Creates a new instance and starts loading the index of the given folder in background.
+     * @param   cacheFolder     the folder of the disk cache
+     **********************************************************************************************************************************************************/
+    public DiskCacheIndex (@Nonnull final Path cacheFolder)
+      {
+        this.cacheFolder = cacheFolder;
+        thread = Thread.ofPlatform().daemon().priority(Thread.MIN_PRIORITY).name("tile-cache-indexer").start(this::load);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return whether the given tile is in the disk cache}.
+     * @param   path            the path of the tile
+     **********************************************************************************************************************************************************/
+    public boolean contains (@Nonnull final Path path)
+      {
+        if (entries.containsKey(path))
+          {
+            return true;
+          }
+
+        if (complete)
+          {
+            return false;
+          }
+
+        try
+          {
+            final var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return addIfNotRemoved(new Entry(path, attributes.size(), attributes.lastModifiedTime().toMillis(), null));
+          }
+        catch (IOException e) // e.g. not existing
+          {
+            return false;
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * Notifies that a tile has been stored into the disk cache. This counts as an access.
+     * @param   path            the path of the tile
+     * @param   size            the size of the tile in bytes
+     **********************************************************************************************************************************************************/
+    public void added (@Nonnull final Path path, final long size)
+      {
+        synchronized (removedWhileLoading)
+          {
+            removedWhileLoading.remove(path);
+            put(new Entry(path, size, System.currentTimeMillis(), null));
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * Notifies that a tile has been removed from the disk cache, or that it can't be read.
+     * @param   path            the path of the tile
+     **********************************************************************************************************************************************************/
+    public void removed (@Nonnull final Path path)
+      {
+        synchronized (removedWhileLoading)
+          {
+            final var previous = entries.remove(path);
+
+            if (previous != null)
+              {
+                updateTotals(folderOf(path), -previous.size(), -1);
+              }
+
+            if (!complete)
+              {
+                removedWhileLoading.add(path);
+              }
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * Records that a cached tile has been accessed.
+     * @param   path            the path of the tile
+     **********************************************************************************************************************************************************/
+    public void recordAccess (@Nonnull final Path path)
+      {
+        entries.computeIfPresent(path, (p, entry) -> entry.withLastAccess(System.currentTimeMillis()));
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the expiry of a tile}, if known.
+     * @param   path            the path of the tile
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    public Optional<Instant> getExpiry (@Nonnull final Path path)
+      {
+        return Optional.ofNullable(entries.get(path)).map(Entry::expiry);
+      }
+
+    /***********************************************************************************************************************************************************
+     * Sets the expiry of a tile, after its metadata have been read or written.
+     * @param   path            the path of the tile
+     * @param   expiry          the expiry
+     **********************************************************************************************************************************************************/
+    public void setExpiry (@Nonnull final Path path, @Nonnull final Instant expiry)
+      {
+        entries.computeIfPresent(path, (p, entry) -> entry.withExpiry(expiry));
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the tile source folders with at least a tile}.
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    public Set<Path> getFolders()
+      {
+        return Set.copyOf(tilesByFolder.keySet());
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the number of bytes of the tiles in a tile source folder}.
+     * @param   folder          the folder
+     **********************************************************************************************************************************************************/
+    public long getBytes (@Nonnull final Path folder)
+      {
+        final var bytes = bytesByFolder.get(folder);
+        return (bytes != null) ? bytes.get() : 0;
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the number of tiles in a tile source folder}.
+     * @param   folder          the folder
+     **********************************************************************************************************************************************************/
+    public int getTileCount (@Nonnull final Path folder)
+      {
+        final var tiles = tilesByFolder.get(folder);
+        return (tiles != null) ? tiles.get() : 0;
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the tiles in a tile source folder}.
+     * @param   folder          the folder
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    public List<Entry> getEntries (@Nonnull final Path folder)
+      {
+        return entries.values().stream().filter(entry -> folderOf(entry.path()).equals(folder)).toList();
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return whether the whole cache folder has been indexed}.
+     **********************************************************************************************************************************************************/
+    public boolean isComplete()
+      {
+        return complete;
+      }
+
+    /***********************************************************************************************************************************************************
+     * Stops loading and, if the index is complete, saves it for the next startup.
+     **********************************************************************************************************************************************************/
+    public void dispose()
+      {
+        thread.interrupt();
+
+        try
+          {
+            thread.join();
+          }
+        catch (InterruptedException e)
+          {
+            Thread.currentThread().interrupt();
+            return;
+          }
+
+        if (complete)
+          {
+            save();
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return whether a file in the cache folder is a tile}, and not metadata, a download in progress or the index.
+     * @param   path            the path of the file
+     **********************************************************************************************************************************************************/
+    public static boolean isTile (@Nonnull final Path path)
+      {
+        final var name = path.getFileName().toString();
+        return !name.endsWith(TileMetadata.SUFFIX) && !name.endsWith(TileCache.TEMP_SUFFIX) && !name.startsWith(INDEX_FILE);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the tile source folder of a tile}, that is the child of the cache folder containing it.
+     * @param   path            the path of the tile
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    private Path folderOf (@Nonnull final Path path)
+      {
+        return path.startsWith(cacheFolder) ? cacheFolder.resolve(cacheFolder.relativize(path).getName(0)) : path.getParent();
+      }
+
+    /***********************************************************************************************************************************************************
+     * Loads the index saved by the previous session, or indexes all the tiles in the cache folder if there's none. If interrupted or failed, the index is
+     * left incomplete, so it keeps falling back to the filesystem.
+     **********************************************************************************************************************************************************/
+    private void load()
+      {
+        if (!Files.isDirectory(cacheFolder))
+          {
+            complete();
+            return;
+          }
+
+        final var start = System.currentTimeMillis();
+        final var indexFile = cacheFolder.resolve(INDEX_FILE);
+
+        try
+          {
+            if (Files.exists(indexFile) ? loadIndexFile(indexFile) : scan())
+              {
+                complete();
+                log.info("indexed {} cached tiles in {} msec", entries.size(), System.currentTimeMillis() - start);
+              }
+          }
+        catch (Exception e) // also UncheckedIOException from streams
+          {
+            log.error("while indexing {}: {}", cacheFolder, e.toString());
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * Loads the index from the file saved by the previous session, then deletes it.
+     * @param   indexFile       the index file
+     * @return                  {@code true} if loaded, {@code false} if interrupted
+     * @throws  IOException     in case of error
+     **********************************************************************************************************************************************************/
+    private boolean loadIndexFile (@Nonnull final Path indexFile)
+            throws IOException
+      {
+        log.debug("loading {}...", indexFile);
+
+        try (final var reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8))
+          {
+            if (!INDEX_HEADER.equals(reader.readLine()))
+              {
+                log.warn("unknown format of {}, ignoring it", indexFile);
+                return scan();
+              }
+
+            for (var line = reader.readLine(); line != null; line = reader.readLine())
+              {
+                if (Thread.currentThread().isInterrupted())
+                  {
+                    log.info("tile cache indexer interrupted");
+                    return false;
+                  }
+
+                final var fields = line.split(SEPARATOR, 4);
+                addIfNotRemoved(new Entry(cacheFolder.resolve(fields[3]),
+                                          Long.parseLong(fields[0]),
+                                          Long.parseLong(fields[1]),
+                                          fields[2].isEmpty() ? null : Instant.parse(fields[2])));
+              }
+
+            return true;
+          }
+        finally
+          {
+            Files.deleteIfExists(indexFile); // from now on it's outdated, a crash must not leave it behind
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * Indexes all the tiles in the cache folder.
+     * @return                  {@code true} if indexed, {@code false} if interrupted
+     * @throws  IOException     in case of error
+     **********************************************************************************************************************************************************/
+    private boolean scan()
+            throws IOException
+      {
+        log.debug("indexing {}...", cacheFolder);
+        final var interrupted = new boolean[1];
+        Files.walkFileTree(cacheFolder, new SimpleFileVisitor<>()
+          {
+            @Override @Nonnull
+            public FileVisitResult visitFile (@Nonnull final Path path, @Nonnull final BasicFileAttributes attributes)
+              {
+                if (Thread.currentThread().isInterrupted())
+                  {
+                    interrupted[0] = true;
+                    return FileVisitResult.TERMINATE;
+                  }
+
+                if (attributes.isRegularFile() && isTile(path))
+                  {
+                    addIfNotRemoved(new Entry(path, attributes.size(), attributes.lastModifiedTime().toMillis(), null));
+                  }
+
+                return FileVisitResult.CONTINUE;
+              }
+
+            @Override @Nonnull
+            public FileVisitResult visitFileFailed (@Nonnull final Path path, @Nonnull final IOException e)
+              {
+                log.debug("can't read attributes of {}: {}", path, e.toString()); // e.g. evicted in the meantime
+                return FileVisitResult.CONTINUE;
+              }
+          });
+
+        if (interrupted[0])
+          {
+            log.info("tile cache indexer interrupted");
+          }
+
+        return !interrupted[0];
+      }
+
+    /***********************************************************************************************************************************************************
+     * Saves the index into a file in the cache folder. It's first written to a temporary file, which is then atomically renamed.
+     **********************************************************************************************************************************************************/
+    private void save()
+      {
+        final var indexFile = cacheFolder.resolve(INDEX_FILE);
+        final var tempFile = cacheFolder.resolve(INDEX_FILE + TileCache.TEMP_SUFFIX);
+
+        if (!Files.isDirectory(cacheFolder))
+          {
+            return;
+          }
+
+        try
+          {
+            try (final var writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8))
+              {
+                writer.write(INDEX_HEADER);
+                writer.newLine();
+
+                for (final var entry : entries.values())
+                  {
+                    final var expiry = entry.expiry();
+                    writer.write("%d\t%d\t%s\t%s".formatted(entry.size(),
+                                                            entry.lastAccess(),
+                                                            (expiry != null) ? expiry : "",
+                                                            cacheFolder.relativize(entry.path())));
+                    writer.newLine();
+                  }
+              }
+
+            try
+              {
+                Files.move(tempFile, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+              }
+            catch (AtomicMoveNotSupportedException e)
+              {
+                Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+              }
+
+            log.info("saved index of {} cached tiles", entries.size());
+          }
+        catch (IOException e)
+          {
+            log.warn("can't save {}: {}", indexFile, e.toString());
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * Adds a tile found while loading the index, unless it has been removed in the meantime.
+     * @param   entry           the tile
+     * @return                  {@code true} if the tile has been added
+     **********************************************************************************************************************************************************/
+    private boolean addIfNotRemoved (@Nonnull final Entry entry)
+      {
+        synchronized (removedWhileLoading)
+          {
+            if (removedWhileLoading.contains(entry.path()))
+              {
+                return false;
+              }
+
+            if (entries.putIfAbsent(entry.path(), entry) == null) // otherwise, the entry added in the meantime is more recent
+              {
+                updateTotals(folderOf(entry.path()), entry.size(), 1);
+              }
+
+            return true;
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * Puts a tile, updating the totals of its folder.
+     * @param   entry           the tile
+     **********************************************************************************************************************************************************/
+    private void put (@Nonnull final Entry entry)
+      {
+        final var previous = entries.put(entry.path(), entry);
+        updateTotals(folderOf(entry.path()), entry.size() - ((previous != null) ? previous.size() : 0), (previous != null) ? 0 : 1);
+      }
+
+    /***********************************************************************************************************************************************************
+     * Updates the totals of a tile source folder.
+     * @param   folder          the folder
+     * @param   bytes           the bytes to add
+     * @param   tiles           the tiles to add
+     **********************************************************************************************************************************************************/
+    private void updateTotals (@Nonnull final Path folder, final long bytes, final int tiles)
+      {
+        bytesByFolder.computeIfAbsent(folder, f -> new AtomicLong()).addAndGet(bytes);
+        tilesByFolder.computeIfAbsent(folder, f -> new AtomicInteger()).addAndGet(tiles);
+      }
+
+    /***********************************************************************************************************************************************************
+     * Marks the index as complete.
+     **********************************************************************************************************************************************************/
+    private void complete()
+      {
+        synchronized (removedWhileLoading)
+          {
+            complete = true;
+            removedWhileLoading.clear();
+          }
+      }
+  }
@@ -0,0 +1,203 @@
+/*
+ * *************************************************************************************************************************************************************
+ *
+ * MapView: a JavaFX map renderer for tile-based servers
+ * http://tidalwave.it/projects/mapview
+ *
+ * Copyright (C) 2024 - 2025 by Tidalwave s.a.s. (http://tidalwave.it)
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.  See the License for the specific language governing permissions and limitations under the License.
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * git clone https://bitbucket.org/tidalwave/mapview-src
+ * git clone https://github.com/tidalwave-it/mapview-src
+ *
+ * *************************************************************************************************************************************************************
+ */
+package it.tidalwave.mapview.impl;
+
+import jakarta.annotation.Nonnull;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import lombok.extern.slf4j.Slf4j;
+
+/***************************************************************************************************************************************************************
+ *
+ * A janitor that keeps the disk cache within a quota, expressed in bytes and/or number of tiles, that applies separately to the folder of each tile source
+ * (see {@link it.tidalwave.mapview.TileSource#getCachePrefix()}). It periodically checks in a low-priority thread the running totals kept by
+ * {@link DiskCacheIndex} and, only for folders exceeding the quota, it deletes the least recently used tiles together with their metadata. The cache
+ * folder is never walked; sizes don't include metadata, which are small.
+ *
+ * Access times are kept by the index, since the last access time kept by the filesystem is often disabled or coarse, and saved with it across sessions.
+ * Tiles accessed in the last minutes are never evicted, so they are unlikely to be deleted while being read; if it happens anyway, loaders notice that the
+ * tile can't be read and download it again.
+ *
+ * @author  Fabrizio Giudici
+ *
+ **************************************************************************************************************************************************************/
+@Slf4j
+public class DiskCacheJanitor
+  {
+    /** Tiles accessed more recently than this are never evicted. */
+    /* visible for testing */ static final Duration GRACE_PERIOD = Duration.ofMinutes(2);
+
+    /** The interval between two checks of the quota. */
+    private static final Duration SWEEP_INTERVAL = Duration.ofMinutes(1);
+
+    /** The index of the disk cache. */
+    @Nonnull
+    private final DiskCacheIndex index;
+
+    /** The maximum number of bytes of each tile source folder. */
+    private final long maxBytes;
+
+    /** The maximum number of tiles of each tile source folder. */
+    private final int maxFiles;
+
+    /** The thread that sweeps the cache, or {@code null} if there are no quotas. */
+    private final Thread thread;
+
+    /***********************************************************************************************************************************************************
+     * Creates a new instance.
+     * @param   index           the index of the disk cache
+     * @param   maxBytes        the maximum number of bytes of each tile source folder; {@link Long#MAX_VALUE} means no limit
+     * @param   maxFiles        the maximum number of tiles of each tile source folder; {@link Integer#MAX_VALUE} means no limit
+     **********************************************************************************************************************************************************/
+    public DiskCacheJanitor (@Nonnull final DiskCacheIndex index, final long maxBytes, final int maxFiles)
+      {
+        this.index = index;
+        this.maxBytes = maxBytes;
+        this.maxFiles = maxFiles;
+        thread = ((maxBytes == Long.MAX_VALUE) && (maxFiles == Integer.MAX_VALUE))
+                ? null
+                : Thread.ofPlatform().daemon().priority(Thread.MIN_PRIORITY).name("tile-cache-janitor").start(this::loop);
+      }
+
+    /***********************************************************************************************************************************************************
+     * Stops this janitor.
+     **********************************************************************************************************************************************************/
+    public void dispose()
+      {
+        if (thread != null)
+          {
+            thread.interrupt();
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * Evicts the least recently used tiles from the folders exceeding the quota.
+     **********************************************************************************************************************************************************/
+    /* visible for testing */ void sweep()
+      {
+        for (final var folder : index.getFolders())
+          {
+            if (isOverQuota(index.getBytes(folder), index.getTileCount(folder)))
+              {
+                sweep(folder);
+              }
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * Evicts the least recently used tiles from the folder of a tile source, until it's within the quota.
+     * @param   folder          the folder
+     **********************************************************************************************************************************************************/
+    private void sweep (@Nonnull final Path folder)
+      {
+        var bytes = index.getBytes(folder);
+        var count = index.getTileCount(folder);
+        log.info("cache {} exceeds quota: {} bytes, {} tiles", folder, bytes, count);
+        final var tiles = new ArrayList<>(index.getEntries(folder));
+        tiles.sort(Comparator.comparingLong(DiskCacheIndex.Entry::lastAccess));
+        final var notBefore = System.currentTimeMillis() - GRACE_PERIOD.toMillis();
+        var evicted = 0;
+
+        for (final var tile : tiles)
+          {
+            if (!isOverQuota(bytes, count) || (tile.lastAccess() > notBefore) || Thread.currentThread().isInterrupted())
+              {
+                break;
+              }
+
+            evict(tile.path());
+            bytes -= tile.size();
+            count--;
+            evicted++;
+          }
+
+        log.info("evicted {} tiles from {}", evicted, folder);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return whether the given totals exceed the quota}.
+     * @param   bytes           the number of bytes
+     * @param   count           the number of tiles
+     **********************************************************************************************************************************************************/
+    private boolean isOverQuota (final long bytes, final int count)
+      {
+        return (bytes > maxBytes) || (count > maxFiles);
+      }
+
+    /***********************************************************************************************************************************************************
+     * Deletes a tile and its metadata, and removes it from the index.
+     * @param   path            the path of the tile
+     **********************************************************************************************************************************************************/
+    private void evict (@Nonnull final Path path)
+      {
+        index.removed(path);
+
+        for (final var file : List.of(path, TileMetadata.sidecarOf(path)))
+          {
+            try
+              {
+                Files.deleteIfExists(file);
+              }
+            catch (IOException e) // e.g. being read on a filesystem that doesn't allow deletion of open files
+              {
+                log.debug("can't evict {}: {}", file, e.toString());
+              }
+          }
+
+        log.trace("evicted {}", path);
+      }
+
+    /***********************************************************************************************************************************************************
+     * The loop that periodically checks the quota.
+     **********************************************************************************************************************************************************/
+    private void loop()
+      {
+        while (!Thread.interrupted())
+          {
+            try
+              {
+                Thread.sleep(SWEEP_INTERVAL.toMillis());
+                sweep();
+              }
+            catch (InterruptedException ignored)
+              {
+                Thread.currentThread().interrupt();
+                break;
+              }
+            catch (Exception e) // defensive
+              {
+                log.error("", e);
+              }
+          }
+
+        log.info("cache janitor terminated");
+      }
+  }
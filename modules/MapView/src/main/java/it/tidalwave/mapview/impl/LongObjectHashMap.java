@@ -0,0 +1,368 @@
+/*
+ * *************************************************************************************************************************************************************
+ *
+ * MapView: a JavaFX map renderer for tile-based servers
+ * http://tidalwave.it/projects/mapview
+ *
+ * Copyright (C) 2024 - 2025 by Tidalwave s.a.s. (http://tidalwave.it)
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.  See the License for the specific language governing permissions and limitations under the License.
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * git clone https://bitbucket.org/tidalwave/mapview-src
+ * git clone https://github.com/tidalwave-it/mapview-src
+ *
+ * *************************************************************************************************************************************************************
+ */
+package it.tidalwave.mapview.impl;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import java.util.Arrays;
+
+/***************************************************************************************************************************************************************
+ *
+ * A hash map with primitive {@code long} keys, such as the ones made by {@link TileKey}. It uses open addressing with linear probing in two parallel
+ * arrays, so it doesn't allocate an entry nor box the key for each mapping. {@code null} values are not supported. It's not thread-safe.
+ *
+ * @param   <V>             the type of values
+ * @author  Fabrizio Giudici
+ *
+ **************************************************************************************************************************************************************/
+public class LongObjectHashMap<V>
+  {
+    /***********************************************************************************************************************************************************
+     * A callback for the entries of the map.
+     * @param   <V>             the type of values
+     **********************************************************************************************************************************************************/
+    @FunctionalInterface
+    public static interface EntryConsumer<V>
+      {
+        public void accept (long key, @Nonnull V value);
+      }
+
+    /***********************************************************************************************************************************************************
+     * A predicate on the entries of the map.
+     * @param   <V>             the type of values
+     **********************************************************************************************************************************************************/
+    @FunctionalInterface
+    public static interface EntryPredicate<V>
+      {
+        public boolean test (long key, @Nonnull V value);
+      }
+
+    private static final int MIN_CAPACITY = 16;
+
+    /** The keys; a slot is empty if the corresponding value is {@code null}. */
+    private long[] keys;
+
+    /** The values. */
+    private Object[] values;
+
+    /** The number of mappings. */
+    private int size;
+
+    /***********************************************************************************************************************************************************
+     * Creates an empty map.
+     **********************************************************************************************************************************************************/
+    public LongObjectHashMap()
+      {
+        this(MIN_CAPACITY);
+      }
+
+    /***********************************************************************************************************************************************************
+     * Creates an empty map that can hold the given number of mappings without being resized.
+     * @param   expectedSize    the expected number of mappings
+     **********************************************************************************************************************************************************/
+    public LongObjectHashMap (final int expectedSize)
+      {
+        final var capacity = Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, expectedSize * 2 - 1)) << 1);
+        keys = new long[capacity];
+        values = new Object[capacity];
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the value mapped to a key}, or {@code null} if there's none.
+     * @param   key             the key
+     **********************************************************************************************************************************************************/
+    @Nullable
+    public V get (final long key)
+      {
+        final var slot = find(key);
+        return (slot < 0) ? null : value(slot);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return whether a key is mapped}.
+     * @param   key             the key
+     **********************************************************************************************************************************************************/
+    public boolean containsKey (final long key)
+      {
+        return find(key) >= 0;
+      }
+
+    /***********************************************************************************************************************************************************
+     * Maps a key to a value.
+     * @param   key             the key
+     * @param   value           the value
+     * @return                  the value previously mapped to the key, or {@code null} if there was none
+     **********************************************************************************************************************************************************/
+    @Nullable
+    public V put (final long key, @Nonnull final V value)
+      {
+        final var slot = find(key);
+
+        if (slot >= 0)
+          {
+            final var previous = value(slot);
+            values[slot] = value;
+            return previous;
+          }
+
+        insert(key, value);
+        return null;
+      }
+
+    /***********************************************************************************************************************************************************
+     * Maps a key to a value, unless the key is already mapped.
+     * @param   key             the key
+     * @param   value           the value
+     * @return                  the value already mapped to the key, or {@code null} if the new value has been put
+     **********************************************************************************************************************************************************/
+    @Nullable
+    public V putIfAbsent (final long key, @Nonnull final V value)
+      {
+        final var slot = find(key);
+
+        if (slot >= 0)
+          {
+            return value(slot);
+          }
+
+        insert(key, value);
+        return null;
+      }
+
+    /***********************************************************************************************************************************************************
+     * Removes the mapping of a key.
+     * @param   key             the key
+     * @return                  the value that was mapped to the key, or {@code null} if there was none
+     **********************************************************************************************************************************************************/
+    @Nullable
+    public V remove (final long key)
+      {
+        final var slot = find(key);
+
+        if (slot < 0)
+          {
+            return null;
+          }
+
+        final var previous = value(slot);
+        delete(slot);
+        return previous;
+      }
+
+    /***********************************************************************************************************************************************************
+     * Removes the mapping of a key, only if it's mapped to the given value (compared by identity).
+     * @param   key             the key
+     * @param   value           the value
+     * @return                  {@code true} if the mapping has been removed
+     **********************************************************************************************************************************************************/
+    public boolean remove (final long key, @Nonnull final V value)
+      {
+        final var slot = find(key);
+
+        if ((slot < 0) || (values[slot] != value))
+          {
+            return false;
+          }
+
+        delete(slot);
+        return true;
+      }
+
+    /***********************************************************************************************************************************************************
+     * Removes all the mappings matching a predicate.
+     * @param   predicate       the predicate
+     * @return                  {@code true} if any mapping has been removed
+     **********************************************************************************************************************************************************/
+    public boolean removeIf (@Nonnull final EntryPredicate<? super V> predicate)
+      {
+        var removed = false;
+        final var mask = values.length - 1;
+        var start = 0;
+
+        while (values[start] != null)
+          {
+            start++;
+          }
+
+        // Deleting shifts back the following entries of the same cluster. Scanning forward from an empty slot, which clusters never span, they are only
+        // moved to the slot being visited, which is tested again, or to slots not visited yet.
+        for (int i = 1; i <= mask; i++)
+          {
+            final var slot = (start + i) & mask;
+
+            while ((values[slot] != null) && predicate.test(keys[slot], value(slot)))
+              {
+                delete(slot);
+                removed = true;
+              }
+          }
+
+        return removed;
+      }
+
+    /***********************************************************************************************************************************************************
+     * Calls back for all the mappings, in no particular order. The map must not be changed by the callback.
+     * @param   consumer        the callback
+     **********************************************************************************************************************************************************/
+    public void forEach (@Nonnull final EntryConsumer<? super V> consumer)
+      {
+        for (int slot = 0; slot < values.length; slot++)
+          {
+            if (values[slot] != null)
+              {
+                consumer.accept(keys[slot], value(slot));
+              }
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the number of mappings}.
+     **********************************************************************************************************************************************************/
+    public int size()
+      {
+        return size;
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return whether there are no mappings}.
+     **********************************************************************************************************************************************************/
+    public boolean isEmpty()
+      {
+        return size == 0;
+      }
+
+    /***********************************************************************************************************************************************************
+     * Removes all the mappings.
+     **********************************************************************************************************************************************************/
+    public void clear()
+      {
+        Arrays.fill(values, null);
+        size = 0;
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the slot of a key}, or -1 if it's not mapped.
+     * @param   key             the key
+     **********************************************************************************************************************************************************/
+    private int find (final long key)
+      {
+        final var mask = values.length - 1;
+
+        for (int slot = slotOf(key, mask); values[slot] != null; slot = (slot + 1) & mask)
+          {
+            if (keys[slot] == key)
+              {
+                return slot;
+              }
+          }
+
+        return -1;
+      }
+
+    /***********************************************************************************************************************************************************
+     * Inserts a mapping of a key not yet mapped, growing the arrays if they would be more than half full.
+     **********************************************************************************************************************************************************/
+    private void insert (final long key, @Nonnull final Object value)
+      {
+        if ((size + 1) * 2 > values.length)
+          {
+            resize(values.length * 2);
+          }
+
+        final var mask = values.length - 1;
+        var slot = slotOf(key, mask);
+
+        while (values[slot] != null)
+          {
+            slot = (slot + 1) & mask;
+          }
+
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+      }
+
+    /***********************************************************************************************************************************************************
+     * Deletes the mapping in a slot. Later entries of the same probe sequence are shifted back, so no tombstone is needed and lookups stay short.
+     **********************************************************************************************************************************************************/
+    private void delete (int slot)
+      {
+        final var mask = values.length - 1;
+        values[slot] = null;
+        size--;
+
+        for (int next = (slot + 1) & mask; values[next] != null; next = (next + 1) & mask)
+          {
+            final var home = slotOf(keys[next], mask);
+
+            // moves the entry back only if the emptied slot is within its probe sequence, that is between its home and its current slot (cyclically)
+            if (((next - home) & mask) >= ((next - slot) & mask))
+              {
+                keys[slot] = keys[next];
+                values[slot] = values[next];
+                values[next] = null;
+                slot = next;
+              }
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * Rehashes all the mappings into arrays of a new capacity.
+     **********************************************************************************************************************************************************/
+    private void resize (final int capacity)
+      {
+        final var oldKeys = keys;
+        final var oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        size = 0;
+
+        for (int slot = 0; slot < oldValues.length; slot++)
+          {
+            if (oldValues[slot] != null)
+              {
+                insert(oldKeys[slot], oldValues[slot]);
+              }
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the home slot of a key}. Keys are scrambled by a multiplicative hash, because tile keys differ mostly in the lowest bits of each field.
+     **********************************************************************************************************************************************************/
+    private static int slotOf (final long key, final int mask)
+      {
+        return (int)((key * 0x9e3779b97f4a7c15L) >>> 32) & mask;
+      }
+
+    /***********************************************************************************************************************************************************
+     *
+     **********************************************************************************************************************************************************/
+    @SuppressWarnings("unchecked")
+    private V value (final int slot)
+      {
+        return (V)values[slot];
+      }
+  }
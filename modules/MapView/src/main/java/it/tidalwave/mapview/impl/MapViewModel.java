@@ -34,10 +34,9 @@ import it.tidalwave.mapview.MapPoint;
 import it.tidalwave.mapview.MapViewPoint;
 import it.tidalwave.mapview.TileSource;
 import it.tidalwave.mapview.javafx.MapView;
+import lombok.AccessLevel;
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 import lombok.experimental.Accessors;
-import lombok.experimental.Delegate;
 import lombok.extern.slf4j.Slf4j;
 
 /***************************************************************************************************************************************************************
@@ -80,6 +79,12 @@ import lombok.extern.slf4j.Slf4j;
  *
  * At this point the implementor must invoke {@link #iterateOnGrid(BiConsumer)} that will call back passing the URL and the grid position for each tile.
  *
+ * Since this class is exercised at every mouse movement and drag step, its state is kept in primitive fields and all the computations are performed in
+ * an allocation-free fashion, using the primitive variants of {@link it.tidalwave.mapview.Projection} methods. Records such as {@link MapPoint} or
+ * {@link TilePos} are only created on demand by the accessors and methods that return them; code in hot paths should prefer the primitive accessors
+ * (such as {@link #gridOffsetX()} or {@link #tileCenterColumn()}), the out-parameter variants such as
+ * {@link #mapViewPointToCoordinates(double, double, double[])} and {@link #iterateOnGrid(GridConsumer)}.
+ *
  * Two further methods are available:
  *
  * <ul>
@@ -93,20 +98,20 @@ import lombok.extern.slf4j.Slf4j;
 @Accessors(fluent = true) @Getter @Slf4j
 public class MapViewModel
   {
-    @RequiredArgsConstructor(staticName = "of")
-    static class TileInfo
+    /***********************************************************************************************************************************************************
+     * A callback for {@link #iterateOnGrid(GridConsumer)}.
+     **********************************************************************************************************************************************************/
+    @FunctionalInterface
+    public static interface GridConsumer
       {
-        @Delegate @Nonnull
-        private final TilePos pos;
-
-        @Getter @Nonnull
-        private final URI uri;
-
-        @Override @Nonnull
-        public String toString()
-          {
-            return String.format("(%d, %d) - %s", pos.column, pos.row, uri);
-          }
+        /*******************************************************************************************************************************************************
+         * Accepts a tile of the grid. The position of the tile in the map at the current zoom level can be extracted from the key.
+         * @param   gridColumn  the column in the grid
+         * @param   gridRow     the row in the grid
+         * @param   key         the key of the tile
+         * @see                 TileKey
+         ******************************************************************************************************************************************************/
+        public void accept (int gridColumn, int gridRow, long key);
       }
 
     private static final int MARGIN = 1;
@@ -118,19 +123,35 @@ public class MapViewModel
     /** The zoom level. */
     private double zoom = 1;
 
-    /** The coordinates rendered at the center of the map — note: this is _not_ the center of the TileGrid, since there is an offset. */
-    private MapCoordinates center = MapCoordinates.of(0.0, 0.0);
+    /** The latitude rendered at the center of the map — note: this is _not_ the center of the TileGrid, since there is an offset. */
+    private double centerLatitude;
+
+    /** The longitude rendered at the center of the map. */
+    private double centerLongitude;
+
+    /** The x coordinate of the center, expressed in terms of pixel coordinates relative to the map as a huge, untiled image. */
+    private double pointCenterX;
+
+    /** The y coordinate of the center, expressed in terms of pixel coordinates relative to the map as a huge, untiled image. */
+    private double pointCenterY;
 
-    /** The same of above, but expressed in terms of pixel coordinates relative to the map as a huge, untiled image. */
-    private MapPoint pointCenter = MapPoint.of(0.0, 0.0);
+    /** The column of the tile that corresponds to the coordinates. */
+    private int tileCenterColumn;
 
-    /** The position of the tile that corresponds to the coordinates. */
-    private TilePos tileCenter;
+    /** The row of the tile that corresponds to the coordinates. */
+    private int tileCenterRow;
 
-    /** The offset inside the tile that corresponds to the coordinates. */
-    private Offset tileOffset = Offset.of(0.0, 0.0);
+    /** The horizontal offset inside the tile that corresponds to the coordinates. */
+    private double tileOffsetX;
 
-    private Offset gridOffset = Offset.of(0.0, 0.0);
+    /** The vertical offset inside the tile that corresponds to the coordinates. */
+    private double tileOffsetY;
+
+    /** The horizontal offset of the grid. */
+    private double gridOffsetX;
+
+    /** The vertical offset of the grid. */
+    private double gridOffsetY;
 
     /** How many columns in the TileGrid. */
     private int columns;
@@ -144,6 +165,10 @@ public class MapViewModel
     /** The height of the MapView. */
     private double mapViewHeight;
 
+    /** A scratch buffer for projection results, so no objects are allocated; this class is confined to a single thread. */
+    @Getter(AccessLevel.NONE)
+    private final double[] buffer = new double[2];
+
     /***********************************************************************************************************************************************************
      * @param   tileSource        the tile source
      **********************************************************************************************************************************************************/
@@ -169,9 +194,12 @@ public class MapViewModel
      **********************************************************************************************************************************************************/
     public void setCenterAndZoom (@Nonnull final MapCoordinates coordinates, final double zoom)
       {
-        this.center = coordinates;
+        this.centerLatitude = coordinates.latitude();
+        this.centerLongitude = coordinates.longitude();
         this.zoom = Math.floor(zoom);
-        pointCenter = tileSource.coordinatesToMapPoint(coordinates, zoom);
+        tileSource.coordinatesToMapPoint(centerLatitude, centerLongitude, zoom, buffer);
+        pointCenterX = buffer[0];
+        pointCenterY = buffer[1];
         recompute();
       }
 
@@ -182,9 +210,23 @@ public class MapViewModel
      **********************************************************************************************************************************************************/
     public void setCenterAndZoom (@Nonnull final MapPoint mapPoint, final double zoom)
       {
-        this.pointCenter = mapPoint;
+        setCenterAndZoom(mapPoint.x(), mapPoint.y(), zoom);
+      }
+
+    /***********************************************************************************************************************************************************
+     * Set the center point and the zoom level. This method doesn't allocate objects.
+     * @param   x                 the x coordinate of the map point
+     * @param   y                 the y coordinate of the map point
+     * @param   zoom              the zoom level
+     **********************************************************************************************************************************************************/
+    public void setCenterAndZoom (final double x, final double y, final double zoom)
+      {
+        this.pointCenterX = x;
+        this.pointCenterY = y;
         this.zoom = Math.floor(zoom);
-        center = tileSource.mapPointToCoordinates(pointCenter, zoom);
+        tileSource.mapPointToCoordinates(x, y, zoom, buffer);
+        centerLatitude = buffer[0];
+        centerLongitude = buffer[1];
         recompute();
       }
 
@@ -212,13 +254,31 @@ public class MapViewModel
      **********************************************************************************************************************************************************/
     public void iterateOnGrid (@Nonnull final BiConsumer<? super TilePos, ? super URI> consumer)
       {
-        final var grid = getGrid();
+        iterateOnGrid((gridColumn, gridRow, key) ->
+                consumer.accept(TilePos.of(gridColumn, gridRow), tileSource.getTileUri(TileKey.column(key), TileKey.row(key), TileKey.zoom(key))));
+      }
+
+    /***********************************************************************************************************************************************************
+     * Iterates over all the tiles providing the position in the grid and the key of the image for each tile. Neither URLs nor other objects are created,
+     * so it's cheaper than {@link #iterateOnGrid(BiConsumer)}.
+     * @param   consumer    the call back
+     **********************************************************************************************************************************************************/
+    public void iterateOnGrid (@Nonnull final GridConsumer consumer)
+      {
+        final int max = (int)Math.pow(2, zoom);
+        // (left, top) tile must be adjusted for half the tile array size
+        final int left = tileCenterColumn - columns / 2;
+        final int top = tileCenterRow - rows / 2;        // rows go top to bottom
+        final var sourceId = TileKey.sourceId(tileSource);
 
-        for (int r = 0; r < grid.length; r++)
+        for (int r = 0; r < rows; r++)
           {
-            for (int c = 0; c < grid[r].length; c++)
+            final var row = Math.floorMod(top + r, max);
+
+            for (int c = 0; c < columns; c++)
               {
-                consumer.accept(TilePos.of(c, r), grid[r][c].uri);
+                final var column = Math.floorMod(left + c, max);
+                consumer.accept(c, r, TileKey.of(sourceId, (int)zoom, column, row));
               }
           }
       }
@@ -254,9 +314,11 @@ public class MapViewModel
     @Nonnull
     public MapArea getArea()
       {
-        final var nw = mapViewPointToCoordinates(MapViewPoint.of(0, 0));
-        final var se = mapViewPointToCoordinates(MapViewPoint.of(mapViewWidth, mapViewHeight));
-        return MapArea.of(nw.latitude(), se.longitude(), se.latitude(), nw.longitude());
+        mapViewPointToCoordinates(0, 0, buffer);
+        final var north = buffer[0];
+        final var west = buffer[1];
+        mapViewPointToCoordinates(mapViewWidth, mapViewHeight, buffer);
+        return MapArea.of(north, buffer[1], buffer[0], west);
       }
 
     /***********************************************************************************************************************************************************
@@ -266,11 +328,63 @@ public class MapViewModel
       {
         // both pixel and tile h-axis goes left -> right, v-axis top -> bottom
         final var tileSize = tileSource.getTileSize();
-        tileCenter = TilePos.of((int)(pointCenter.x() / tileSize), (int)(pointCenter.y() / tileSize));
-        tileOffset = Offset.of(pointCenter.x() % tileSize, pointCenter.y() % tileSize);
-        gridOffset = Offset.of(-tileOffset.x() - tileSize * columns / 2.0 + mapViewWidth / 2.0 + tileSize / 2.0,
-                               -tileOffset.y() - tileSize * rows / 2.0 + mapViewHeight / 2.0 + tileSize / 2.0);
-        log.trace("center: {}, {} - tile center: {} - tile offset: {} - grid offset: {}", center, pointCenter, tileCenter, tileOffset, gridOffset);
+        tileCenterColumn = (int)(pointCenterX / tileSize);
+        tileCenterRow = (int)(pointCenterY / tileSize);
+        tileOffsetX = pointCenterX % tileSize;
+        tileOffsetY = pointCenterY % tileSize;
+        gridOffsetX = -tileOffsetX - tileSize * columns / 2.0 + mapViewWidth / 2.0 + tileSize / 2.0;
+        gridOffsetY = -tileOffsetY - tileSize * rows / 2.0 + mapViewHeight / 2.0 + tileSize / 2.0;
+
+        if (log.isTraceEnabled()) // don't create records and varargs when not needed
+          {
+            log.trace("center: {}, {} - tile center: {} - tile offset: {} - grid offset: {}",
+                      center(), pointCenter(), tileCenter(), tileOffset(), gridOffset());
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the coordinates rendered at the center of the map}. Note that this is <em>not</em> the center of the tile grid, since there is an offset.
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    public MapCoordinates center()
+      {
+        return MapCoordinates.of(centerLatitude, centerLongitude);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the center of the map expressed in terms of pixel coordinates relative to the map as a huge, untiled image}.
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    public MapPoint pointCenter()
+      {
+        return MapPoint.of(pointCenterX, pointCenterY);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the position of the tile that corresponds to the center}.
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    public TilePos tileCenter()
+      {
+        return TilePos.of(tileCenterColumn, tileCenterRow);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the offset inside the tile that corresponds to the center}.
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    public Offset tileOffset()
+      {
+        return Offset.of(tileOffsetX, tileOffsetY);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the offset of the grid}.
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    public Offset gridOffset()
+      {
+        return Offset.of(gridOffsetX, gridOffsetY);
       }
 
     /***********************************************************************************************************************************************************
@@ -280,63 +394,72 @@ public class MapViewModel
     @Nonnull
     public MapViewPoint coordinatesToMapViewPoint (@Nonnull final MapCoordinates coordinates)
       {
-        return toMapViewPoint(tileSource.coordinatesToMapPoint(coordinates, zoom));
+        final var result = new double[2];
+        coordinatesToMapViewPoint(coordinates.latitude(), coordinates.longitude(), result);
+        return MapViewPoint.of(result[0], result[1]);
       }
 
     /***********************************************************************************************************************************************************
-     * {@return the coordinates corresponding to the given mapViewPoint on the map viewer}.
-     * @param   mapViewPoint        the mapViewPoint relative to the map view: (0,0) is the top left and (w,h) is the bottom right
+     * Computes the point relative to the map view corresponding to the given coordinates, storing {@code x} and {@code y} into {@code result[0]} and
+     * {@code result[1]}. This method doesn't allocate objects.
+     * @param   latitude            the latitude
+     * @param   longitude           the longitude
+     * @param   result              the array (at least two elements long) that receives the result
      **********************************************************************************************************************************************************/
-    @Nonnull
-    public MapCoordinates mapViewPointToCoordinates (@Nonnull final MapViewPoint mapViewPoint)
+    public void coordinatesToMapViewPoint (final double latitude, final double longitude, @Nonnull final double[] result)
       {
-        return tileSource.mapPointToCoordinates(toMapPoint(mapViewPoint), zoom);
+        tileSource.coordinatesToMapPoint(latitude, longitude, zoom, result);
+        result[0] += mapViewWidth / 2.0 - pointCenterX;
+        result[1] += mapViewHeight / 2.0 - pointCenterY;
       }
 
     /***********************************************************************************************************************************************************
-     * {@return the current grid of tile info}.
+     * Computes the points relative to the map view corresponding to a batch of coordinates, storing the i-th point into {@code xs[i]} and
+     * {@code ys[i]}.
+     * @param   latitudes           the latitudes
+     * @param   longitudes          the longitudes
+     * @param   xs                  the array that receives the x coordinates
+     * @param   ys                  the array that receives the y coordinates
+     * @see     it.tidalwave.mapview.Projection#coordinatesToMapPoints(double[], double[], double, double[], double[])
      **********************************************************************************************************************************************************/
-    @Nonnull
-    private TileInfo[][] getGrid()
+    public void coordinatesToMapViewPoints (@Nonnull final double[] latitudes,
+                                            @Nonnull final double[] longitudes,
+                                            @Nonnull final double[] xs,
+                                            @Nonnull final double[] ys)
       {
-        final int max = (int)Math.pow(2, zoom);
-        // (left, top) tile must be adjusted for half the tile array size
-        final int left = tileCenter.column() - columns / 2;
-        final int top = tileCenter.row() - rows / 2;        // rows go top to bottom
-        final var grid = new TileInfo[rows][columns];
+        tileSource.coordinatesToMapPoints(latitudes, longitudes, zoom, xs, ys);
+        final var dx = mapViewWidth / 2.0 - pointCenterX;
+        final var dy = mapViewHeight / 2.0 - pointCenterY;
 
-        for (int r = 0; r < rows; r++)
+        for (int i = 0; i < xs.length; i++)
           {
-            for (int c = 0; c < columns; c++)
-              {
-                final var column = Math.floorMod(left + c, max);
-                final var row = Math.floorMod(top + r, max);
-                final var uri = tileSource.getTileUri(column, row, (int)zoom);
-                grid[r][c] = TileInfo.of(TilePos.of(column, row), uri);
-              }
+            xs[i] += dx;
+            ys[i] += dy;
           }
-
-        return grid;
       }
 
     /***********************************************************************************************************************************************************
-     * {@return a point in map view coordinates corresponding to a point in map coordinates}.
-     * @param   mapPoint            the point
+     * {@return the coordinates corresponding to the given mapViewPoint on the map viewer}.
+     * @param   mapViewPoint        the mapViewPoint relative to the map view: (0,0) is the top left and (w,h) is the bottom right
      **********************************************************************************************************************************************************/
     @Nonnull
-    private MapViewPoint toMapViewPoint (@Nonnull final MapPoint mapPoint)
+    public MapCoordinates mapViewPointToCoordinates (@Nonnull final MapViewPoint mapViewPoint)
       {
-        return MapViewPoint.of(mapPoint.translated(mapViewWidth / 2.0 - pointCenter.x(), mapViewHeight / 2.0 - pointCenter.y()));
+        final var result = new double[2];
+        mapViewPointToCoordinates(mapViewPoint.x(), mapViewPoint.y(), result);
+        return MapCoordinates.of(result[0], result[1]);
       }
 
     /***********************************************************************************************************************************************************
-     * {@return a point in map coordinates corresponding to a point in map view coordinates}.
-     * @param   mapViewPoint        the point
+     * Computes the coordinates corresponding to the given point on the map viewer, storing latitude and longitude into {@code result[0]} and
+     * {@code result[1]}. This method doesn't allocate objects.
+     * @param   x                   the x coordinate relative to the map view: 0 is the left side
+     * @param   y                   the y coordinate relative to the map view: 0 is the top side
+     * @param   result              the array (at least two elements long) that receives the result
      **********************************************************************************************************************************************************/
-    @Nonnull
-    private MapPoint toMapPoint (@Nonnull final MapViewPoint mapViewPoint)
+    public void mapViewPointToCoordinates (final double x, final double y, @Nonnull final double[] result)
       {
-        return mapViewPoint.translated(pointCenter.x() - mapViewWidth / 2, pointCenter.y() - mapViewHeight / 2);
+        tileSource.mapPointToCoordinates(x + pointCenterX - mapViewWidth / 2.0, y + pointCenterY - mapViewHeight / 2.0, zoom, result);
       }
 
     /***********************************************************************************************************************************************************
@@ -0,0 +1,281 @@
+/*
+ * *************************************************************************************************************************************************************
+ *
+ * MapView: a JavaFX map renderer for tile-based servers
+ * http://tidalwave.it/projects/mapview
+ *
+ * Copyright (C) 2024 - 2025 by Tidalwave s.a.s. (http://tidalwave.it)
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.  See the License for the specific language governing permissions and limitations under the License.
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * git clone https://bitbucket.org/tidalwave/mapview-src
+ * git clone https://github.com/tidalwave-it/mapview-src
+ *
+ * *************************************************************************************************************************************************************
+ */
+package it.tidalwave.mapview.impl;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import java.util.Optional;
+import it.tidalwave.mapview.javafx.MapView;
+import lombok.extern.slf4j.Slf4j;
+
+/***************************************************************************************************************************************************************
+ *
+ * A memory cache of decoded tile images, bounded by the number of bytes taken by their pixels. When the budget is exceeded, the least recently used images
+ * are evicted, one at a time: unlike a map of soft references, memory is reclaimed gradually and predictably, without waiting for the garbage collector
+ * to be under pressure. Operations are cheap, so they are simply serialized.
+ *
+ * Images are indexed by {@link TileKey}s in a {@link LongObjectHashMap}, and entries are linked in a list in access order, so a lookup doesn't need to
+ * hash an URI and a hit only relinks an entry.
+ *
+ * @author  Fabrizio Giudici
+ *
+ **************************************************************************************************************************************************************/
+@Slf4j
+public class MemoryImageCache
+  {
+    /** The number of bytes per pixel of a decoded image. */
+    public static final int BYTES_PER_PIXEL = 4;
+
+    /***********************************************************************************************************************************************************
+     * A cached image with its weight, linked to the previous and next ones in access order.
+     **********************************************************************************************************************************************************/
+    private static final class Entry
+      {
+        private final long key;
+
+        @Nonnull
+        private Object image;
+
+        private long weight;
+
+        @Nullable
+        private Entry previous;
+
+        @Nullable
+        private Entry next;
+
+        private Entry (final long key, @Nonnull final Object image, final long weight)
+          {
+            this.key = key;
+            this.image = image;
+            this.weight = weight;
+          }
+      }
+
+    /** The cached images, indexed by key. */
+    private final LongObjectHashMap<Entry> entries = new LongObjectHashMap<>();
+
+    /** The least recently used entry. */
+    @Nullable
+    private Entry eldest;
+
+    /** The most recently used entry. */
+    @Nullable
+    private Entry youngest;
+
+    /** The maximum weight of the cached images, in bytes. */
+    private final long budget;
+
+    /** The current weight of the cached images, in bytes. */
+    private long weight;
+
+    private long hitCount;
+
+    private long missCount;
+
+    private long evictionCount;
+
+    /***********************************************************************************************************************************************************
+     * Creates a new instance.
+     * @param   budget          the maximum weight of the cached images, in bytes
+     **********************************************************************************************************************************************************/
+    public MemoryImageCache (final long budget)
+      {
+        this.budget = budget;
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the weight of a square image}, that is the number of bytes taken by its pixels.
+     * @param   size            the size of the image
+     **********************************************************************************************************************************************************/
+    public static long weightOf (final int size)
+      {
+        return (long)size * size * BYTES_PER_PIXEL;
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the image with the given key}, if cached.
+     * @param   key             the key
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    public synchronized Optional<Object> get (final long key)
+      {
+        final var entry = touch(key);
+
+        if (entry == null)
+          {
+            missCount++;
+            return Optional.empty();
+          }
+
+        hitCount++;
+        return Optional.of(entry.image);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the image with the given key}, if cached. Unlike {@link #get(long)}, it's not accounted in the statistics: it's meant for opportunistic
+     * lookups, such as searching for a placeholder.
+     * @param   key             the key
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    public synchronized Optional<Object> peek (final long key)
+      {
+        final var entry = touch(key);
+        return (entry == null) ? Optional.empty() : Optional.of(entry.image);
+      }
+
+    /***********************************************************************************************************************************************************
+     * Puts an image into this cache, evicting the least recently used ones if the budget is exceeded. Images heavier than the whole budget are not cached.
+     * @param   key             the key
+     * @param   image           the image
+     * @param   imageWeight     the weight of the image, in bytes
+     **********************************************************************************************************************************************************/
+    public synchronized void put (final long key, @Nonnull final Object image, final long imageWeight)
+      {
+        if (imageWeight > budget)
+          {
+            log.warn("image {} is larger than the memory cache budget: {} > {}", TileKey.toString(key), imageWeight, budget);
+            return;
+          }
+
+        var entry = touch(key);
+
+        if (entry != null)
+          {
+            weight -= entry.weight;
+            entry.image = image;
+            entry.weight = imageWeight;
+          }
+        else
+          {
+            entry = new Entry(key, image, imageWeight);
+            entries.put(key, entry);
+            link(entry);
+          }
+
+        weight += imageWeight;
+
+        while ((weight > budget) && (eldest != entry))
+          {
+            final var evicted = eldest;
+            log.trace("evicting {}", TileKey.toString(evicted.key));
+            unlink(evicted);
+            entries.remove(evicted.key);
+            weight -= evicted.weight;
+            evictionCount++;
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the statistics of this cache}.
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    public synchronized MapView.CacheStats getStats()
+      {
+        return new MapView.CacheStats(hitCount, missCount, evictionCount, entries.size(), weight, budget);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the keys of the cached images}, from the least to the most recently used.
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    /* visible for testing */ synchronized long[] keys()
+      {
+        final var keys = new long[entries.size()];
+        var i = 0;
+
+        for (var entry = eldest; entry != null; entry = entry.next)
+          {
+            keys[i++] = entry.key;
+          }
+
+        return keys;
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the entry with the given key}, after making it the most recently used, or {@code null} if there's none.
+     **********************************************************************************************************************************************************/
+    @Nullable
+    private Entry touch (final long key)
+      {
+        final var entry = entries.get(key);
+
+        if ((entry != null) && (entry != youngest))
+          {
+            unlink(entry);
+            link(entry);
+          }
+
+        return entry;
+      }
+
+    /***********************************************************************************************************************************************************
+     * Links an entry as the most recently used.
+     **********************************************************************************************************************************************************/
+    private void link (@Nonnull final Entry entry)
+      {
+        entry.previous = youngest;
+        entry.next = null;
+
+        if (youngest != null)
+          {
+            youngest.next = entry;
+          }
+        else
+          {
+            eldest = entry;
+          }
+
+        youngest = entry;
+      }
+
+    /***********************************************************************************************************************************************************
+     * Unlinks an entry.
+     **********************************************************************************************************************************************************/
+    private void unlink (@Nonnull final Entry entry)
+      {
+        if (entry.previous != null)
+          {
+            entry.previous.next = entry.next;
+          }
+        else
+          {
+            eldest = entry.next;
+          }
+
+        if (entry.next != null)
+          {
+            entry.next.previous = entry.previous;
+          }
+        else
+          {
+            youngest = entry.previous;
+          }
+
+        entry.previous = null;
+        entry.next = null;
+      }
+  }
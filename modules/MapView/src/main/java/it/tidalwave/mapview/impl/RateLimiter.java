@@ -0,0 +1,113 @@
+/*
+ * *************************************************************************************************************************************************************
+ *
+ * MapView: a JavaFX map renderer for tile-based servers
+ * http://tidalwave.it/projects/mapview
+ *
+ * Copyright (C) 2024 - 2025 by Tidalwave s.a.s. (http://tidalwave.it)
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.  See the License for the specific language governing permissions and limitations under the License.
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * git clone https://bitbucket.org/tidalwave/mapview-src
+ * git clone https://github.com/tidalwave-it/mapview-src
+ *
+ * *************************************************************************************************************************************************************
+ */
+package it.tidalwave.mapview.impl;
+
+import jakarta.annotation.Nonnull;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/***************************************************************************************************************************************************************
+ *
+ * A rate limiter for requests to tile servers, with a token bucket for each host. A bucket holds at most one second worth of tokens (and at least one), so
+ * short bursts are allowed while the average rate never exceeds the limit. Callers never block here: they are told how long to wait for the next token, so
+ * they can do something else in the meantime.
+ *
+ * @author  Fabrizio Giudici
+ *
+ **************************************************************************************************************************************************************/
+@Slf4j
+public class RateLimiter
+  {
+    /***********************************************************************************************************************************************************
+     * The token bucket of a host.
+     **********************************************************************************************************************************************************/
+    /* visible for testing */ static final class Bucket
+      {
+        /** The available tokens. */
+        /* visible for testing */ double tokens = Double.NaN;
+
+        /** The last time tokens were added. */
+        private long lastRefillNanos;
+
+        /*******************************************************************************************************************************************************
+         * Tries to take a token.
+         * @param   rate            the number of tokens added per second
+         * @param   nowNanos        the current time
+         * @return                  0 if a token has been taken, otherwise the nanoseconds to wait for the next token
+         ******************************************************************************************************************************************************/
+        /* visible for testing */ synchronized long tryAcquire (final double rate, final long nowNanos)
+          {
+            final var capacity = Math.max(1.0, rate);
+
+            if (Double.isNaN(tokens))
+              {
+                tokens = capacity;
+              }
+            else
+              {
+                tokens = Math.min(capacity, tokens + (nowNanos - lastRefillNanos) * rate / TimeUnit.SECONDS.toNanos(1));
+              }
+
+            lastRefillNanos = nowNanos;
+
+            if (tokens >= 1.0)
+              {
+                tokens -= 1.0;
+                return 0;
+              }
+
+            return Math.max(1, (long)Math.ceil((1.0 - tokens) * TimeUnit.SECONDS.toNanos(1) / rate));
+          }
+      }
+
+    /** The token buckets. */
+    /* visible for testing */ final Map<String, Bucket> bucketsByHost = new ConcurrentHashMap<>();
+
+    /***********************************************************************************************************************************************************
+     * Tries to take a token for a request to the given host.
+     * @param   host            the host
+     * @param   rate            the maximum number of requests per second; {@link Double#POSITIVE_INFINITY} (or a non-positive value) means no limit
+     * @return                  0 if the request can be sent now, otherwise the nanoseconds to wait before trying again
+     **********************************************************************************************************************************************************/
+    public long tryAcquire (@Nonnull final String host, final double rate)
+      {
+        if ((rate <= 0) || Double.isInfinite(rate))
+          {
+            return 0;
+          }
+
+        final var wait = bucketsByHost.computeIfAbsent(host, h -> new Bucket()).tryAcquire(rate, System.nanoTime());
+
+        if (wait > 0)
+          {
+            log.debug("rate limit for {} reached, next token in {} msec", host, TimeUnit.NANOSECONDS.toMillis(wait));
+          }
+
+        return wait;
+      }
+  }
@@ -0,0 +1,257 @@
+/*
+ * *************************************************************************************************************************************************************
+ *
+ * MapView: a JavaFX map renderer for tile-based servers
+ * http://tidalwave.it/projects/mapview
+ *
+ * Copyright (C) 2024 - 2025 by Tidalwave s.a.s. (http://tidalwave.it)
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.  See the License for the specific language governing permissions and limitations under the License.
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * git clone https://bitbucket.org/tidalwave/mapview-src
+ * git clone https://github.com/tidalwave-it/mapview-src
+ *
+ * *************************************************************************************************************************************************************
+ */
+package it.tidalwave.mapview.impl;
+
+import jakarta.annotation.Nonnull;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.net.URI;
+import lombok.extern.slf4j.Slf4j;
+import static java.time.format.DateTimeFormatter.RFC_1123_DATE_TIME;
+
+/***************************************************************************************************************************************************************
+ *
+ * A scheduler for tiles whose download must be retried later, e.g. because the server is throttling requests. Tiles wait in a {@link DelayQueue} and are
+ * passed back to a consumer (usually putting them back into the download queue) when their delay has expired; so no loader thread is blocked while waiting.
+ * The delay grows exponentially with the number of attempts, with some jitter so retries of many tiles don't hit the server at the same time, and is never
+ * shorter than what the server asked for with a {@code Retry-After} header. After a maximum number of attempts the tile is given up.
+ *
+ * @author  Fabrizio Giudici
+ *
+ **************************************************************************************************************************************************************/
+@Slf4j
+public class RetryScheduler
+  {
+    /** The longest delay computed by the exponential backoff (a {@code Retry-After} header can ask for more). */
+    private static final Duration MAX_BACKOFF = Duration.ofMinutes(2);
+
+    /***********************************************************************************************************************************************************
+     * A tile waiting in the delay queue.
+     **********************************************************************************************************************************************************/
+    /* visible for testing */ record PendingRetry (@Nonnull AbstractTile tile, long dueNanos) implements Delayed
+      {
+        @Override
+        public long getDelay (@Nonnull final TimeUnit unit)
+          {
+            return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+          }
+
+        @Override
+        public int compareTo (@Nonnull final Delayed other)
+          {
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+          }
+      }
+
+    /** The tiles waiting for a retry. */
+    /* visible for testing */ final DelayQueue<PendingRetry> delayQueue = new DelayQueue<>();
+
+    /** The number of failed attempts for each tile. */
+    /* visible for testing */ final Map<URI, Integer> attemptsByUri = new ConcurrentHashMap<>();
+
+    /** The maximum number of attempts for downloading a tile. */
+    private final int maxAttempts;
+
+    /** The delay after the first failed attempt. */
+    @Nonnull
+    private final Duration baseDelay;
+
+    /** What to do with a tile whose delay has expired; returns {@code false} if the tile couldn't be resubmitted. */
+    @Nonnull
+    private final Predicate<AbstractTile> resubmitter;
+
+    /** The thread waiting on the delay queue. */
+    @Nonnull
+    private final Thread thread;
+
+    /***********************************************************************************************************************************************************
+     * Creates a new instance.
+     * @param   maxAttempts     the maximum number of attempts for downloading a tile
+     * @param   baseDelay       the delay after the first failed attempt
+     * @param   resubmitter     what to do with a tile whose delay has expired
+     **********************************************************************************************************************************************************/
+    public RetryScheduler (final int maxAttempts, @Nonnull final Duration baseDelay, @Nonnull final Predicate<AbstractTile> resubmitter)
+      {
+        this.maxAttempts = maxAttempts;
+        this.baseDelay = baseDelay;
+        this.resubmitter = resubmitter;
+        thread = Thread.ofPlatform().daemon().name("tile-retry-scheduler").start(this::loop);
+      }
+
+    /***********************************************************************************************************************************************************
+     * Schedules a new attempt for a tile whose download failed.
+     * @param   tile            the tile
+     * @param   retryAfter      the delay requested by the server, if any
+     * @return                  {@code true} if a new attempt has been scheduled, {@code false} if the tile has been given up
+     **********************************************************************************************************************************************************/
+    public boolean schedule (@Nonnull final AbstractTile tile, @Nonnull final Optional<Duration> retryAfter)
+      {
+        final var uri = tile.getUri();
+        final int attempts = attemptsByUri.merge(uri, 1, Integer::sum);
+
+        if (attempts >= maxAttempts)
+          {
+            log.warn("giving up {} after {} attempts", uri, attempts);
+            attemptsByUri.remove(uri);
+            return false;
+          }
+
+        final var delay = computeDelay(attempts, retryAfter);
+        log.debug("retrying {} in {} (attempt #{})", uri, delay, attempts + 1);
+        delayQueue.add(new PendingRetry(tile, System.nanoTime() + delay.toNanos()));
+        return true;
+      }
+
+    /***********************************************************************************************************************************************************
+     * Notifies that a tile has been successfully downloaded, so its attempt counter can be reset.
+     * @param   tile            the tile
+     **********************************************************************************************************************************************************/
+    public void succeeded (@Nonnull final AbstractTile tile)
+      {
+        attemptsByUri.remove(tile.getUri());
+      }
+
+    /***********************************************************************************************************************************************************
+     * Discards the pending retries, retaining only those for the given zoom level.
+     * @param   zoom            the zoom level to retain
+     **********************************************************************************************************************************************************/
+    public void retain (final int zoom)
+      {
+        delayQueue.removeIf(retry ->
+          {
+            final var discard = retry.tile().getZoom() != zoom;
+
+            if (discard)
+              {
+                attemptsByUri.remove(retry.tile().getUri());
+              }
+
+            return discard;
+          });
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the number of tiles waiting for a retry}.
+     **********************************************************************************************************************************************************/
+    public int getPendingCount()
+      {
+        return delayQueue.size();
+      }
+
+    /***********************************************************************************************************************************************************
+     * Stops this scheduler, discarding all the pending retries.
+     **********************************************************************************************************************************************************/
+    public void dispose()
+      {
+        thread.interrupt();
+        delayQueue.clear();
+        attemptsByUri.clear();
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the delay before the next attempt}. It's an exponential backoff with "equal jitter" (a random value between half and the full backoff), never
+     * shorter than what requested by the server.
+     * @param   attempts        the number of failed attempts so far
+     * @param   retryAfter      the delay requested by the server, if any
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    /* visible for testing */ Duration computeDelay (final int attempts, @Nonnull final Optional<Duration> retryAfter)
+      {
+        final var shift = Math.min(attempts - 1, 30);
+        final var backoffNanos = Math.min(baseDelay.toNanos() << shift, MAX_BACKOFF.toNanos());
+        final var halfBackoff = Math.max(backoffNanos / 2, 1);
+        final var delay = Duration.ofNanos(halfBackoff + ThreadLocalRandom.current().nextLong(halfBackoff + 1));
+        return retryAfter.filter(d -> d.compareTo(delay) > 0).orElse(delay);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the delay specified by a {@code Retry-After} header}, which can be either a number of seconds or an HTTP date.
+     * @param   value           the value of the header
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    public static Optional<Duration> parseRetryAfter (@Nonnull final String value)
+      {
+        final var trimmed = value.trim();
+
+        try
+          {
+            return Optional.of(Duration.ofSeconds(Math.max(0, Long.parseLong(trimmed))));
+          }
+        catch (NumberFormatException e)
+          {
+            try
+              {
+                final var delay = Duration.between(ZonedDateTime.now(), ZonedDateTime.parse(trimmed, RFC_1123_DATE_TIME));
+                return Optional.of(delay.isNegative() ? Duration.ZERO : delay);
+              }
+            catch (DateTimeParseException e2)
+              {
+                log.warn("unparseable Retry-After: {}", value);
+                return Optional.empty();
+              }
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * The loop that resubmits tiles whose delay has expired.
+     **********************************************************************************************************************************************************/
+    private void loop()
+      {
+        while (!Thread.interrupted())
+          {
+            try
+              {
+                final var tile = delayQueue.take().tile();
+
+                if (!resubmitter.test(tile))
+                  {
+                    log.warn("couldn't resubmit {}", tile);
+                    attemptsByUri.remove(tile.getUri());
+                  }
+              }
+            catch (InterruptedException ignored)
+              {
+                Thread.currentThread().interrupt();
+                break;
+              }
+            catch (Exception e) // defensive
+              {
+                log.error("", e);
+              }
+          }
+
+        log.info("retry scheduler terminated");
+      }
+  }
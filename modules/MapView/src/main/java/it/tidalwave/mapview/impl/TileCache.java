@@ -25,30 +25,49 @@
  */
 package it.tidalwave.mapview.impl;
 
-import java.lang.ref.SoftReference;
 import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 import java.util.stream.IntStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import it.tidalwave.mapview.TileSource;
 import it.tidalwave.mapview.javafx.MapView;
 import lombok.extern.slf4j.Slf4j;
 import static it.tidalwave.mapview.impl.NameMangler.mangle;
 import static java.net.http.HttpClient.Redirect.ALWAYS;
+import static java.net.http.HttpClient.Version.HTTP_2;
 
 /***************************************************************************************************************************************************************
  *
@@ -60,20 +79,97 @@ import static java.net.http.HttpClient.Redirect.ALWAYS;
 @Slf4j
 public class TileCache
   {
-    /** The queue of tiles to be downloaded. */
+    /** The suffix of the temporary files tiles are downloaded into. */
+    /* visible for testing */ static final String TEMP_SUFFIX = ".part";
+
+    /** The initial capacity of the queue of tiles to be downloaded. */
+    private static final int INITIAL_QUEUE_CAPACITY = 64;
+
+    /** The maximum number of zoom levels an ancestor tile is scaled up by to be used as a placeholder: beyond that, it would be too blurry. */
+    private static final int MAX_PLACEHOLDER_LEVELS = 4;
+
+    /***********************************************************************************************************************************************************
+     * A tile in the download queue, with its ranking computed when it was queued: the ordering of a {@link PriorityBlockingQueue} must not change while
+     * elements are in it.
+     **********************************************************************************************************************************************************/
+    /* visible for testing */ record QueuedTile (@Nonnull AbstractTile tile, long priority) {}
+
+    /** The queue of tiles to be downloaded, ordered by distance from {@link #priorityCenter}. */
+    @Nonnull
+    /* visible for testing */ final BlockingQueue<QueuedTile> tileQueue =
+            new PriorityBlockingQueue<>(INITIAL_QUEUE_CAPACITY, Comparator.comparingLong(QueuedTile::priority));
+
+    /** Guards the ranking of tiles, so no tile is queued with a stale ranking while the queue is being re-ranked, and the removal of the head. */
+    private final ReentrantLock rankingLock = new ReentrantLock();
+
+    /** Signalled when tiles are added to the download queue, re-ranked or removed, so the tile at its head might have changed. */
+    private final Condition queueChanged = rankingLock.newCondition();
+
+    /** The tile at the center of the viewport: tiles closer to it are downloaded first. */
     @Nonnull
-    /* visible for testing */ final BlockingQueue<AbstractTile> tileQueue;
+    private volatile TilePos priorityCenter = TilePos.of(0, 0);
 
     /** Options of the map view. */
     @Nonnull
     private final MapView.Options options;
 
+    /** The number of threads looking up tiles in the disk cache and decoding them. */
+    private static final int IO_POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+
     /** The thread pool for downloading tiles. */
     @Nonnull
     private final ExecutorService executorService;
 
+    /** The executor for looking up, loading and decoding tiles from the disk cache, so the JavaFX thread never touches the filesystem. */
+    @Nonnull
+    private final Executor ioExecutor;
+
+    /** The HTTP client shared by all downloads, so connections are kept alive and HTTP/2 streams multiplexed. */
+    @Nonnull
+    private final HttpClient httpClient;
+
+    /** The permits for requests in flight to tile servers. */
+    @Nonnull
+    private final Semaphore requestPermits;
+
+    /** The rate limiter of requests to each tile server host. */
+    @Nonnull
+    /* visible for testing */ final RateLimiter rateLimiter = new RateLimiter();
+
     /** This is important to avoid flickering then the TileGrid recreates tiles. */
-    /* visible for testing */ final Map<URI, SoftReference<Object>> memoryImageCache = new ConcurrentHashMap<>();
+    @Nonnull
+    /* visible for testing */ final MemoryImageCache memoryImageCache;
+
+    /***********************************************************************************************************************************************************
+     * A tile being loaded in background, together with the future completed with its image, or {@code null} if it's not available, or
+     * {@link #NOT_LOADED} if the tile has been dropped before being loaded.
+     **********************************************************************************************************************************************************/
+    /* visible for testing */ record InFlight (@Nonnull AbstractTile leader, @Nonnull CompletableFuture<Object> image) {}
+
+    /** The result of an {@link InFlight} whose leader has been dropped without being loaded: tiles waiting for it must be loaded on their own. */
+    private static final Object NOT_LOADED = new Object();
+
+    /** The tiles being loaded in background, by {@link TileKey}; further requests for the same tile wait for the first one instead of loading it again.
+        Guarded by itself. */
+    /* visible for testing */ final LongObjectHashMap<InFlight> inFlightByKey = new LongObjectHashMap<>();
+
+    /** The tiles being revalidated in background because they are stale. */
+    /* visible for testing */ final Set<URI> revalidatingUris = ConcurrentHashMap.newKeySet();
+
+    /** The index of the disk cache. */
+    @Nonnull
+    /* visible for testing */ final DiskCacheIndex diskCacheIndex;
+
+    /** The janitor that keeps the disk cache within its quota. */
+    @Nonnull
+    /* visible for testing */ final DiskCacheJanitor diskCacheJanitor;
+
+    /** The scheduler of tiles whose download must be retried. */
+    @Nonnull
+    /* visible for testing */ final RetryScheduler retryScheduler;
+
+    /** The zoom level of the tiles still wanted, or -1 if all of them are. */
+    private volatile int retainedZoom = -1;
 
     /** The unterminated runnables still in execution after {@link #dispose()} - should be empty. */
     /* visible for testing */ final List<Runnable> unterminatedRunnables = new ArrayList<>();
@@ -81,14 +177,40 @@ public class TileCache
     /***********************************************************************************************************************************************************
      *
      **********************************************************************************************************************************************************/
-    @SuppressFBWarnings("RV_RETURN_VALUE_IGNORED_BAD_PRACTICE")
     public TileCache (@Nonnull final MapView.Options options)
+      {
+        this(options, Executors.newFixedThreadPool(IO_POOL_SIZE, Thread.ofPlatform().daemon().name("tile-cache-io-", 0).factory()));
+      }
+
+    /***********************************************************************************************************************************************************
+     * Creates a new instance with the given executor for the disk cache.
+     * @param   options       the options
+     * @param   ioExecutor    the executor for looking up, loading and decoding tiles from the disk cache
+     **********************************************************************************************************************************************************/
+    @SuppressFBWarnings("RV_RETURN_VALUE_IGNORED_BAD_PRACTICE")
+    /* visible for testing */ TileCache (@Nonnull final MapView.Options options, @Nonnull final Executor ioExecutor)
       {
         this.options = options;
-        tileQueue = new LinkedBlockingQueue<>(options.tileQueueCapacity());
-        final var poolSize = options.poolSize();
-        executorService = options.executorService().apply(poolSize);
-        IntStream.range(0, poolSize).forEach(i -> executorService.execute(this::tileLoader));
+        this.ioExecutor = ioExecutor;
+        memoryImageCache = new MemoryImageCache(options.memoryCacheBudget());
+        diskCacheIndex = new DiskCacheIndex(options.cacheFolder());
+        diskCacheJanitor = new DiskCacheJanitor(diskCacheIndex, options.diskCacheMaxBytes(), options.diskCacheMaxTiles());
+        requestPermits = new Semaphore(options.maxConcurrentRequests());
+        retryScheduler = new RetryScheduler(options.maxDownloadAttempts(), options.retryBaseDelay(), this::resubmit);
+        if (options.virtualThreads())
+          {
+            // the dispatcher and the blocked loaders would starve the completion stages of the HttpClient with a bounded pool
+            executorService = Executors.newVirtualThreadPerTaskExecutor();
+            httpClient = HttpClient.newBuilder().version(HTTP_2).followRedirects(ALWAYS).executor(executorService).build();
+            executorService.execute(this::tileDispatcher);
+          }
+        else
+          {
+            final var poolSize = options.poolSize();
+            executorService = options.executorService().apply(poolSize);
+            httpClient = HttpClient.newBuilder().version(HTTP_2).followRedirects(ALWAYS).build();
+            IntStream.range(0, poolSize).forEach(i -> executorService.execute(this::tileLoader));
+          }
       }
 
     /***********************************************************************************************************************************************************
@@ -100,43 +222,169 @@ public class TileCache
       }
 
     /***********************************************************************************************************************************************************
-     * Loads a tile in background.
+     * {@return the statistics of the memory cache of tile images}.
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    public MapView.CacheStats getMemoryCacheStats()
+      {
+        return memoryImageCache.getStats();
+      }
+
+    /***********************************************************************************************************************************************************
+     * Loads a tile in background. Only the memory cache is looked up by the calling thread, which is usually the JavaFX thread; otherwise the tile gets
+     * a placeholder and the rest of the work is done by the I/O executor. The placeholder is the region of an ancestor tile in the memory cache that
+     * covers this tile, so a blurry but correct map is rendered at once when zooming in; the waiting image is only used as a last resort.
      * @param   tile      the tile to download
      **********************************************************************************************************************************************************/
     public final void loadTileInBackground (@Nonnull final AbstractTile tile)
       {
         log.debug("loadTileInBackground({})", tile);
-        final var imageRef = memoryImageCache.get(tile.getUri());
-        final var image = (imageRef == null) ? null : imageRef.get();
+        final var image = memoryImageCache.get(tile.getKey());
 
-        if (image != null)
+        if (image.isPresent())
           {
             log.debug("loading tile from memory cache...");
-            tile.setImageByBitmap(image);
+            tile.setImageByBitmap(image.get());
           }
         else
+          {
+            if (!setPlaceholder(tile))
+              {
+                tile.setImageByBitmap(options.waitingImage().get());
+              }
+
+            try
+              {
+                ioExecutor.execute(() -> resolveTile(tile));
+              }
+            catch (RejectedExecutionException e)
+              {
+                log.debug("disposed, ignoring {}", tile);
+              }
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * Sets as a placeholder of a tile its image previously synthesized from child tiles or, if there's none, the region of the closest ancestor tile in
+     * the memory cache.
+     * @param   tile      the tile
+     * @return            {@code true} if a placeholder was found
+     **********************************************************************************************************************************************************/
+    private boolean setPlaceholder (@Nonnull final AbstractTile tile)
+      {
+        final var key = tile.getKey();
+        final var synthesized = memoryImageCache.peek(TileKey.synthesized(key));
+
+        if (synthesized.isPresent())
+          {
+            tile.setImageByBitmap(synthesized.get());
+            return true;
+          }
+
+        final var source = tile.getSource();
+
+        for (int levels = 1; (levels <= MAX_PLACEHOLDER_LEVELS) && (TileKey.zoom(key) - levels >= source.getMinZoomLevel()); levels++)
+          {
+            final var ancestor = TileKey.ancestor(key, levels);
+            final var image = memoryImageCache.peek(ancestor);
+
+            if (image.isPresent())
+              {
+                final int mask = (1 << levels) - 1;
+                final double size = 1.0 / (1 << levels);
+                log.debug("placeholder for {}: {}", tile, TileKey.toString(ancestor));
+                tile.setPlaceholderBitmap(image.get(), (TileKey.column(key) & mask) * size, (TileKey.row(key) & mask) * size, size);
+                return true;
+              }
+          }
+
+        return false;
+      }
+
+    /***********************************************************************************************************************************************************
+     * Loads a tile from the disk cache, or puts it into the download queue if it's not there.
+     * @param   tile      the tile
+     **********************************************************************************************************************************************************/
+    private void resolveTile (@Nonnull final AbstractTile tile)
+      {
+        try
           {
             final var localPath = resolveCachedTilePath(tile);
             log.debug("looking in disk cache {} ...", localPath);
 
-            if (Files.exists(localPath))
+            if (diskCacheIndex.contains(localPath) && loadImageFromCache(tile, localPath).isPresent())
               {
-                loadImageFromCache(tile, localPath);
+                revalidateIfStale(tile, localPath);
               }
-            else
+            else // not cached, or the cache file has been deleted or corrupted in the meantime: download it again
               {
-                tile.setImageByBitmap(options.waitingImage().get());
+                final var inFlight = new InFlight(tile, new CompletableFuture<>());
+                final InFlight leader;
 
-                if (tileQueue.offer(tile))
+                synchronized (inFlightByKey)
                   {
-                    log.debug("added tile {} to download queue - tiles in queue: {}", tile.getUri(), tileQueue.size());
+                    leader = inFlightByKey.putIfAbsent(tile.getKey(), inFlight);
+                  }
+
+                if (leader != null)
+                  {
+                    log.debug("tile {} already being loaded, waiting for it", tile.getUri());
+                    leader.image().thenAccept(image -> onLeaderCompleted(tile, image));
                   }
                 else
                   {
-                    log.warn("download queue full, discarding: {}", tile);
+                    // before queueing, so it can't overwrite the image of a download completing in the meantime
+                    synthesizeImageIfWaitingLong(tile);
+
+                    if (enqueue(tile))
+                      {
+                        log.debug("added tile {} to download queue - tiles in queue: {}", tile.getUri(), tileQueue.size());
+                      }
+                    else
+                      {
+                        log.warn("download queue full, discarding: {}", tile);
+
+                        synchronized (inFlightByKey)
+                          {
+                            inFlightByKey.remove(tile.getKey(), inFlight);
+                          }
+
+                        inFlight.image().complete(NOT_LOADED);
+                      }
                   }
               }
           }
+        catch (Exception e) // defensive
+          {
+            log.error("", e);
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * Sets the tile at the center of the viewport, so pending tiles closer to it are downloaded first. Tiles already in the queue are re-ranked.
+     * @param   center  the position of the tile at the center of the viewport
+     **********************************************************************************************************************************************************/
+    public void setPriorityCenter (@Nonnull final TilePos center)
+      {
+        log.debug("setPriorityCenter({})", center);
+
+        rankingLock.lock();
+
+        try
+          {
+            if (!center.equals(priorityCenter))
+              {
+                priorityCenter = center;
+                final var pending = new ArrayList<QueuedTile>(tileQueue.size());
+                tileQueue.drainTo(pending);
+                pending.forEach(queued -> tileQueue.offer(new QueuedTile(queued.tile(), priorityDistance(queued.tile()))));
+                queueChanged.signalAll();
+              }
+          }
+        finally
+          {
+            rankingLock.unlock();
+          }
       }
 
     /***********************************************************************************************************************************************************
@@ -146,7 +394,39 @@ public class TileCache
     public void retainPendingTiles (final int zoom)
       {
         log.debug("retainPendingTiles({})", zoom);
-        tileQueue.removeIf(tile -> tile.getZoom() != zoom);
+
+        rankingLock.lock();
+
+        try
+          {
+            retainedZoom = zoom;
+            tileQueue.removeIf(queued -> queued.tile().getZoom() != zoom);
+            queueChanged.signalAll();
+          }
+        finally
+          {
+            rankingLock.unlock();
+          }
+
+        retryScheduler.retain(zoom);
+        final var dropped = new ArrayList<InFlight>();
+
+        synchronized (inFlightByKey)
+          {
+            inFlightByKey.removeIf((key, inFlight) ->
+              {
+                final var discarded = TileKey.zoom(key) != zoom;
+
+                if (discarded)
+                  {
+                    dropped.add(inFlight);
+                  }
+
+                return discarded;
+              });
+          }
+
+        dropped.forEach(inFlight -> inFlight.image().complete(NOT_LOADED));
       }
 
     /***********************************************************************************************************************************************************
@@ -155,6 +435,25 @@ public class TileCache
     public void dispose()
       {
         log.debug("dispose()");
+        retryScheduler.dispose();
+        diskCacheJanitor.dispose();
+        diskCacheIndex.dispose();
+
+        if (ioExecutor instanceof final ExecutorService ioExecutorService)
+          {
+            ioExecutorService.shutdownNow();
+          }
+
+        final var dropped = new ArrayList<InFlight>();
+
+        synchronized (inFlightByKey)
+          {
+            inFlightByKey.forEach((key, inFlight) -> dropped.add(inFlight));
+            inFlightByKey.clear();
+          }
+
+        dropped.forEach(inFlight -> inFlight.image().complete(NOT_LOADED));
+        revalidatingUris.clear();
         unterminatedRunnables.addAll(executorService.shutdownNow());
 
         try
@@ -169,10 +468,17 @@ public class TileCache
             log.warn("Interrupted while shutting down.");
             Thread.currentThread().interrupt();
           }
+        finally
+          {
+            httpClient.shutdownNow();
+          }
       }
 
     /***********************************************************************************************************************************************************
-     * The main loop that downloads the tiles.
+     * The main loop that dispatches the tiles to download. A request permit is acquired before taking a tile from the queue, so tiles waiting for a free
+     * slot stay in the queue (and can be discarded by {@link #retainPendingTiles(int)}); the permit is released when the download completes. Since
+     * downloads are asynchronous, a loader thread never blocks on the network and a few of them can sustain many concurrent requests. Tiles waiting for
+     * the rate limit stay in the queue too (see {@link #takeNextTile()}).
      **********************************************************************************************************************************************************/
     private void tileLoader()
       {
@@ -181,23 +487,28 @@ public class TileCache
             try
               {
                 log.debug("waiting for next tile to load... queue size = {}", tileQueue.size());
-                final var tile = tileQueue.take();
-                final var uri = tile.getUri();
-                final var localPath = resolveCachedTilePath(tile);
+                requestPermits.acquire();
+                final AbstractTile tile;
 
-                if (!Files.exists(localPath) && options.downloadAllowed())
+                try
                   {
-                    downloadTile(localPath, uri);
+                    tile = takeNextTile();
                   }
-
-                if (!Files.exists(localPath))
+                catch (InterruptedException e)
                   {
-                    tile.setImageByPath(null);
+                    requestPermits.release();
+                    throw e;
                   }
-                else
+
+                if (isDiscarded(tile))
                   {
-                    loadImageFromCache(tile, localPath);
+                    log.debug("discarded tile {}", tile);
+                    requestPermits.release();
+                    abandon(tile);
+                    continue;
                   }
+
+                loadTile(tile);
               }
             catch (InterruptedException ignored)
               {
@@ -215,71 +526,846 @@ public class TileCache
       }
 
     /***********************************************************************************************************************************************************
-     * Loads an image from the cache.
+     * The main loop used with virtual threads: each tile taken from the queue is loaded by its own thread, so blocking calls are cheap. Since tiles leave
+     * the queue immediately, a tile waiting for a request permit that has been discarded in the meantime by {@link #retainPendingTiles(int)} is skipped
+     * before downloading it. Tiles are not dispatched faster than the rate limit of the tile server: in the meantime they stay in the queue (see
+     * {@link #takeNextTile()}).
+     **********************************************************************************************************************************************************/
+    private void tileDispatcher()
+      {
+        while (!Thread.interrupted())
+          {
+            try
+              {
+                log.debug("waiting for next tile to dispatch... queue size = {}", tileQueue.size());
+                final var tile = takeNextTile();
+
+                if (isDiscarded(tile))
+                  {
+                    log.debug("discarded tile {}", tile);
+                    abandon(tile);
+                  }
+                else
+                  {
+                    executorService.execute(() -> loadTileBlocking(tile));
+                  }
+              }
+            catch (InterruptedException | RejectedExecutionException ignored)
+              {
+                log.info("tileDispatcher interrupted");
+                Thread.currentThread().interrupt();
+                break;
+              }
+            catch (Exception e) // defensive
+              {
+                log.error("", e);
+              }
+          }
+
+        log.info("tileDispatcher terminated");
+      }
+
+    /***********************************************************************************************************************************************************
+     * Loads a tile, downloading it if needed and blocking until done. This is meant to be run by a virtual thread: everything it waits for (the request
+     * permit, the download, the hand-off to the JavaFX thread) is implemented by {@code java.util.concurrent} primitives that don't pin the carrier.
      * @param     tile          the tile
-     * @param     path          the path of the cache file
      **********************************************************************************************************************************************************/
-    private void loadImageFromCache (@Nonnull final AbstractTile tile, @Nonnull final Path path)
+    private void loadTileBlocking (@Nonnull final AbstractTile tile)
       {
-        log.debug("loadImageFromCache({}, {})", tile, path);
-        tile.setImageByPath(path).ifPresent(image -> memoryImageCache.put(tile.getUri(), new SoftReference<>(image)));
+        try
+          {
+            final var localPath = resolveCachedTilePath(tile);
+
+            if (!diskCacheIndex.contains(localPath) && options.downloadAllowed())
+              {
+                final Runnable completion;
+                requestPermits.acquire();
+
+                try
+                  {
+                    if (isDiscarded(tile))
+                      {
+                        log.debug("discarded tile {}", tile);
+                        abandon(tile);
+                        return;
+                      }
+
+                    completion = downloadTile(localPath, tile.getUri())
+                            .<Runnable>handle((response, exception) -> () -> onDownloadCompleted(tile, localPath, response, exception))
+                            .join();
+                  }
+                finally
+                  {
+                    requestPermits.release();
+                  }
+
+                completion.run(); // the image is decoded without holding the permit
+              }
+            else
+              {
+                setImageFromCacheOrNone(tile, localPath);
+              }
+          }
+        catch (InterruptedException ignored)
+          {
+            log.debug("interrupted while loading {}", tile);
+            Thread.currentThread().interrupt();
+          }
+        catch (Exception e) // defensive
+          {
+            log.error("", e);
+          }
       }
 
     /***********************************************************************************************************************************************************
-     * {@return the path of the cached tile}.
+     * Loads a tile, downloading it if needed. The request permit held by the caller is always released, possibly asynchronously. The image is decoded by
+     * the I/O executor, so loader threads are always ready to send the next request.
      * @param     tile          the tile
      **********************************************************************************************************************************************************/
-    @Nonnull
-    private Path resolveCachedTilePath (@Nonnull final AbstractTile tile)
+    private void loadTile (@Nonnull final AbstractTile tile)
       {
-        return options.cacheFolder().resolve(tile.getSource().getCachePrefix()).resolve(mangle(tile.getUri().toString()));
+        var permitReleased = false;
+
+        try
+          {
+            final var localPath = resolveCachedTilePath(tile);
+
+            if (!diskCacheIndex.contains(localPath) && options.downloadAllowed())
+              {
+                downloadTile(localPath, tile.getUri())
+                        .whenComplete((response, exception) -> requestPermits.release())
+                        .whenCompleteAsync((response, exception) -> onDownloadCompleted(tile, localPath, response, exception), ioExecutor);
+                permitReleased = true;
+              }
+            else
+              {
+                requestPermits.release();
+                permitReleased = true;
+                ioExecutor.execute(() -> setImageFromCacheOrNone(tile, localPath));
+              }
+          }
+        finally
+          {
+            if (!permitReleased)
+              {
+                requestPermits.release();
+              }
+          }
       }
 
     /***********************************************************************************************************************************************************
-     * Downloads a tile and stores it.
-     * @param     localPath     the file to store the tile into
-     * @param     uri           the uri of the tile
+     * Called when a download has completed, either successfully or not. Transient failures are scheduled for a later retry, and in the meantime the tile
+     * keeps its waiting image; otherwise the tile image is set.
+     * @param     tile          the tile
+     * @param     localPath     the path of the cache file
+     * @param     response      the response, or {@code null} in case of error
+     * @param     exception     the error, or {@code null} if a response was received
      **********************************************************************************************************************************************************/
-    @SuppressFBWarnings("REC_CATCH_EXCEPTION")
-    /* visible for testing */ static void downloadTile (@Nonnull final Path localPath, @Nonnull final URI uri)
+    private void onDownloadCompleted (@Nonnull final AbstractTile tile,
+                                      @Nonnull final Path localPath,
+                                      @Nullable final HttpResponse<Path> response,
+                                      @Nullable final Throwable exception)
       {
-        try (final var client = HttpClient.newBuilder().followRedirects(ALWAYS).build())
+        if (isTransientFailure(response, exception))
           {
-            Files.createDirectories(localPath.getParent());
-            final var request = HttpRequest.newBuilder()
-                                           .GET()
-                                           .header("User-Agent", "curl/8.7.1")
-                                           .header("Accept", "*/*")
-                                           .uri(uri)
-                                           .build();
-            final var response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
-
-            switch (response.statusCode())
-              {
-                case 200:
-                  final var bytes = response.body();
-                  Files.write(localPath, bytes);
-                  log.debug("written {} bytes to {}", bytes.length, localPath);
-                  break;
-                case 503:
-                  log.warn("status code 503 for {}, should re-schedule; {}", uri, response.headers().map());
-                  getErrorBody(response).ifPresent(log::warn);
-                  // TODO: should reschedule, but not immediately, and also count for a max number of attempts
-                  // TOOD: could use a different placeholder image?
-                  break;
-                default:
-                  log.error("status code {} for {}; {}", response.statusCode(), uri, response.headers().map());
-                  getErrorBody(response).ifPresent(log::error);
+            final var retryAfter = Optional.ofNullable(response)
+                                           .flatMap(r -> r.headers().firstValue("Retry-After"))
+                                           .flatMap(RetryScheduler::parseRetryAfter);
+
+            if (!isDiscarded(tile) && retryScheduler.schedule(tile, retryAfter))
+              {
+                return;
               }
           }
-        catch (InterruptedException e)
+        else
           {
-            log.error("", e);
-            Thread.currentThread().interrupt();
+            retryScheduler.succeeded(tile);
           }
-        catch (Exception e) // defensive
+
+        setImageFromCacheOrNone(tile, localPath);
+      }
+
+    /***********************************************************************************************************************************************************
+     * Sets the image of a tile from the disk cache. If the tile is not there (e.g. because the download failed or downloading is not allowed), the image
+     * is synthesized from child tiles, if possible; otherwise no image is set. Other tiles waiting for the same URI get the same image.
+     * @param     tile          the tile
+     * @param     path          the path of the cache file
+     **********************************************************************************************************************************************************/
+    private void setImageFromCacheOrNone (@Nonnull final AbstractTile tile, @Nonnull final Path path)
+      {
+        Optional<Object> image = Optional.empty();
+
+        try
           {
-            log.error("", e);
+            if (diskCacheIndex.contains(path))
+              {
+                image = loadImageFromCache(tile, path);
+              }
+
+            if (image.isEmpty())
+              {
+                image = synthesizeImage(tile);
+                image.ifPresentOrElse(tile::setImageByBitmap, () -> tile.setImageByPath(null));
+              }
+          }
+        finally
+          {
+            InFlight inFlight;
+
+            synchronized (inFlightByKey)
+              {
+                inFlight = inFlightByKey.get(tile.getKey());
+
+                if ((inFlight != null) && ((inFlight.leader() != tile) || !inFlightByKey.remove(tile.getKey(), inFlight)))
+                  {
+                    inFlight = null;
+                  }
+              }
+
+            if (inFlight != null)
+              {
+                inFlight.image().complete(image.orElse(null));
+              }
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * Puts back into the download queue a tile whose download must be retried.
+     * @param     tile          the tile
+     * @return                  {@code true} if the tile has been queued
+     **********************************************************************************************************************************************************/
+    private boolean resubmit (@Nonnull final AbstractTile tile)
+      {
+        final var queued = enqueue(tile);
+
+        if (!queued)
+          {
+            abandon(tile);
+          }
+
+        return queued;
+      }
+
+    /***********************************************************************************************************************************************************
+     * Forgets that a tile is being loaded, so a further request for the same URI will load it again. Tiles waiting for it are notified, so they are
+     * loaded on their own (see {@link #onLeaderCompleted(AbstractTile, Object)}).
+     * @param     tile          the tile
+     **********************************************************************************************************************************************************/
+    private void abandon (@Nonnull final AbstractTile tile)
+      {
+        InFlight inFlight;
+
+        synchronized (inFlightByKey)
+          {
+            inFlight = inFlightByKey.get(tile.getKey());
+
+            if ((inFlight != null) && ((inFlight.leader() != tile) || !inFlightByKey.remove(tile.getKey(), inFlight)))
+              {
+                inFlight = null;
+              }
+          }
+
+        if (inFlight != null)
+          {
+            inFlight.image().complete(NOT_LOADED);
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * Called when the tile that another one was waiting for has been loaded or dropped. In the former case its image is set; in the latter, the tile is
+     * resolved again on its own, unless it has been discarded too: it might be found in the disk cache in the meantime, or become the leader of a new
+     * download.
+     * @param     tile          the waiting tile
+     * @param     image         the image, {@code null} if not available, or {@link #NOT_LOADED}
+     **********************************************************************************************************************************************************/
+    private void onLeaderCompleted (@Nonnull final AbstractTile tile, @Nullable final Object image)
+      {
+        if (image != NOT_LOADED)
+          {
+            tile.setImageByBitmap(image);
+          }
+        else if (!isDiscarded(tile))
+          {
+            log.debug("tile {} not loaded by the leader, resolving it again", tile);
+
+            try
+              {
+                ioExecutor.execute(() -> resolveTile(tile));
+              }
+            catch (RejectedExecutionException e)
+              {
+                log.debug("disposed, ignoring {}", tile);
+              }
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * Loads an image from the cache and puts it into the memory cache. If the image can't be read, e.g. because the file has been deleted after being
+     * indexed or it's corrupted, it's removed from the disk cache index, so it will be downloaded again.
+     * @param     tile          the tile
+     * @param     path          the path of the cache file
+     * @return                  the image, or empty if it can't be read
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    private Optional<Object> loadImageFromCache (@Nonnull final AbstractTile tile, @Nonnull final Path path)
+      {
+        log.debug("loadImageFromCache({}, {})", tile, path);
+        diskCacheIndex.recordAccess(path);
+        final var image = tile.setImageByPath(path);
+        image.ifPresentOrElse(i -> memoryImageCache.put(tile.getKey(), i, MemoryImageCache.weightOf(tile.getSource().getTileSize())),
+                              () -> cacheFileUnreadable(path));
+        return image;
+      }
+
+    /***********************************************************************************************************************************************************
+     * Sets the image of a tile synthesized from its child tiles, if possible, but only if the tile is not going to be downloaded soon: that is, if
+     * downloading is not allowed or there are already more tiles waiting in the queue than requests that can be sent at the same time. Otherwise decoding
+     * the children would cost more than waiting for the download.
+     * @param     tile          the tile
+     **********************************************************************************************************************************************************/
+    private void synthesizeImageIfWaitingLong (@Nonnull final AbstractTile tile)
+      {
+        if (!options.downloadAllowed() || (tileQueue.size() >= options.maxConcurrentRequests()))
+          {
+            synthesizeImage(tile).ifPresent(tile::setImageByBitmap);
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return an image for a tile synthesized from its child tiles}, if possible.
+     * @param     tile          the tile
+     * @see                     #synthesizeImage(AbstractTile, int, int, int, int)
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    private Optional<Object> synthesizeImage (@Nonnull final AbstractTile tile)
+      {
+        return synthesizeImage(tile, tile.getKey(), options.maxSynthesisDepth());
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return an image for a tile synthesized by scaling down its four child tiles at the next zoom level} and composing them. Children are taken from
+     * the memory or the disk cache; missing children are in turn synthesized from their own children, until the given depth is reached. All the four
+     * children must be available, so the synthesized image has no holes. Synthesized images are put into the memory cache, with a key different from
+     * the one of the tile, so they don't prevent the actual tile from being downloaded.
+     * @param     tile          the tile, also used to decode and compose images
+     * @param     key           the key of the image to synthesize
+     * @param     depth         how many zoom levels can be descended
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    private Optional<Object> synthesizeImage (@Nonnull final AbstractTile tile, final long key, final int depth)
+      {
+        final var source = tile.getSource();
+
+        if ((depth <= 0) || (TileKey.zoom(key) >= source.getMaxZoomLevel()))
+          {
+            return Optional.empty();
+          }
+
+        final var synthesizedKey = TileKey.synthesized(key);
+        final var cached = memoryImageCache.peek(synthesizedKey);
+
+        if (cached.isPresent())
+          {
+            return cached;
+          }
+
+        final var children = new Object[4];
+
+        for (int i = 0; i < children.length; i++)
+          {
+            final var childKey = TileKey.child(key, i);
+            final var child = loadCachedImage(tile, childKey).or(() -> synthesizeImage(tile, childKey, depth - 1));
+
+            if (child.isEmpty())
+              {
+                return Optional.empty();
+              }
+
+            children[i] = child.get();
+          }
+
+        log.debug("synthesized image for {}", TileKey.toString(key));
+        final var image = tile.composeBitmap(children);
+        memoryImageCache.put(synthesizedKey, image, MemoryImageCache.weightOf(source.getTileSize()));
+        return Optional.of(image);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the image of a tile from the memory or the disk cache}, without assigning it to a tile. An image loaded from the disk cache is put into the
+     * memory cache. The URI of the image is only materialized if the disk cache must be looked up.
+     * @param     tile          the tile used to decode the image
+     * @param     key           the key of the image
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    private Optional<Object> loadCachedImage (@Nonnull final AbstractTile tile, final long key)
+      {
+        final var cached = memoryImageCache.peek(key);
+
+        if (cached.isPresent())
+          {
+            return cached;
+          }
+
+        final var source = tile.getSource();
+        final var path = resolveCachedTilePath(source, source.getTileUri(TileKey.column(key), TileKey.row(key), TileKey.zoom(key)));
+
+        if (!diskCacheIndex.contains(path))
+          {
+            return Optional.empty();
+          }
+
+        diskCacheIndex.recordAccess(path);
+        final var image = tile.decodeBitmap(path);
+        image.ifPresentOrElse(i -> memoryImageCache.put(key, i, MemoryImageCache.weightOf(source.getTileSize())), () -> cacheFileUnreadable(path));
+        return image;
+      }
+
+    /***********************************************************************************************************************************************************
+     * Removes from the disk cache index a file that can't be read, so the tile is not considered cached any longer.
+     * @param     path          the path of the cache file
+     **********************************************************************************************************************************************************/
+    private void cacheFileUnreadable (@Nonnull final Path path)
+      {
+        log.warn("can't read cached tile {}, will download it again", path);
+        diskCacheIndex.removed(path);
+      }
+
+    /***********************************************************************************************************************************************************
+     * If a cached tile is stale, revalidates it in background with a conditional request, while the stale image stays on the screen. If the server sends a
+     * new image, the tile is updated. Since this runs in the I/O executor, it never waits for a request permit or for the rate limit: if the request can't
+     * be sent now, the tile will be revalidated the next time it's loaded.
+     * @param     tile          the tile
+     * @param     localPath     the path of the cache file
+     **********************************************************************************************************************************************************/
+    private void revalidateIfStale (@Nonnull final AbstractTile tile, @Nonnull final Path localPath)
+      {
+        final var uri = tile.getUri();
+
+        if (!options.downloadAllowed() || Instant.now().isBefore(expiryOf(localPath)) || !revalidatingUris.add(uri))
+          {
+            return;
+          }
+
+        if (!requestPermits.tryAcquire())
+          {
+            log.debug("no permit to revalidate {}, will try later", uri);
+            revalidatingUris.remove(uri);
+            return;
+          }
+
+        if (acquireRateToken(tile) > 0)
+          {
+            requestPermits.release();
+            revalidatingUris.remove(uri);
+            return;
+          }
+
+        log.debug("revalidating stale tile {}", uri);
+        revalidateTile(localPath, uri, TileMetadata.load(localPath)).whenComplete((modified, exception) ->
+          {
+            requestPermits.release();
+            revalidatingUris.remove(uri);
+
+            if (Boolean.TRUE.equals(modified))
+              {
+                loadImageFromCache(tile, localPath);
+              }
+          });
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the expiry of a cached tile}. Metadata are only read the first time, then the expiry is kept by the disk cache index.
+     * @param     localPath     the path of the cache file
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    private Instant expiryOf (@Nonnull final Path localPath)
+      {
+        return diskCacheIndex.getExpiry(localPath).orElseGet(() ->
+          {
+            final var expiry = TileMetadata.loadOrDefault(localPath).expiry();
+            diskCacheIndex.setExpiry(localPath, expiry);
+            return expiry;
+          });
+      }
+
+    /***********************************************************************************************************************************************************
+     * Puts a tile into the download queue, unless it's full.
+     * @param     tile          the tile
+     * @return                  {@code true} if the tile has been queued
+     **********************************************************************************************************************************************************/
+    private boolean enqueue (@Nonnull final AbstractTile tile)
+      {
+        rankingLock.lock();
+
+        try
+          {
+            if ((tileQueue.size() >= options.tileQueueCapacity()) || !tileQueue.offer(new QueuedTile(tile, priorityDistance(tile))))
+              {
+                return false;
+              }
+
+            queueChanged.signalAll();
+            return true;
+          }
+        finally
+          {
+            rankingLock.unlock();
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * Tries to take a token from the rate limiter of the host of a tile.
+     * @param     tile          the tile
+     * @return                  0 if the tile can be downloaded now, otherwise the nanoseconds to wait for the next token
+     **********************************************************************************************************************************************************/
+    private long acquireRateToken (@Nonnull final AbstractTile tile)
+      {
+        final var rate = Math.min(options.maxRequestsPerSecond(), tile.getSource().getMaxRequestsPerSecond());
+        return rateLimiter.tryAcquire(tile.getUri().getHost(), rate);
+      }
+
+    /***********************************************************************************************************************************************************
+     * Takes from the download queue the next tile to load, waiting until the tile at the head of the queue can be loaded. That tile is removed from the
+     * queue only when it's ready, so while the rate limit of its host is exceeded it stays there, where it's still re-ranked by
+     * {@link #setPriorityCenter(TilePos)} and discarded by {@link #retainPendingTiles(int)}: the caller just waits for the next token, or until the head
+     * of the queue changes. Discarded tiles are returned at once, so the caller can drop them.
+     * @return                  the tile
+     * @throws InterruptedException if interrupted while waiting
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    private AbstractTile takeNextTile()
+            throws InterruptedException
+      {
+        rankingLock.lockInterruptibly();
+
+        try
+          {
+            for (;;)
+              {
+                final var head = tileQueue.peek();
+
+                if (head == null)
+                  {
+                    queueChanged.await();
+                    continue;
+                  }
+
+                final var wait = acquireRateTokenIfNeeded(head.tile());
+
+                if (wait == 0)
+                  {
+                    tileQueue.remove(head);
+                    return head.tile();
+                  }
+
+                queueChanged.awaitNanos(wait);
+              }
+          }
+        finally
+          {
+            rankingLock.unlock();
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * Takes a token from the rate limiter of the host of a tile, if it's going to be downloaded. Discarded tiles and tiles that won't be downloaded
+     * (already in the disk cache, or downloads disabled) need no token.
+     * @param     tile          the tile
+     * @return                  0 if the tile can be loaded now, otherwise the nanoseconds to wait for the next token
+     **********************************************************************************************************************************************************/
+    private long acquireRateTokenIfNeeded (@Nonnull final AbstractTile tile)
+      {
+        if (isDiscarded(tile) || !options.downloadAllowed() || diskCacheIndex.contains(resolveCachedTilePath(tile)))
+          {
+            return 0;
+          }
+
+        return acquireRateToken(tile);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the ranking of a tile in the download queue}, that is the squared distance from {@link #priorityCenter}. Since the map wraps around, the
+     * shortest way is taken. Discarded tiles come last.
+     * @param     tile          the tile
+     **********************************************************************************************************************************************************/
+    /* visible for testing */ long priorityDistance (@Nonnull final AbstractTile tile)
+      {
+        if (isDiscarded(tile))
+          {
+            return Long.MAX_VALUE;
+          }
+
+        final long size = 1L << Math.max(0, Math.min(tile.getZoom(), 31));
+        final var center = priorityCenter;
+        final long dx = wrappedDistance(tile.getColumn(), center.column, size);
+        final long dy = wrappedDistance(tile.getRow(), center.row, size);
+        return dx * dx + dy * dy;
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the shortest distance between two coordinates on a circle of the given size}.
+     **********************************************************************************************************************************************************/
+    private static long wrappedDistance (final int a, final int b, final long size)
+      {
+        final long d = Math.floorMod((long)a - b, size);
+        return Math.min(d, size - d);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return whether the given tile has been discarded by {@link #retainPendingTiles(int)}}.
+     * @param     tile          the tile
+     **********************************************************************************************************************************************************/
+    private boolean isDiscarded (@Nonnull final AbstractTile tile)
+      {
+        final var zoom = retainedZoom;
+        return (zoom >= 0) && (tile.getZoom() != zoom);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return whether a download failed for a reason that is likely to go away by retrying later}. These are I/O errors (such as time-outs or refused
+     * connections) and responses telling that the server is throttling requests or is temporarily unavailable.
+     * @param     response      the response, or {@code null} in case of error
+     * @param     exception     the error, or {@code null} if a response was received
+     **********************************************************************************************************************************************************/
+    private static boolean isTransientFailure (@Nullable final HttpResponse<Path> response, @Nullable final Throwable exception)
+      {
+        if (response == null)
+          {
+            final var cause = (exception instanceof CompletionException) ? exception.getCause() : exception;
+            return cause instanceof IOException;
+          }
+
+        return switch (response.statusCode())
+          {
+            case 429, 502, 503, 504 -> true;
+            default -> false;
+          };
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the path of the cached tile}.
+     * @param     tile          the tile
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    private Path resolveCachedTilePath (@Nonnull final AbstractTile tile)
+      {
+        return resolveCachedTilePath(tile.getSource(), tile.getUri());
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the path of a cached tile}.
+     * @param     source        the tile source
+     * @param     uri           the URI of the tile
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    private Path resolveCachedTilePath (@Nonnull final TileSource source, @Nonnull final URI uri)
+      {
+        return options.cacheFolder().resolve(source.getCachePrefix()).resolve(mangle(uri.toString()));
+      }
+
+    /***********************************************************************************************************************************************************
+     * Asynchronously downloads a tile and stores it.
+     * @param     localPath     the file to store the tile into
+     * @param     uri           the uri of the tile
+     * @return                  the response, completed after the tile has been stored
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    /* visible for testing */ CompletableFuture<HttpResponse<Path>> downloadTile (@Nonnull final Path localPath, @Nonnull final URI uri)
+      {
+        return send(newRequest(uri).build(), localPath, response -> storeTile(localPath, uri, response))
+                .whenComplete((response, exception) ->
+                  {
+                    if (exception != null)
+                      {
+                        log.error("while downloading {}: {}", uri, exception.toString());
+                      }
+                  });
+      }
+
+    /***********************************************************************************************************************************************************
+     * Asynchronously revalidates a cached tile with a conditional request. If the tile has not been modified, only its metadata are refreshed; otherwise
+     * the new tile is stored.
+     * @param     localPath     the file the tile is stored into
+     * @param     uri           the uri of the tile
+     * @param     metadata      the metadata of the cached tile, if any
+     * @return                  {@code true} if a new tile has been stored
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    /* visible for testing */ CompletableFuture<Boolean> revalidateTile (@Nonnull final Path localPath,
+                                                                         @Nonnull final URI uri,
+                                                                         @Nonnull final Optional<TileMetadata> metadata)
+      {
+        final var request = newRequest(uri);
+        metadata.ifPresent(m -> m.addConditionalHeaders(request));
+        return send(request.build(), localPath, response ->
+          {
+            if (response.statusCode() == 304)
+              {
+                log.debug("not modified: {}", uri);
+                final var now = Instant.now();
+                storeMetadata(localPath, metadata.map(m -> m.refreshedBy(response.headers(), now))
+                                                 .orElseGet(() -> TileMetadata.of(response.headers(), now)));
+                return false;
+              }
+
+            return storeTile(localPath, uri, response).statusCode() == 200;
+          })
+          .whenComplete((modified, exception) ->
+            {
+              if (exception != null)
+                {
+                  log.error("while revalidating {}: {}", uri, exception.toString());
+                }
+            });
+      }
+
+    /***********************************************************************************************************************************************************
+     * Asynchronously sends a request for a tile. The body is streamed into a temporary file in the same folder as the cached tile, so it can be published
+     * by an atomic rename and readers never see a partially written tile. The temporary file is always deleted when the response has been handled.
+     * @param     <T>           the type of the result
+     * @param     request       the request
+     * @param     localPath     the file the tile is stored into
+     * @param     handler       the handler of the response, whose body is the temporary file
+     * @return                  the result of the handler
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    private <T> CompletableFuture<T> send (@Nonnull final HttpRequest request,
+                                           @Nonnull final Path localPath,
+                                           @Nonnull final Function<HttpResponse<Path>, T> handler)
+      {
+        final Path tempPath;
+
+        try
+          {
+            Files.createDirectories(localPath.getParent());
+            tempPath = Files.createTempFile(localPath.getParent(), localPath.getFileName() + ".", TEMP_SUFFIX);
+          }
+        catch (IOException e)
+          {
+            log.error("", e);
+            return CompletableFuture.failedFuture(e);
+          }
+
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofFile(tempPath))
+                         .thenApply(handler)
+                         .whenComplete((result, exception) -> deleteTempFile(tempPath));
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return a new builder of a request for a tile}.
+     * @param     uri           the uri of the tile
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    private static HttpRequest.Builder newRequest (@Nonnull final URI uri)
+      {
+        return HttpRequest.newBuilder()
+                          .GET()
+                          .header("User-Agent", "curl/8.7.1")
+                          .header("Accept", "*/*")
+                          .uri(uri);
+      }
+
+    /***********************************************************************************************************************************************************
+     * Stores a downloaded tile and its metadata, if the response was successful.
+     * @param     localPath     the file to store the tile into
+     * @param     uri           the uri of the tile
+     * @param     response      the response, whose body is the temporary file with the tile
+     * @return                  the response
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    private HttpResponse<Path> storeTile (@Nonnull final Path localPath, @Nonnull final URI uri, @Nonnull final HttpResponse<Path> response)
+      {
+        switch (response.statusCode())
+          {
+            case 200:
+              try
+                {
+                  final var size = Files.size(response.body());
+                  publish(response.body(), localPath);
+                  diskCacheIndex.added(localPath, size);
+                }
+              catch (IOException e)
+                {
+                  throw new UncheckedIOException(e);
+                }
+
+              storeMetadata(localPath, TileMetadata.of(response.headers(), Instant.now()));
+              log.debug("written {}", localPath);
+              break;
+            case 429:
+            case 502:
+            case 503:
+            case 504:
+              log.warn("status code {} for {}, will retry; {}", response.statusCode(), uri, response.headers().map());
+              getErrorBody(response).ifPresent(log::warn);
+              break;
+            default:
+              log.error("status code {} for {}; {}", response.statusCode(), uri, response.headers().map());
+              getErrorBody(response).ifPresent(log::error);
+          }
+
+        return response;
+      }
+
+    /***********************************************************************************************************************************************************
+     * Publishes a downloaded tile into the cache, by atomically renaming its temporary file, after having flushed it to the storage device if required.
+     * @param     tempPath      the temporary file
+     * @param     localPath     the file to store the tile into
+     * @throws    IOException   in case of error
+     **********************************************************************************************************************************************************/
+    private void publish (@Nonnull final Path tempPath, @Nonnull final Path localPath)
+            throws IOException
+      {
+        if (options.syncDownloads())
+          {
+            try (final var channel = FileChannel.open(tempPath, StandardOpenOption.WRITE))
+              {
+                channel.force(true);
+              }
+          }
+
+        try
+          {
+            Files.move(tempPath, localPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+          }
+        catch (AtomicMoveNotSupportedException e)
+          {
+            log.warn("atomic move not supported, tiles might be read while being written: {}", e.toString());
+            Files.move(tempPath, localPath, StandardCopyOption.REPLACE_EXISTING);
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * Deletes a temporary file, if it's still there.
+     * @param     tempPath      the temporary file
+     **********************************************************************************************************************************************************/
+    private static void deleteTempFile (@Nonnull final Path tempPath)
+      {
+        try
+          {
+            Files.deleteIfExists(tempPath);
+          }
+        catch (IOException e)
+          {
+            log.warn("can't delete {}: {}", tempPath, e.toString());
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * Stores the metadata of a cached tile, also updating the expiry in the disk cache index.
+     * @param     localPath     the file the tile is stored into
+     * @param     metadata      the metadata
+     **********************************************************************************************************************************************************/
+    private void storeMetadata (@Nonnull final Path localPath, @Nonnull final TileMetadata metadata)
+      {
+        try
+          {
+            metadata.store(localPath);
+            diskCacheIndex.setExpiry(localPath, metadata.expiry());
+          }
+        catch (IOException e)
+          {
+            throw new UncheckedIOException(e);
           }
       }
 
@@ -287,11 +1373,21 @@ public class TileCache
      *
      **********************************************************************************************************************************************************/
     @Nonnull
-    private static Optional<String> getErrorBody (@Nonnull final HttpResponse<byte[]> response)
+    private static Optional<String> getErrorBody (@Nonnull final HttpResponse<Path> response)
       {
         return response.headers()
                        .firstValue("Content-type")
                        .filter(ct -> ct.startsWith("text/"))
-                       .map(r -> new String(response.body(), StandardCharsets.UTF_8)); // TODO: charset should be get from response
+                       .flatMap(r ->
+                         {
+                           try
+                             {
+                               return Optional.of(Files.readString(response.body(), StandardCharsets.UTF_8)); // TODO: charset should be get from response
+                             }
+                           catch (IOException e)
+                             {
+                               return Optional.empty();
+                             }
+                         });
       }
   }
@@ -0,0 +1,203 @@
+/*
+ * *************************************************************************************************************************************************************
+ *
+ * MapView: a JavaFX map renderer for tile-based servers
+ * http://tidalwave.it/projects/mapview
+ *
+ * Copyright (C) 2024 - 2025 by Tidalwave s.a.s. (http://tidalwave.it)
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.  See the License for the specific language governing permissions and limitations under the License.
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * git clone https://bitbucket.org/tidalwave/mapview-src
+ * git clone https://github.com/tidalwave-it/mapview-src
+ *
+ * *************************************************************************************************************************************************************
+ */
+package it.tidalwave.mapview.impl;
+
+import jakarta.annotation.Nonnull;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import it.tidalwave.mapview.TileSource;
+import lombok.experimental.UtilityClass;
+
+/***************************************************************************************************************************************************************
+ *
+ * Packs the identity of a tile into a {@code long}, to be used as a key in place of its URI: it's computed with a few arithmetic operations, it's hashed
+ * in no time and it requires no allocation. Keys of related tiles, such as ancestors, can be computed without materializing their URIs. The layout is:
+ *
+ * <ul>
+ *   <li>bit 63: whether the key refers to an image synthesized from child tiles (see {@link #synthesized(long)})</li>
+ *   <li>bits 56-62: the id of the tile source</li>
+ *   <li>bits 50-55: the zoom level</li>
+ *   <li>bits 25-49: the column</li>
+ *   <li>bits 0-24: the row</li>
+ * </ul>
+ *
+ * @author  Fabrizio Giudici
+ *
+ **************************************************************************************************************************************************************/
+@UtilityClass
+public class TileKey
+  {
+    /** The maximum supported zoom level, as the column and the row take 25 bits each. */
+    public static final int MAX_ZOOM = 25;
+
+    private static final int COORDINATE_BITS = 25;
+
+    private static final long COORDINATE_MASK = (1L << COORDINATE_BITS) - 1;
+
+    private static final int ZOOM_SHIFT = COORDINATE_BITS * 2;
+
+    private static final long ZOOM_MASK = 0x3f;
+
+    private static final int SOURCE_SHIFT = 56;
+
+    private static final int MAX_SOURCES = 0x80;
+
+    private static final long SYNTHESIZED_FLAG = 1L << 63;
+
+    /** The ids of tile sources, by cache prefix. */
+    private static final Map<String, Integer> SOURCE_IDS = new ConcurrentHashMap<>();
+
+    /** The next available source id. */
+    private static final AtomicInteger NEXT_SOURCE_ID = new AtomicInteger();
+
+    /***********************************************************************************************************************************************************
+     * {@return the key of a tile}.
+     * @param   source          the tile source
+     * @param   zoom            the zoom level
+     * @param   column          the column
+     * @param   row             the row
+     * @throws  IllegalArgumentException  if the zoom level or the coordinates are out of range
+     **********************************************************************************************************************************************************/
+    public static long of (@Nonnull final TileSource source, final int zoom, final int column, final int row)
+      {
+        return of(sourceId(source), zoom, column, row);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the key of a tile}.
+     * @param   sourceId        the id of the tile source
+     * @param   zoom            the zoom level
+     * @param   column          the column
+     * @param   row             the row
+     * @throws  IllegalArgumentException  if the zoom level or the coordinates are out of range
+     * @see                     #sourceId(TileSource)
+     **********************************************************************************************************************************************************/
+    public static long of (final int sourceId, final int zoom, final int column, final int row)
+      {
+        if ((zoom < 0) || (zoom > MAX_ZOOM) || (column >>> zoom != 0) || (row >>> zoom != 0))
+          {
+            throw new IllegalArgumentException("Out of range: %d/%d/%d".formatted(zoom, column, row));
+          }
+
+        return ((long)sourceId << SOURCE_SHIFT) | ((long)zoom << ZOOM_SHIFT) | ((long)column << COORDINATE_BITS) | row;
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the id of a tile source}. Sources are identified by their cache prefix, as it's what distinguishes their tiles on the disk.
+     * @param   source          the tile source
+     * @throws  IllegalStateException  if too many tile sources have been used
+     **********************************************************************************************************************************************************/
+    public static int sourceId (@Nonnull final TileSource source)
+      {
+        return SOURCE_IDS.computeIfAbsent(source.getCachePrefix(), prefix ->
+          {
+            final var id = NEXT_SOURCE_ID.getAndIncrement();
+
+            if (id >= MAX_SOURCES)
+              {
+                throw new IllegalStateException("Too many tile sources: " + id);
+              }
+
+            return id;
+          });
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the id of the tile source of a key}.
+     * @param   key             the key
+     **********************************************************************************************************************************************************/
+    public static int sourceId (final long key)
+      {
+        return (int)(key >>> SOURCE_SHIFT) & (MAX_SOURCES - 1);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the zoom level of a key}.
+     * @param   key             the key
+     **********************************************************************************************************************************************************/
+    public static int zoom (final long key)
+      {
+        return (int)((key >>> ZOOM_SHIFT) & ZOOM_MASK);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the column of a key}.
+     * @param   key             the key
+     **********************************************************************************************************************************************************/
+    public static int column (final long key)
+      {
+        return (int)((key >>> COORDINATE_BITS) & COORDINATE_MASK);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the row of a key}.
+     * @param   key             the key
+     **********************************************************************************************************************************************************/
+    public static int row (final long key)
+      {
+        return (int)(key & COORDINATE_MASK);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the key of the ancestor of a tile at a lower zoom level}, that is the tile that covers it.
+     * @param   key             the key
+     * @param   levels          how many zoom levels up, not greater than the zoom level of the key
+     **********************************************************************************************************************************************************/
+    public static long ancestor (final long key, final int levels)
+      {
+        return of(sourceId(key), zoom(key) - levels, column(key) >>> levels, row(key) >>> levels);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the key of a child of a tile at the next zoom level}.
+     * @param   key             the key
+     * @param   quadrant        the quadrant of the child: 0 is top left, 1 top right, 2 bottom left, 3 bottom right
+     **********************************************************************************************************************************************************/
+    public static long child (final long key, final int quadrant)
+      {
+        return of(sourceId(key), zoom(key) + 1, column(key) * 2 + (quadrant & 1), row(key) * 2 + (quadrant >> 1));
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the key of the image of a tile synthesized from its child tiles}, which is different from the key of the tile.
+     * @param   key             the key
+     **********************************************************************************************************************************************************/
+    public static long synthesized (final long key)
+      {
+        return key | SYNTHESIZED_FLAG;
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return a readable representation of a key}.
+     * @param   key             the key
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    public static String toString (final long key)
+      {
+        return "%s%d:%d/%d/%d".formatted((key & SYNTHESIZED_FLAG) != 0 ? "*" : "", sourceId(key), zoom(key), column(key), row(key));
+      }
+  }
@@ -0,0 +1,281 @@
+/*
+ * *************************************************************************************************************************************************************
+ *
+ * MapView: a JavaFX map renderer for tile-based servers
+ * http://tidalwave.it/projects/mapview
+ *
+ * Copyright (C) 2024 - 2025 by Tidalwave s.a.s. (http://tidalwave.it)
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.  See the License for the specific language governing permissions and limitations under the License.
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * git clone https://bitbucket.org/tidalwave/mapview-src
+ * git clone https://github.com/tidalwave-it/mapview-src
+ *
+ * *************************************************************************************************************************************************************
+ */
+package it.tidalwave.mapview.impl;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+import java.util.Properties;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import lombok.extern.slf4j.Slf4j;
+import static java.time.format.DateTimeFormatter.RFC_1123_DATE_TIME;
+
+/***************************************************************************************************************************************************************
+ *
+ * The HTTP cache metadata of a tile in the disk cache: the validators ({@code ETag} and {@code Last-Modified}) to be sent with a conditional request, and
+ * the time after which the tile is stale. They are stored in a sidecar file next to the tile. The expiry is computed from {@code Cache-Control: max-age}
+ * or, if missing, from {@code Expires}; servers that don't tell get a default lifetime. Tiles without a sidecar, e.g. cached by a previous version, get the
+ * default lifetime since the time they were stored.
+ *
+ * @author  Fabrizio Giudici
+ *
+ **************************************************************************************************************************************************************/
+@Slf4j
+public record TileMetadata (@Nullable String etag, @Nullable String lastModified, @Nonnull Instant expiry)
+  {
+    /** The lifetime of a tile when the server doesn't specify it. */
+    /* visible for testing */ static final Duration DEFAULT_MAX_AGE = Duration.ofDays(7);
+
+    /** The suffix of the sidecar file. */
+    static final String SUFFIX = ".meta";
+
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "lastModified";
+    private static final String EXPIRY = "expiry";
+
+    /***********************************************************************************************************************************************************
+     * {@return the metadata of a tile from the headers of a response}.
+     * @param   headers         the headers
+     * @param   now             the time the response has been received
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    public static TileMetadata of (@Nonnull final HttpHeaders headers, @Nonnull final Instant now)
+      {
+        return new TileMetadata(headers.firstValue("ETag").orElse(null),
+                                headers.firstValue("Last-Modified").orElse(null),
+                                now.plus(parseLifetime(headers, now)));
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return a copy of this metadata refreshed by the headers of a {@code 304 Not Modified} response}. Validators not repeated by the server are kept.
+     * @param   headers         the headers
+     * @param   now             the time the response has been received
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    public TileMetadata refreshedBy (@Nonnull final HttpHeaders headers, @Nonnull final Instant now)
+      {
+        final var fresh = of(headers, now);
+        return new TileMetadata((fresh.etag != null) ? fresh.etag : etag,
+                                (fresh.lastModified != null) ? fresh.lastModified : lastModified,
+                                fresh.expiry);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return whether the tile is stale at the given time}.
+     * @param   now             the time
+     **********************************************************************************************************************************************************/
+    public boolean isStale (@Nonnull final Instant now)
+      {
+        return !now.isBefore(expiry);
+      }
+
+    /***********************************************************************************************************************************************************
+     * Adds the validators to a request, making it conditional.
+     * @param   builder         the builder of the request
+     * @return                  the builder
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    public HttpRequest.Builder addConditionalHeaders (@Nonnull final HttpRequest.Builder builder)
+      {
+        if (etag != null)
+          {
+            builder.header("If-None-Match", etag);
+          }
+
+        if (lastModified != null)
+          {
+            builder.header("If-Modified-Since", lastModified);
+          }
+
+        return builder;
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the metadata of a cached tile}, or an empty value if there's no metadata (e.g. the tile was cached by a previous version) or it can't be read.
+     * @param   tilePath        the path of the cached tile
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    public static Optional<TileMetadata> load (@Nonnull final Path tilePath)
+      {
+        final var path = sidecarOf(tilePath);
+
+        if (!Files.exists(path))
+          {
+            return Optional.empty();
+          }
+
+        try (final var reader = Files.newBufferedReader(path))
+          {
+            final var properties = new Properties();
+            properties.load(reader);
+            return Optional.of(new TileMetadata(properties.getProperty(ETAG),
+                                                properties.getProperty(LAST_MODIFIED),
+                                                Instant.parse(properties.getProperty(EXPIRY))));
+          }
+        catch (IOException | RuntimeException e)
+          {
+            log.warn("can't read metadata {}: {}", path, e.toString());
+            return Optional.empty();
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the metadata of a cached tile}. If there's no metadata, or it can't be read, the tile is fresh for {@link #DEFAULT_MAX_AGE} since it was
+     * stored, and has no validators; if even the time it was stored can't be read, it's stale.
+     * @param   tilePath        the path of the cached tile
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    public static TileMetadata loadOrDefault (@Nonnull final Path tilePath)
+      {
+        return load(tilePath).orElseGet(() ->
+          {
+            try
+              {
+                return new TileMetadata(null, null, Files.getLastModifiedTime(tilePath).toInstant().plus(DEFAULT_MAX_AGE));
+              }
+            catch (IOException e)
+              {
+                log.warn("can't read the time of {}: {}", tilePath, e.toString());
+                return new TileMetadata(null, null, Instant.EPOCH);
+              }
+          });
+      }
+
+    /***********************************************************************************************************************************************************
+     * Stores this metadata for a cached tile. The sidecar file is first written to a temporary file, which is then atomically renamed, so readers never
+     * see a partially written one.
+     * @param   tilePath        the path of the cached tile
+     * @throws  IOException     in case of error
+     **********************************************************************************************************************************************************/
+    public void store (@Nonnull final Path tilePath)
+            throws IOException
+      {
+        final var properties = new Properties();
+
+        if (etag != null)
+          {
+            properties.setProperty(ETAG, etag);
+          }
+
+        if (lastModified != null)
+          {
+            properties.setProperty(LAST_MODIFIED, lastModified);
+          }
+
+        properties.setProperty(EXPIRY, expiry.toString());
+
+        final var path = sidecarOf(tilePath);
+        final var tempPath = Files.createTempFile(path.getParent(), path.getFileName() + ".", TileCache.TEMP_SUFFIX);
+
+        try
+          {
+            try (final var writer = Files.newBufferedWriter(tempPath))
+              {
+                properties.store(writer, null);
+              }
+
+            try
+              {
+                Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+              }
+            catch (AtomicMoveNotSupportedException e)
+              {
+                Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+              }
+          }
+        finally
+          {
+            Files.deleteIfExists(tempPath);
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the path of the sidecar file of a cached tile}.
+     * @param   tilePath        the path of the cached tile
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    public static Path sidecarOf (@Nonnull final Path tilePath)
+      {
+        return tilePath.resolveSibling(tilePath.getFileName() + SUFFIX);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return how long a response stays fresh}. {@code no-cache} and {@code no-store} mean that it must be revalidated every time.
+     * @param   headers         the headers of the response
+     * @param   now             the time the response has been received
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    private static Duration parseLifetime (@Nonnull final HttpHeaders headers, @Nonnull final Instant now)
+      {
+        final var cacheControl = headers.firstValue("Cache-Control").orElse("");
+
+        for (final var directive : cacheControl.toLowerCase().split(","))
+          {
+            final var trimmed = directive.trim();
+
+            if (trimmed.equals("no-cache") || trimmed.equals("no-store"))
+              {
+                return Duration.ZERO;
+              }
+
+            if (trimmed.startsWith("max-age="))
+              {
+                try
+                  {
+                    return Duration.ofSeconds(Math.max(0, Long.parseLong(trimmed.substring("max-age=".length()))));
+                  }
+                catch (NumberFormatException e)
+                  {
+                    log.warn("unparseable Cache-Control: {}", cacheControl);
+                  }
+              }
+          }
+
+        return headers.firstValue("Expires").flatMap(expires ->
+          {
+            try
+              {
+                final var lifetime = Duration.between(now, ZonedDateTime.parse(expires.trim(), RFC_1123_DATE_TIME).toInstant());
+                return Optional.of(lifetime.isNegative() ? Duration.ZERO : lifetime);
+              }
+            catch (DateTimeParseException e)
+              {
+                log.warn("unparseable Expires: {}", expires);
+                return Optional.empty();
+              }
+          }).orElse(DEFAULT_MAX_AGE);
+      }
+  }
@@ -78,6 +78,8 @@ import lombok.Setter;
 import lombok.With;
 import lombok.experimental.Accessors;
 import lombok.extern.slf4j.Slf4j;
+import static org.apiguardian.api.API.Status.DEPRECATED;
+import static org.apiguardian.api.API.Status.EXPERIMENTAL;
 import static org.apiguardian.api.API.Status.STABLE;
 import static java.lang.Double.doubleToLongBits;
 import static javafx.collections.FXCollections.observableList;
@@ -157,12 +159,28 @@ public class MapView extends Region
     /** Behaviour that translates the map of the same amount of mouse drag. @since 1.0-ALPHA-4 */
     public static final BiConsumer<MapView, InputEvent> TRANSLATE = MapView::translate;
 
-    private static final int DEFAULT_TILE_POOL_SIZE = 10;
+    private static final int DEFAULT_TILE_POOL_SIZE = 2;
+    private static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 10;
+    private static final double DEFAULT_MAX_REQUESTS_PER_SECOND = Double.POSITIVE_INFINITY;
+    private static final int DEFAULT_MAX_DOWNLOAD_ATTEMPTS = 5;
+    private static final java.time.Duration DEFAULT_RETRY_BASE_DELAY = java.time.Duration.ofSeconds(1);
     private static final int DEFAULT_TILE_QUEUE_CAPACITY = 1000;
+    private static final long DEFAULT_MEMORY_CACHE_BUDGET = 128L * 1024 * 1024;
+    private static final long DEFAULT_DISK_CACHE_MAX_BYTES = Long.MAX_VALUE;
+    private static final int DEFAULT_DISK_CACHE_MAX_TILES = Integer.MAX_VALUE;
+    private static final int DEFAULT_MAX_SYNTHESIS_DEPTH = 2;
     private static final OpenStreetMapTileSource DEFAULT_TILE_SOURCE = new OpenStreetMapTileSource();
 
-    /** The placeholder used while the tile image has not been loaded yet. */
-    private static final Supplier<Image> WAITING_IMAGE = () -> new Image(MapView.class.getResource("/hold-on.gif").toExternalForm());
+    /** The placeholder used while the tile image has not been loaded yet; a single instance is shared by all tiles. */
+    private static final Supplier<Image> WAITING_IMAGE = () -> WaitingImageHolder.IMAGE;
+
+    /***********************************************************************************************************************************************************
+     * Lazily creates the waiting image, when it's needed for the first time.
+     **********************************************************************************************************************************************************/
+    private static final class WaitingImageHolder
+      {
+        private static final Image IMAGE = new Image(MapView.class.getResource("/hold-on.gif").toExternalForm());
+      }
 
     /***********************************************************************************************************************************************************
      * This helper class provides methods useful for creating map overlays.
@@ -202,9 +220,37 @@ public class MapView extends Region
         @Nonnull
         public Point2D toOverlayPoint (@Nonnull final MapCoordinates coordinates)
           {
-            final var gridOffset = model.gridOffset();
-            final var point = model.coordinatesToMapViewPoint(coordinates);
-            return new Point2D(point.x() - gridOffset.x(), point.y() - gridOffset.y());
+            final var point = new double[2];
+            model.coordinatesToMapViewPoint(coordinates.latitude(), coordinates.longitude(), point);
+            return new Point2D(point[0] - model.gridOffsetX(), point[1] - model.gridOffsetY());
+          }
+
+        /*******************************************************************************************************************************************************
+         * Computes the points on the overlay corresponding to a batch of coordinates, storing the i-th point into {@code xs[i]} and {@code ys[i]}. This
+         * is much faster than calling {@link #toOverlayPoint(MapCoordinates)} for each point of a large set, such as a track. Note that projections can
+         * process large batches (tens of thousands of points) in parallel on the common {@link java.util.concurrent.ForkJoinPool}: since this method is
+         * usually called by the JavaFX thread, which waits for the result, other tasks using the common pool at the same time can delay rendering.
+         * @param   latitudes     the latitudes
+         * @param   longitudes    the longitudes
+         * @param   xs            the array that receives the x coordinates
+         * @param   ys            the array that receives the y coordinates
+         * @throws  IllegalArgumentException if the arrays don't have the same length
+         * @since   1.0-ALPHA-5
+         ******************************************************************************************************************************************************/
+        public void toOverlayPoints (@Nonnull final double[] latitudes,
+                                     @Nonnull final double[] longitudes,
+                                     @Nonnull final double[] xs,
+                                     @Nonnull final double[] ys)
+          {
+            model.coordinatesToMapViewPoints(latitudes, longitudes, xs, ys);
+            final var gridOffsetX = model.gridOffsetX();
+            final var gridOffsetY = model.gridOffsetY();
+
+            for (int i = 0; i < xs.length; i++)
+              {
+                xs[i] -= gridOffsetX;
+                ys[i] -= gridOffsetY;
+              }
           }
 
         /*******************************************************************************************************************************************************
@@ -237,21 +283,112 @@ public class MapView extends Region
     /***********************************************************************************************************************************************************
      * Options for creating a {@code MapView}. Don't directly create an instance of this class, but use {@link MapView#options()} and then set the desired
      * attributes with a {@code with*()} method.
-     * @param   cacheFolder         the {@link Path} of the folder where cached tiles are stored
-     * @param   downloadAllowed     whether downloading tiles is allowed
-     * @param   poolSize            the number of parallel thread of the tile downloader
-     * @param   tileQueueCapacity   the capacity of the tile queue
-     * @param   waitingImage        a {@link Supplier} of the image to be rendered while the tile bitmap has not been downloaded yet
-     * @param   executorService     the {@link ExecutorService} to load tiles in backgrounds
+     * @param   cacheFolder             the {@link Path} of the folder where cached tiles are stored
+     * @param   downloadAllowed         whether downloading tiles is allowed
+     * @param   syncDownloads           whether downloaded tiles are flushed to the storage device before being published in the cache
+     * @param   poolSize                the number of threads dispatching tiles to the asynchronous downloader
+     * @param   maxConcurrentRequests   the maximum number of requests in flight to tile servers; with HTTP/2 they are multiplexed on a single
+     *                                  connection, with HTTP/1.1 each needs its own connection, so this is also the cap of open connections
+     * @param   maxRequestsPerSecond    the maximum number of requests per second to each tile server host; the lower between this and
+     *                                  {@link TileSource#getMaxRequestsPerSecond()} is used, so this can only make pacing stricter
+     * @param   maxDownloadAttempts     the maximum number of attempts to download a tile when the server is throttling or temporarily unavailable
+     * @param   retryBaseDelay          the delay before retrying a failed download the first time; it grows exponentially at each further attempt
+     * @param   tileQueueCapacity       the capacity of the tile queue
+     * @param   memoryCacheBudget       the maximum number of bytes taken by the pixels of the tile images kept in memory
+     * @param   diskCacheMaxBytes       the maximum number of bytes of the cached tiles of each tile source; {@code Long.MAX_VALUE} means no limit
+     * @param   diskCacheMaxTiles       the maximum number of cached tiles of each tile source; {@code Integer.MAX_VALUE} means no limit
+     * @param   maxSynthesisDepth       how many zoom levels are descended to synthesize the image of a tile that can't be downloaded from the cached tiles
+     *                                  that it covers; each level requires four times more tiles; 0 disables the feature
+     * @param   waitingImage            a {@link Supplier} of the image to be rendered while the tile bitmap has not been downloaded yet
+     * @param   executorService         the {@link ExecutorService} to load tiles in backgrounds; it's not used with virtual threads
+     * @param   virtualThreads          whether each tile is loaded in its own virtual thread (see {@link #withVirtualThreads()}); the loader needs an
+     *                                  unbounded executor, so a virtual-thread-per-task one is always used in this mode
+     * @param   canvasRendering         whether tiles are drawn on a single {@code Canvas} rather than being a grid of {@code ImageView}s; it scales better
+     *                                  with the number of tiles, since only the cells whose image changed are redrawn
      **********************************************************************************************************************************************************/
     @API(status = STABLE)
     @With
     public record Options(@Nonnull Path cacheFolder,
                           boolean downloadAllowed,
+                          boolean syncDownloads,
                           int poolSize,
+                          int maxConcurrentRequests,
+                          double maxRequestsPerSecond,
+                          int maxDownloadAttempts,
+                          @Nonnull java.time.Duration retryBaseDelay,
                           int tileQueueCapacity,
+                          long memoryCacheBudget,
+                          long diskCacheMaxBytes,
+                          int diskCacheMaxTiles,
+                          int maxSynthesisDepth,
                           @Nonnull Supplier<Image> waitingImage,
-                          @Nonnull Function<Integer, ExecutorService> executorService) {}
+                          @Nonnull Function<Integer, ExecutorService> executorService,
+                          boolean virtualThreads,
+                          boolean canvasRendering)
+      {
+        /*******************************************************************************************************************************************************
+         * Creates a new instance with the attributes available before 1.0-ALPHA-5; the others get their default values. It's only kept for compatibility
+         * with existing code, since any further attribute breaks the canonical constructor: use {@link MapView#options()} and the {@code with*()} methods.
+         * @param   cacheFolder         the {@link Path} of the folder where cached tiles are stored
+         * @param   downloadAllowed     whether downloading tiles is allowed
+         * @param   poolSize            the number of threads dispatching tiles to the asynchronous downloader
+         * @param   tileQueueCapacity   the capacity of the tile queue
+         * @param   waitingImage        a {@link Supplier} of the image to be rendered while the tile bitmap has not been downloaded yet
+         * @param   executorService     the {@link ExecutorService} to load tiles in backgrounds
+         * @deprecated                  use {@link MapView#options()} and the {@code with*()} methods
+         ******************************************************************************************************************************************************/
+        @API(status = DEPRECATED) @Deprecated(since = "1.0-ALPHA-5")
+        public Options (@Nonnull final Path cacheFolder,
+                        final boolean downloadAllowed,
+                        final int poolSize,
+                        final int tileQueueCapacity,
+                        @Nonnull final Supplier<Image> waitingImage,
+                        @Nonnull final Function<Integer, ExecutorService> executorService)
+          {
+            this(cacheFolder,
+                 downloadAllowed,
+                 false,
+                 poolSize,
+                 DEFAULT_MAX_CONCURRENT_REQUESTS,
+                 DEFAULT_MAX_REQUESTS_PER_SECOND,
+                 DEFAULT_MAX_DOWNLOAD_ATTEMPTS,
+                 DEFAULT_RETRY_BASE_DELAY,
+                 tileQueueCapacity,
+                 DEFAULT_MEMORY_CACHE_BUDGET,
+                 DEFAULT_DISK_CACHE_MAX_BYTES,
+                 DEFAULT_DISK_CACHE_MAX_TILES,
+                 DEFAULT_MAX_SYNTHESIS_DEPTH,
+                 waitingImage,
+                 executorService,
+                 false,
+                 false);
+          }
+
+        /*******************************************************************************************************************************************************
+         * {@return a copy of these options that loads each tile in its own virtual thread}. In this mode {@link #poolSize()} and
+         * {@link #executorService()} are ignored, while {@link #maxConcurrentRequests()} still limits the requests to tile servers. It's a shortcut for
+         * {@code withVirtualThreads(true)}.
+         * @since   1.0-ALPHA-5
+         ******************************************************************************************************************************************************/
+        @Nonnull
+        public Options withVirtualThreads()
+          {
+            return withVirtualThreads(true);
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * Statistics of the memory cache of tile images.
+     * @param   hitCount                the number of images found in the cache
+     * @param   missCount               the number of images not found in the cache
+     * @param   evictionCount           the number of images evicted to stay within the budget
+     * @param   size                    the number of images in the cache
+     * @param   weight                  the number of bytes taken by the pixels of the images in the cache
+     * @param   budget                  the maximum weight
+     * @since   1.0-ALPHA-5
+     **********************************************************************************************************************************************************/
+    @API(status = EXPERIMENTAL)
+    public record CacheStats (long hitCount, long missCount, long evictionCount, int size, long weight, long budget) {}
 
     /** The tile source. */
     @Nonnull
@@ -277,6 +414,9 @@ public class MapView extends Region
     @Nonnull
     private final SimpleObjectProperty<MapCoordinates> mouseCoordinates;
 
+    /** A scratch buffer for computing the mouse coordinates without allocating intermediate objects. */
+    private final double[] mouseBuffer = new double[2];
+
     /** The rectangular area in the view. */
     @Nonnull
     private final SimpleObjectProperty<MapArea> area;
@@ -349,7 +489,7 @@ public class MapView extends Region
         tileSource = new SimpleObjectProperty<>(this, "tileSource", DEFAULT_TILE_SOURCE);
         model = new MapViewModel(tileSource.get());
         tileCache = new TileCache(options);
-        tileGrid = new TileGrid(this, model, tileSource, tileCache);
+        tileGrid = new TileGrid(this, model, tileSource, tileCache, options.canvasRendering());
         center = new SimpleObjectProperty<>(this, "center", tileGrid.getCenter());
         zoom = new RangeLimitedDoubleProperty(this, "zoom", model.zoom(), tileSource.get().getMinZoomLevel(), tileSource.get().getMaxZoomLevel());
         minZoom = new SimpleDoubleProperty(this, "minZoom", tileSource.get().getMinZoomLevel());
@@ -384,10 +524,21 @@ public class MapView extends Region
       {
         return new Options(Path.of(System.getProperty("java.io.tmpdir")),
                            true,
+                           false,
                            DEFAULT_TILE_POOL_SIZE,
+                           DEFAULT_MAX_CONCURRENT_REQUESTS,
+                           DEFAULT_MAX_REQUESTS_PER_SECOND,
+                           DEFAULT_MAX_DOWNLOAD_ATTEMPTS,
+                           DEFAULT_RETRY_BASE_DELAY,
                            DEFAULT_TILE_QUEUE_CAPACITY,
+                           DEFAULT_MEMORY_CACHE_BUDGET,
+                           DEFAULT_DISK_CACHE_MAX_BYTES,
+                           DEFAULT_DISK_CACHE_MAX_TILES,
+                           DEFAULT_MAX_SYNTHESIS_DEPTH,
                            WAITING_IMAGE,
-                           Executors::newFixedThreadPool);
+                           Executors::newFixedThreadPool,
+                           false,
+                           false);
       }
 
     /***********************************************************************************************************************************************************
@@ -569,6 +720,16 @@ public class MapView extends Region
         setCenterAndZoom(area.getCenter(), model.computeFittingZoom(area));
       }
 
+    /***********************************************************************************************************************************************************
+     * {@return the statistics of the memory cache of tile images}.
+     * @since   1.0-ALPHA-5
+     **********************************************************************************************************************************************************/
+    @API(status = EXPERIMENTAL) @Nonnull
+    public CacheStats getMemoryCacheStats()
+      {
+        return tileCache.getMemoryCacheStats();
+      }
+
     /***********************************************************************************************************************************************************
      * {@return the scale of the map in meters per pixel}.
      **********************************************************************************************************************************************************/
@@ -766,7 +927,9 @@ public class MapView extends Region
      **********************************************************************************************************************************************************/
     private void onMouseMoved (@Nonnull final MouseEvent event)
       {
-        mouseCoordinates.set(pointToCoordinates(MapViewPoint.of(event)));
+        // the primitive variant saves intermediate objects, this is called at every mouse movement
+        model.mapViewPointToCoordinates(event.getX(), event.getY(), mouseBuffer);
+        mouseCoordinates.set(MapCoordinates.of(mouseBuffer[0], mouseBuffer[1]));
       }
 
     /***********************************************************************************************************************************************************
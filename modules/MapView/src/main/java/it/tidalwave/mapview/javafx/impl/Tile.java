@@ -28,16 +28,20 @@ package it.tidalwave.mapview.javafx.impl;
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
 import java.util.Optional;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.nio.file.Path;
 import java.net.URI;
+import javafx.geometry.Rectangle2D;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
 import javafx.application.Platform;
 import it.tidalwave.mapview.TileSource;
 import it.tidalwave.mapview.impl.TileCache;
 import it.tidalwave.mapview.impl.AbstractTile;
+import it.tidalwave.mapview.impl.TileKey;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
@@ -52,31 +56,51 @@ import lombok.extern.slf4j.Slf4j;
 @Getter @Slf4j
 public class Tile extends ImageView implements AbstractTile
   {
-    public static final int CREATION_TIMEOUT = 2000;
     /** The source of tile bitmaps. */
     @Nonnull
     private final TileSource source;
 
-    /** The URL of this tile. */
-    private final URI uri;
+    /** The key of this tile. */
+    private final long key;
+
+    /** The URL of this tile, created when it's requested for the first time. */
+    @Getter(AccessLevel.NONE) @Nullable
+    private volatile URI uri;
 
     /** The zoom level this tile belongs to. */
     private final int zoom;
 
+    /** The column of this tile in the map. */
+    private final int column;
+
+    /** The row of this tile in the map. */
+    private final int row;
+
+    /** The batcher that applies images loaded in background. */
+    @Nonnull
+    private final TileImageBatcher imageBatcher;
+
     /***********************************************************************************************************************************************************
      * Creates a new tile and submits it to the cache for downloading.
      * @param   tileCache       the tile cache
+     * @param   imageBatcher    the batcher that applies images loaded in background
      * @param   source          the tile source
-     * @param   uri             the URL of the tile
+     * @param   key             the key of the tile
      * @param   size            the size of the tile
-     * @param   zoom            the zoom level of this tile
      **********************************************************************************************************************************************************/
     @SuppressWarnings("this-escape")
-    protected Tile (@Nonnull final TileCache tileCache, @Nonnull final TileSource source, @Nonnull final URI uri, final int size, final int zoom)
+    protected Tile (@Nonnull final TileCache tileCache,
+                    @Nonnull final TileImageBatcher imageBatcher,
+                    @Nonnull final TileSource source,
+                    final long key,
+                    final int size)
       {
+        this.imageBatcher = imageBatcher;
         this.source = source;
-        this.uri = uri;
-        this.zoom = zoom;
+        this.key = key;
+        this.zoom = TileKey.zoom(key);
+        this.column = TileKey.column(key);
+        this.row = TileKey.row(key);
         setFitWidth(size);
         setFitHeight(size);
         tileCache.loadTileInBackground(this);
@@ -86,64 +110,170 @@ public class Tile extends ImageView implements AbstractTile
      * {@inheritDoc}
      **********************************************************************************************************************************************************/
     @Override @Nonnull
+    public URI getUri()
+      {
+        var result = uri;
+
+        if (result == null)
+          {
+            result = uri = source.getTileUri(column, row, zoom);
+          }
+
+        return result;
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@inheritDoc} The image is decoded by the calling thread, which is expected to be a background thread; the JavaFX thread is only asked to render the
+     * decoded image, without waiting for it.
+     **********************************************************************************************************************************************************/
+    @Override @Nonnull
     public Optional<Object> setImageByPath (@Nullable final Path path)
+      {
+        final var image = decode(path, getUri());
+        setImageByBitmap(image.orElse(null));
+        return image.map(Object.class::cast);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@inheritDoc}
+     **********************************************************************************************************************************************************/
+    @Override @Nonnull
+    public Optional<Object> decodeBitmap (@Nonnull final Path path)
+      {
+        return decode(path, getUri()).map(Object.class::cast);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@inheritDoc}
+     **********************************************************************************************************************************************************/
+    @Override @Nonnull
+    public Object composeBitmap (@Nonnull final Object[] quadrants)
+      {
+        return compose(quadrants);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return an image decoded from a file}, or an empty value if there's no file or it can't be decoded.
+     * @param   path            the path of the file
+     * @param   uri             the URI of the tile, for logging
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    /* package */ static Optional<Image> decode (@Nullable final Path path, @Nonnull final URI uri)
       {
         if (path == null)
           {
-            setImageByBitmap(null);
+            return Optional.empty();
           }
-        else if (Platform.isFxApplicationThread())
+
+        final var image = new Image(path.toUri().toString());
+
+        if (image.isError())
           {
-            setImage(new Image(path.toUri().toString()));
+            log.error("can't decode {} for {}: {}", path, uri, String.valueOf(image.getException()));
+            return Optional.empty();
           }
-        else
+
+        return Optional.of(image);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return an image composed of four square images of the same size}, each one scaled down to a quarter by averaging blocks of 2x2 pixels. It can be
+     * called by any thread.
+     * @param   quadrants       the images, in the order: top left, top right, bottom left, bottom right
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    /* package */ static Image compose (@Nonnull final Object[] quadrants)
+      {
+        final var size = (int)((Image)quadrants[0]).getWidth();
+        final var half = size / 2;
+        final var format = PixelFormat.getIntArgbInstance();
+        final var source = new int[size * size];
+        final var target = new int[half * half];
+        final var result = new WritableImage(half * 2, half * 2);
+
+        for (int q = 0; q < quadrants.length; q++)
           {
-            final var latch = new CountDownLatch(1);
-            Platform.runLater(() ->
-              {
-                setImage(new Image(path.toUri().toString()));
-                latch.countDown();
-              });
+            ((Image)quadrants[q]).getPixelReader().getPixels(0, 0, size, size, format, source, 0, size);
 
-            try
+            for (int y = 0; y < half; y++)
               {
-                if (!latch.await(CREATION_TIMEOUT, TimeUnit.MILLISECONDS))
+                for (int x = 0; x < half; x++)
                   {
-                    log.error("Time-out while setting the image");
+                    final var i = y * 2 * size + x * 2;
+                    target[y * half + x] = average(source[i], source[i + 1], source[i + size], source[i + size + 1]);
                   }
               }
-            catch (InterruptedException e)
-              {
-                log.error("Timeout when loading " + path + " for " + uri, e);
-                Thread.currentThread().interrupt();
-              }
+
+            result.getPixelWriter().setPixels((q & 1) * half, (q >> 1) * half, half, half, format, target, 0, half);
           }
 
-        return Optional.ofNullable(getImage());
+        return result;
       }
 
     /***********************************************************************************************************************************************************
-     * {@inheritDoc}
+     * {@return the average of four ARGB pixels}. Two channels at a time are summed in a single {@code int}, as each sum fits into 16 bits.
+     **********************************************************************************************************************************************************/
+    private static int average (final int p0, final int p1, final int p2, final int p3)
+      {
+        final var rb = (p0 & 0x00ff00ff) + (p1 & 0x00ff00ff) + (p2 & 0x00ff00ff) + (p3 & 0x00ff00ff) + 0x00020002;
+        final var ag = ((p0 >>> 8) & 0x00ff00ff) + ((p1 >>> 8) & 0x00ff00ff) + ((p2 >>> 8) & 0x00ff00ff) + ((p3 >>> 8) & 0x00ff00ff) + 0x00020002;
+        return (((ag >>> 2) & 0x00ff00ff) << 8) | ((rb >>> 2) & 0x00ff00ff);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@inheritDoc} When called by a background thread, the image is applied at the next pulse by the {@link TileImageBatcher}.
      **********************************************************************************************************************************************************/
     @Override
     public void setImageByBitmap (@Nullable final Object image)
       {
         if (Platform.isFxApplicationThread())
           {
-            setImage((Image)image);
+            apply((Image)image);
           }
         else
           {
-            Platform.runLater(() -> setImage((Image)image));
+            imageBatcher.submit(this::apply, (Image)image);
           }
       }
 
+    /***********************************************************************************************************************************************************
+     * {@inheritDoc} The region is rendered by means of a viewport, so no new image is created.
+     **********************************************************************************************************************************************************/
+    @Override
+    public void setPlaceholderBitmap (@Nonnull final Object bitmap, final double x, final double y, final double size)
+      {
+        final Consumer<Image> placeholder = image ->
+          {
+            setImage(image);
+            setViewport(new Rectangle2D(x * image.getWidth(), y * image.getHeight(), size * image.getWidth(), size * image.getHeight()));
+          };
+
+        if (Platform.isFxApplicationThread())
+          {
+            placeholder.accept((Image)bitmap);
+          }
+        else
+          {
+            imageBatcher.submit(placeholder, (Image)bitmap);
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * Sets the image, resetting the viewport of a placeholder.
+     * @param   image           the image
+     **********************************************************************************************************************************************************/
+    private void apply (@Nullable final Image image)
+      {
+        setViewport(null);
+        setImage(image);
+      }
+
     /***********************************************************************************************************************************************************
      * {@inheritDoc}
      **********************************************************************************************************************************************************/
     @Override @Nonnull
     public String toString()
       {
-        return super.toString() + " - " + uri;
+        return super.toString() + " - " + getUri();
       }
   }
@@ -0,0 +1,326 @@
+/*
+ * *************************************************************************************************************************************************************
+ *
+ * MapView: a JavaFX map renderer for tile-based servers
+ * http://tidalwave.it/projects/mapview
+ *
+ * Copyright (C) 2024 - 2025 by Tidalwave s.a.s. (http://tidalwave.it)
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.  See the License for the specific language governing permissions and limitations under the License.
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * git clone https://bitbucket.org/tidalwave/mapview-src
+ * git clone https://github.com/tidalwave-it/mapview-src
+ *
+ * *************************************************************************************************************************************************************
+ */
+package it.tidalwave.mapview.javafx.impl;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.nio.file.Path;
+import java.net.URI;
+import javafx.application.Platform;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.image.Image;
+import it.tidalwave.mapview.TileSource;
+import it.tidalwave.mapview.impl.AbstractTile;
+import it.tidalwave.mapview.impl.TileCache;
+import it.tidalwave.mapview.impl.TileKey;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/***************************************************************************************************************************************************************
+ *
+ * A single {@link Canvas} on which tiles are drawn, as an alternative to a grid of {@link Tile}s. Tiles here are plain objects and not nodes, so the cost of
+ * the scene graph doesn't depend on the number of tiles. The whole canvas is redrawn when tiles are moved; otherwise, when the image of a tile changes,
+ * only its cell is redrawn.
+ *
+ * @author  Fabrizio Giudici
+ *
+ **************************************************************************************************************************************************************/
+@Slf4j
+public class TileCanvas extends Canvas
+  {
+    /***********************************************************************************************************************************************************
+     * A tile drawn on this canvas.
+     **********************************************************************************************************************************************************/
+    @Getter
+    public final class CanvasTile implements AbstractTile
+      {
+        /** The source of tile bitmaps. */
+        @Nonnull
+        private final TileSource source;
+
+        /** The key of this tile. */
+        private final long key;
+
+        /** The URL of this tile, created when it's requested for the first time. */
+        @Getter(AccessLevel.NONE) @Nullable
+        private volatile URI uri;
+
+        /** The zoom level this tile belongs to. */
+        private final int zoom;
+
+        /** The column of this tile in the map. */
+        private final int column;
+
+        /** The row of this tile in the map. */
+        private final int row;
+
+        /** The column of the cell this tile is drawn in. */
+        private int gridColumn;
+
+        /** The row of the cell this tile is drawn in. */
+        private int gridRow;
+
+        /** The image of this tile. */
+        @Nullable
+        private Image image;
+
+        /** The region of {@link #image} to draw, when it's the placeholder taken from an ancestor tile. */
+        @Nullable
+        private Rectangle2D viewport;
+
+        /*******************************************************************************************************************************************************
+         * Creates a new tile.
+         * @param   source          the tile source
+         * @param   key             the key of the tile
+         ******************************************************************************************************************************************************/
+        private CanvasTile (@Nonnull final TileSource source, final long key)
+          {
+            this.source = source;
+            this.key = key;
+            this.zoom = TileKey.zoom(key);
+            this.column = TileKey.column(key);
+            this.row = TileKey.row(key);
+          }
+
+        /*******************************************************************************************************************************************************
+         * {@inheritDoc}
+         ******************************************************************************************************************************************************/
+        @Override @Nonnull
+        public URI getUri()
+          {
+            var result = uri;
+
+            if (result == null)
+              {
+                result = uri = source.getTileUri(column, row, zoom);
+              }
+
+            return result;
+          }
+
+        /*******************************************************************************************************************************************************
+         * Moves this tile to a cell of the canvas. It will be drawn there at the next redraw.
+         * @param   gridColumn      the column of the cell
+         * @param   gridRow         the row of the cell
+         ******************************************************************************************************************************************************/
+        public void moveTo (final int gridColumn, final int gridRow)
+          {
+            this.gridColumn = gridColumn;
+            this.gridRow = gridRow;
+          }
+
+        /*******************************************************************************************************************************************************
+         * {@inheritDoc} The image is decoded by the calling thread, which is expected to be a background thread.
+         ******************************************************************************************************************************************************/
+        @Override @Nonnull
+        public Optional<Object> setImageByPath (@Nullable final Path path)
+          {
+            final var image = Tile.decode(path, getUri());
+            setImageByBitmap(image.orElse(null));
+            return image.map(Object.class::cast);
+          }
+
+        /*******************************************************************************************************************************************************
+         * {@inheritDoc}
+         ******************************************************************************************************************************************************/
+        @Override @Nonnull
+        public Optional<Object> decodeBitmap (@Nonnull final Path path)
+          {
+            return Tile.decode(path, getUri()).map(Object.class::cast);
+          }
+
+        /*******************************************************************************************************************************************************
+         * {@inheritDoc}
+         ******************************************************************************************************************************************************/
+        @Override @Nonnull
+        public Object composeBitmap (@Nonnull final Object[] quadrants)
+          {
+            return Tile.compose(quadrants);
+          }
+
+        /*******************************************************************************************************************************************************
+         * {@inheritDoc} When called by a background thread, the image is drawn at the next pulse by the {@link TileImageBatcher}.
+         ******************************************************************************************************************************************************/
+        @Override
+        public void setImageByBitmap (@Nullable final Object image)
+          {
+            if (Platform.isFxApplicationThread())
+              {
+                apply((Image)image);
+              }
+            else
+              {
+                imageBatcher.submit(this::apply, (Image)image);
+              }
+          }
+
+        /*******************************************************************************************************************************************************
+         * {@inheritDoc}
+         ******************************************************************************************************************************************************/
+        @Override
+        public void setPlaceholderBitmap (@Nonnull final Object bitmap, final double x, final double y, final double size)
+          {
+            final Consumer<Image> placeholder = image ->
+                    apply(image, new Rectangle2D(x * image.getWidth(), y * image.getHeight(), size * image.getWidth(), size * image.getHeight()));
+
+            if (Platform.isFxApplicationThread())
+              {
+                placeholder.accept((Image)bitmap);
+              }
+            else
+              {
+                imageBatcher.submit(placeholder, (Image)bitmap);
+              }
+          }
+
+        /*******************************************************************************************************************************************************
+         * Sets the image and redraws the cell of this tile, if it's still on the canvas.
+         * @param   image           the image
+         ******************************************************************************************************************************************************/
+        private void apply (@Nullable final Image image)
+          {
+            apply(image, null);
+          }
+
+        /*******************************************************************************************************************************************************
+         * Sets the image and the region to draw, then redraws the cell of this tile, if it's still on the canvas.
+         * @param   image           the image
+         * @param   viewport        the region of the image to draw, or {@code null} for the whole image
+         ******************************************************************************************************************************************************/
+        private void apply (@Nullable final Image image, @Nullable final Rectangle2D viewport)
+          {
+            this.image = image;
+            this.viewport = viewport;
+
+            if (tiles.contains(this))
+              {
+                draw(this);
+              }
+          }
+
+        /*******************************************************************************************************************************************************
+         * {@inheritDoc}
+         ******************************************************************************************************************************************************/
+        @Override @Nonnull
+        public String toString()
+          {
+            return "CanvasTile - " + getUri();
+          }
+      }
+
+    /** The tile cache. */
+    @Nonnull
+    private final TileCache tileCache;
+
+    /** The batcher that applies images loaded in background. */
+    @Nonnull
+    private final TileImageBatcher imageBatcher;
+
+    /** The tiles on this canvas. */
+    /* visible for testing */ final Set<CanvasTile> tiles = new HashSet<>();
+
+    /** The size of the tiles. */
+    private int tileSize;
+
+    /***********************************************************************************************************************************************************
+     * Creates a new instance.
+     * @param   tileCache       the tile cache
+     * @param   imageBatcher    the batcher that applies images loaded in background
+     **********************************************************************************************************************************************************/
+    public TileCanvas (@Nonnull final TileCache tileCache, @Nonnull final TileImageBatcher imageBatcher)
+      {
+        this.tileCache = tileCache;
+        this.imageBatcher = imageBatcher;
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return a new tile}. It won't be drawn nor loaded until it's passed to {@link #setTiles(Collection, Collection, int, int, int)}.
+     * @param   source          the tile source
+     * @param   key             the key of the tile
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    public CanvasTile createTile (@Nonnull final TileSource source, final long key)
+      {
+        return new CanvasTile(source, key);
+      }
+
+    /***********************************************************************************************************************************************************
+     * Sets the tiles on this canvas, which is resized and redrawn. New tiles are loaded.
+     * @param   tiles           all the tiles, already moved to their cells
+     * @param   newTiles        the tiles that were not on this canvas
+     * @param   columns         the number of columns
+     * @param   rows            the number of rows
+     * @param   tileSize        the size of the tiles
+     **********************************************************************************************************************************************************/
+    public void setTiles (@Nonnull final Collection<CanvasTile> tiles,
+                          @Nonnull final Collection<CanvasTile> newTiles,
+                          final int columns,
+                          final int rows,
+                          final int tileSize)
+      {
+        this.tiles.clear();
+        this.tiles.addAll(tiles);
+        this.tileSize = tileSize;
+        setWidth(columns * tileSize);
+        setHeight(rows * tileSize);
+        getGraphicsContext2D().clearRect(0, 0, getWidth(), getHeight());
+        this.tiles.forEach(this::draw);
+        newTiles.forEach(tileCache::loadTileInBackground);
+      }
+
+    /***********************************************************************************************************************************************************
+     * Draws a tile in its cell.
+     * @param   tile            the tile
+     **********************************************************************************************************************************************************/
+    private void draw (@Nonnull final CanvasTile tile)
+      {
+        final var gc = getGraphicsContext2D();
+        final double x = tile.gridColumn * tileSize;
+        final double y = tile.gridRow * tileSize;
+        gc.clearRect(x, y, tileSize, tileSize);
+
+        if (tile.image != null)
+          {
+            final var viewport = tile.viewport;
+
+            if (viewport != null)
+              {
+                gc.drawImage(tile.image, viewport.getMinX(), viewport.getMinY(), viewport.getWidth(), viewport.getHeight(), x, y, tileSize, tileSize);
+              }
+            else
+              {
+                gc.drawImage(tile.image, x, y, tileSize, tileSize);
+              }
+          }
+      }
+  }
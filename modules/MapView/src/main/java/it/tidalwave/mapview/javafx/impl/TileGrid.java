@@ -26,17 +26,23 @@
 package it.tidalwave.mapview.javafx.impl;
 
 import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.function.Consumer;
-import java.net.URI;
 import javafx.beans.property.ObjectProperty;
-import javafx.scene.Node;
+import javafx.geometry.Pos;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.StackPane;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import it.tidalwave.mapview.MapCoordinates;
 import it.tidalwave.mapview.TileSource;
+import it.tidalwave.mapview.impl.AbstractTile;
+import it.tidalwave.mapview.impl.LongObjectHashMap;
 import it.tidalwave.mapview.impl.MapViewModel;
 import it.tidalwave.mapview.impl.TileCache;
 import it.tidalwave.mapview.javafx.MapView;
@@ -77,6 +83,10 @@ public class TileGrid extends StackPane
     @Nonnull
     private final TileCache tileCache;
 
+    /** The batcher that applies images loaded in background. */
+    @Nonnull
+    private final TileImageBatcher imageBatcher = new TileImageBatcher();
+
     /** Whether this control needs to be redrawn. */
     private Dirty dirty = Dirty.NONE;
 
@@ -84,7 +94,14 @@ public class TileGrid extends StackPane
     private final Map<String, MapOverlay> overlayByName = new HashMap<>();
 
     /** The container of tiles. */
-    private final GridPane tilePane = new GridPane();
+    /* visible for testing */ final GridPane tilePane = new GridPane();
+
+    /** The canvas on which tiles are drawn, when used in place of {@link #tilePane}. */
+    @Nullable
+    /* visible for testing */ final TileCanvas tileCanvas;
+
+    /** The tiles in the grid, indexed by key; at low zoom levels the map wraps around and the same tile can be in more cells. */
+    /* visible for testing */ LongObjectHashMap<Deque<AbstractTile>> tilesByKey = new LongObjectHashMap<>();
 
     /** The container of overlays. */
     private final StackPane overlayPane = new StackPane();
@@ -95,18 +112,31 @@ public class TileGrid extends StackPane
      * @param   model       the map model
      * @param   tileSource  the tile source
      * @param   tileCache   the tile cache
+     * @param   canvasRendering whether tiles are drawn on a {@link TileCanvas} rather than being {@link Tile} nodes
      **********************************************************************************************************************************************************/
     @SuppressFBWarnings({"EI_EXPOSE_REP2", "MC_OVERRIDABLE_METHOD_CALL_IN_CONSTRUCTOR"})
     public TileGrid (@Nonnull final MapView parent,
                      @Nonnull final MapViewModel model,
                      @Nonnull final ObjectProperty<TileSource> tileSource,
-                     @Nonnull final TileCache tileCache)
+                     @Nonnull final TileCache tileCache,
+                     final boolean canvasRendering)
       {
         this.parent = parent;
         this.tileSource = tileSource;
         this.model = model;
         this.tileCache = tileCache;
-        getChildren().addAll(tilePane, overlayPane);
+        tileCanvas = canvasRendering ? new TileCanvas(tileCache, imageBatcher) : null;
+
+        if (tileCanvas != null)
+          {
+            StackPane.setAlignment(tileCanvas, Pos.TOP_LEFT);
+            getChildren().addAll(tileCanvas, overlayPane);
+          }
+        else
+          {
+            getChildren().addAll(tilePane, overlayPane);
+          }
+
         parent.layoutBoundsProperty().addListener((_1, _2, _3) -> setDirty(Dirty.GRID));
         model.setCenterAndZoom(MapCoordinates.of(0, 0), 1);
         tileSource.addListener((_1, _2, _3) -> onTileSourceChanged());
@@ -148,17 +178,21 @@ public class TileGrid extends StackPane
      **********************************************************************************************************************************************************/
     public void translate (final double deltaX, final double deltaY)
       {
-        log.trace("translate({}, {})", deltaX, deltaY);
-        final var prevTileCenter = model.tileCenter();
-        model.setCenterAndZoom(model.pointCenter().translated(-deltaX, -deltaY), model.zoom());
-        final var tileCenter = model.tileCenter();
+        if (log.isTraceEnabled()) // don't box when not needed, this is called at every drag step
+          {
+            log.trace("translate({}, {})", deltaX, deltaY);
+          }
 
-        if (!prevTileCenter.equals(tileCenter))
+        final var prevTileCenterColumn = model.tileCenterColumn();
+        final var prevTileCenterRow = model.tileCenterRow();
+        model.setCenterAndZoom(model.pointCenterX() - deltaX, model.pointCenterY() - deltaY, model.zoom());
+
+        if ((prevTileCenterColumn != model.tileCenterColumn()) || (prevTileCenterRow != model.tileCenterRow()))
           {
             createTiles();
             // no need to recreate overlays, just translate them
-            final var dX = overlayPane.getTranslateX() -(tileCenter.column - prevTileCenter.column) * tileSource.get().getTileSize();
-            final var dY = overlayPane.getTranslateY() -(tileCenter.row - prevTileCenter.row) * tileSource.get().getTileSize();
+            final var dX = overlayPane.getTranslateX() -(model.tileCenterColumn() - prevTileCenterColumn) * tileSource.get().getTileSize();
+            final var dY = overlayPane.getTranslateY() -(model.tileCenterRow() - prevTileCenterRow) * tileSource.get().getTileSize();
             log.debug("translate overlays: {}, {}", dX, dY);
             overlayPane.setTranslateX(dX);
             overlayPane.setTranslateY(dY);
@@ -251,13 +285,64 @@ public class TileGrid extends StackPane
       }
 
     /***********************************************************************************************************************************************************
-     *
+     * Populates the grid. Tiles already in the grid that are still needed are recycled and just moved to their new cell, so when the center moves by a
+     * few tiles only the newly exposed cells get new tiles. The tiles no longer needed are removed.
      **********************************************************************************************************************************************************/
     private void createTiles()
       {
         log.debug("createTiles()");
-        tilePane.getChildren().clear();
-        model.iterateOnGrid((pos, url) -> tilePane.add(createTile(url), pos.column(), pos.row(), 1, 1));
+        tileCache.setPriorityCenter(model.tileCenter());
+        final var oldTilesByKey = tilesByKey;
+        final var newTiles = new ArrayList<AbstractTile>();
+        tilesByKey = new LongObjectHashMap<>(oldTilesByKey.size());
+        model.iterateOnGrid((gridColumn, gridRow, key) ->
+          {
+            final var oldTiles = oldTilesByKey.get(key);
+            var tile = (oldTiles == null) ? null : oldTiles.poll();
+
+            if (tile == null)
+              {
+                tile = createTile(key);
+                newTiles.add(tile);
+              }
+
+            if (tile instanceof TileCanvas.CanvasTile canvasTile)
+              {
+                canvasTile.moveTo(gridColumn, gridRow);
+              }
+            else
+              {
+                GridPane.setConstraints((Tile)tile, gridColumn, gridRow, 1, 1);
+              }
+
+            var tiles = tilesByKey.get(key);
+
+            if (tiles == null)
+              {
+                tiles = new ArrayDeque<>(1);
+                tilesByKey.put(key, tiles);
+              }
+
+            tiles.add(tile);
+          });
+        final var discarded = new HashSet<AbstractTile>();
+        oldTilesByKey.forEach((key, tiles) -> discarded.addAll(tiles));
+        final var tileCount = model.columns() * model.rows();
+        log.debug("recycled {} tiles, created {}, discarded {}", tileCount - newTiles.size(), newTiles.size(), discarded.size());
+
+        if (tileCanvas != null)
+          {
+            final var tiles = new ArrayList<TileCanvas.CanvasTile>(tileCount);
+            tilesByKey.forEach((key, t) -> t.forEach(tile -> tiles.add((TileCanvas.CanvasTile)tile)));
+            tileCanvas.setTiles(tiles, newTiles.stream().map(TileCanvas.CanvasTile.class::cast).toList(),
+                                model.columns(), model.rows(), tileSource.get().getTileSize());
+          }
+        else
+          {
+            tilePane.getChildren().removeAll(discarded);
+            newTiles.forEach(tile -> tilePane.getChildren().add((Tile)tile));
+          }
+
         applyTranslate();
       }
 
@@ -276,9 +361,14 @@ public class TileGrid extends StackPane
      *
      **********************************************************************************************************************************************************/
     @Nonnull
-    private Node createTile (@Nonnull final URI uri)
+    private AbstractTile createTile (final long key)
       {
-        return new Tile(tileCache, tileSource.get(), uri, tileSource.get().getTileSize(), (int)model.zoom());
+        if (tileCanvas != null)
+          {
+            return tileCanvas.createTile(tileSource.get(), key);
+          }
+
+        return new Tile(tileCache, imageBatcher, tileSource.get(), key, tileSource.get().getTileSize());
       }
 
     /***********************************************************************************************************************************************************
@@ -286,8 +376,8 @@ public class TileGrid extends StackPane
      **********************************************************************************************************************************************************/
     private void applyTranslate()
       {
-        setTranslateX(model.gridOffset().x());
-        setTranslateY(model.gridOffset().y());
+        setTranslateX(model.gridOffsetX());
+        setTranslateY(model.gridOffsetY());
       }
 
     /***********************************************************************************************************************************************************
@@ -0,0 +1,116 @@
+/*
+ * *************************************************************************************************************************************************************
+ *
+ * MapView: a JavaFX map renderer for tile-based servers
+ * http://tidalwave.it/projects/mapview
+ *
+ * Copyright (C) 2024 - 2025 by Tidalwave s.a.s. (http://tidalwave.it)
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.  See the License for the specific language governing permissions and limitations under the License.
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * git clone https://bitbucket.org/tidalwave/mapview-src
+ * git clone https://github.com/tidalwave-it/mapview-src
+ *
+ * *************************************************************************************************************************************************************
+ */
+package it.tidalwave.mapview.javafx.impl;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import lombok.extern.slf4j.Slf4j;
+
+/***************************************************************************************************************************************************************
+ *
+ * A batcher for images loaded in background. Instead of posting a runnable for each image, images are queued and applied at each pulse, stopping when a
+ * time budget per frame is exceeded; the remaining images are applied at the next pulse. In this way bursts of tiles don't cause frame drops. The timer
+ * only runs while there are images to apply.
+ *
+ * @author  Fabrizio Giudici
+ *
+ **************************************************************************************************************************************************************/
+@Slf4j
+public class TileImageBatcher extends AnimationTimer
+  {
+    /** The maximum time spent applying images in each frame. */
+    private static final long FRAME_BUDGET = TimeUnit.MILLISECONDS.toNanos(4);
+
+    /***********************************************************************************************************************************************************
+     * An image to apply to a target.
+     **********************************************************************************************************************************************************/
+    private record Update (@Nonnull Consumer<? super Image> target, @Nullable Image image) {}
+
+    /** The images to apply. */
+    private final Queue<Update> updates = new ConcurrentLinkedQueue<>();
+
+    /** Whether the timer is running or about to be started. */
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /***********************************************************************************************************************************************************
+     * Submits an image to be applied at the next pulse. This method can be called by any thread.
+     * @param   target      what applies the image, e.g. {@link javafx.scene.image.ImageView#setImage(Image)}
+     * @param   image       the image (can be {@code null})
+     **********************************************************************************************************************************************************/
+    public void submit (@Nonnull final Consumer<? super Image> target, @Nullable final Image image)
+      {
+        updates.add(new Update(target, image));
+
+        if (running.compareAndSet(false, true))
+          {
+            if (Platform.isFxApplicationThread())
+              {
+                start();
+              }
+            else
+              {
+                Platform.runLater(this::start);
+              }
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@inheritDoc}
+     **********************************************************************************************************************************************************/
+    @Override
+    public void handle (final long now)
+      {
+        final var deadline = System.nanoTime() + FRAME_BUDGET;
+        var count = 0;
+
+        for (Update update; (System.nanoTime() < deadline) && ((update = updates.poll()) != null); count++)
+          {
+            update.target().accept(update.image());
+          }
+
+        log.trace("applied {} images", count);
+
+        if (updates.isEmpty())
+          {
+            stop();
+            running.set(false);
+
+            // an image might have been submitted after the check above, while the timer was still seen as running
+            if (!updates.isEmpty() && running.compareAndSet(false, true))
+              {
+                start();
+              }
+          }
+      }
+  }
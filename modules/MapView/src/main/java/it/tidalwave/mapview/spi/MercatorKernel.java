@@ -0,0 +1,77 @@
+/*
+ * *************************************************************************************************************************************************************
+ *
+ * MapView: a JavaFX map renderer for tile-based servers
+ * http://tidalwave.it/projects/mapview
+ *
+ * Copyright (C) 2024 - 2025 by Tidalwave s.a.s. (http://tidalwave.it)
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.  See the License for the specific language governing permissions and limitations under the License.
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * git clone https://bitbucket.org/tidalwave/mapview-src
+ * git clone https://github.com/tidalwave-it/mapview-src
+ *
+ * *************************************************************************************************************************************************************
+ */
+package it.tidalwave.mapview.spi;
+
+import jakarta.annotation.Nonnull;
+
+/***************************************************************************************************************************************************************
+ *
+ * A kernel that performs batch conversions of the {@link WGS84PseudoMercatorProjection} on a range of indices of arrays. Different implementations
+ * are available, whose results might differ by a few ULPs.
+ *
+ * @see     ScalarMercatorKernel
+ * @see     VectorMercatorKernel
+ * @author  Fabrizio Giudici
+ *
+ **************************************************************************************************************************************************************/
+interface MercatorKernel
+  {
+    /***********************************************************************************************************************************************************
+     * Converts coordinates into map points.
+     * @param   latitudes         the latitudes
+     * @param   longitudes        the longitudes
+     * @param   xs                the array that receives the x coordinates
+     * @param   ys                the array that receives the y coordinates
+     * @param   from              the first index (inclusive)
+     * @param   to                the last index (exclusive)
+     * @param   pixelPerRadians   the scale at the current zoom level
+     **********************************************************************************************************************************************************/
+    public void forward (@Nonnull double[] latitudes,
+                         @Nonnull double[] longitudes,
+                         @Nonnull double[] xs,
+                         @Nonnull double[] ys,
+                         int from,
+                         int to,
+                         double pixelPerRadians);
+
+    /***********************************************************************************************************************************************************
+     * Converts map points into coordinates.
+     * @param   xs                the x coordinates
+     * @param   ys                the y coordinates
+     * @param   latitudes         the array that receives the latitudes
+     * @param   longitudes        the array that receives the longitudes
+     * @param   from              the first index (inclusive)
+     * @param   to                the last index (exclusive)
+     * @param   radiansPerPixel   the scale at the current zoom level
+     **********************************************************************************************************************************************************/
+    public void inverse (@Nonnull double[] xs,
+                         @Nonnull double[] ys,
+                         @Nonnull double[] latitudes,
+                         @Nonnull double[] longitudes,
+                         int from,
+                         int to,
+                         double radiansPerPixel);
+  }
@@ -0,0 +1,89 @@
+/*
+ * *************************************************************************************************************************************************************
+ *
+ * MapView: a JavaFX map renderer for tile-based servers
+ * http://tidalwave.it/projects/mapview
+ *
+ * Copyright (C) 2024 - 2025 by Tidalwave s.a.s. (http://tidalwave.it)
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.  See the License for the specific language governing permissions and limitations under the License.
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * git clone https://bitbucket.org/tidalwave/mapview-src
+ * git clone https://github.com/tidalwave-it/mapview-src
+ *
+ * *************************************************************************************************************************************************************
+ */
+package it.tidalwave.mapview.spi;
+
+import jakarta.annotation.Nonnull;
+import static it.tidalwave.mapview.spi.WGS84PseudoMercatorProjection.*;
+
+/***************************************************************************************************************************************************************
+ *
+ * A {@link MercatorKernel} in plain Java code, one point at a time. It's always available.
+ *
+ * @author  Fabrizio Giudici
+ *
+ **************************************************************************************************************************************************************/
+final class ScalarMercatorKernel implements MercatorKernel
+  {
+    /** The singleton instance. */
+    static final ScalarMercatorKernel INSTANCE = new ScalarMercatorKernel();
+
+    /***********************************************************************************************************************************************************
+     * {@inheritDoc}
+     **********************************************************************************************************************************************************/
+    @Override
+    public void forward (@Nonnull final double[] latitudes,
+                         @Nonnull final double[] longitudes,
+                         @Nonnull final double[] xs,
+                         @Nonnull final double[] ys,
+                         final int from,
+                         final int to,
+                         final double pixelPerRadians)
+      {
+        for (int i = from; i < to; i++)
+          {
+            xs[i] = x(longitudes[i], pixelPerRadians);
+            ys[i] = y(latitudes[i], pixelPerRadians);
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@inheritDoc}
+     **********************************************************************************************************************************************************/
+    @Override
+    public void inverse (@Nonnull final double[] xs,
+                         @Nonnull final double[] ys,
+                         @Nonnull final double[] latitudes,
+                         @Nonnull final double[] longitudes,
+                         final int from,
+                         final int to,
+                         final double radiansPerPixel)
+      {
+        for (int i = from; i < to; i++)
+          {
+            latitudes[i] = latitude(ys[i], radiansPerPixel);
+            longitudes[i] = longitude(xs[i], radiansPerPixel);
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@inheritDoc}
+     **********************************************************************************************************************************************************/
+    @Override @Nonnull
+    public String toString()
+      {
+        return "ScalarMercatorKernel";
+      }
+  }
@@ -0,0 +1,219 @@
+/*
+ * *************************************************************************************************************************************************************
+ *
+ * MapView: a JavaFX map renderer for tile-based servers
+ * http://tidalwave.it/projects/mapview
+ *
+ * Copyright (C) 2024 - 2025 by Tidalwave s.a.s. (http://tidalwave.it)
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.  See the License for the specific language governing permissions and limitations under the License.
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * git clone https://bitbucket.org/tidalwave/mapview-src
+ * git clone https://github.com/tidalwave-it/mapview-src
+ *
+ * *************************************************************************************************************************************************************
+ */
+package it.tidalwave.mapview.spi;
+
+import jakarta.annotation.Nonnull;
+import java.util.ArrayList;
+import java.net.URI;
+import org.apiguardian.api.API;
+import static org.apiguardian.api.API.Status.EXPERIMENTAL;
+
+/***************************************************************************************************************************************************************
+ *
+ * A template of the URL of tiles, such as {@code https://{s}.tile.example.org/{z}/{x}/{y}.png}. The supported placeholders are:
+ *
+ * <ul>
+ *   <li>{@code {z}}: the zoom level</li>
+ *   <li>{@code {x}}: the column</li>
+ *   <li>{@code {y}}: the row</li>
+ *   <li>{@code {q}}: the <a href="https://learn.microsoft.com/en-us/bingmaps/articles/bing-maps-tile-system">quadkey</a></li>
+ *   <li>{@code {s}}: a subdomain, chosen among the given ones</li>
+ * </ul>
+ *
+ * The template is compiled once into segments, which are expanded without any parsing into a per-thread reusable buffer. Subdomains are assigned to
+ * tiles in rotation, so neighbouring tiles are requested to different hosts; the assignment is stable, as the URL of a tile must not change, or it would be
+ * cached more than once.
+ *
+ * @author  Fabrizio Giudici
+ * @since   1.0-ALPHA-5
+ *
+ **************************************************************************************************************************************************************/
+@API(status = EXPERIMENTAL)
+public final class UrlTemplate
+  {
+    private static final int LITERAL = 0;
+    private static final int ZOOM = 1;
+    private static final int COLUMN = 2;
+    private static final int ROW = 3;
+    private static final int QUADKEY = 4;
+    private static final int SUBDOMAIN = 5;
+
+    /** The kind of each segment. */
+    @Nonnull
+    private final int[] kinds;
+
+    /** The text of each segment, or {@code null} if it's not a {@link #LITERAL}. */
+    @Nonnull
+    private final String[] literals;
+
+    /** The subdomains. */
+    @Nonnull
+    private final String[] subdomains;
+
+    /** The template, for diagnostics. */
+    @Nonnull
+    private final String template;
+
+    /** The buffer used to expand the template. */
+    private final ThreadLocal<StringBuilder> buffers;
+
+    /***********************************************************************************************************************************************************
+     *
+     **********************************************************************************************************************************************************/
+    private UrlTemplate (@Nonnull final String template,
+                         @Nonnull final int[] kinds,
+                         @Nonnull final String[] literals,
+                         @Nonnull final String[] subdomains)
+      {
+        this.template = template;
+        this.kinds = kinds;
+        this.literals = literals;
+        this.subdomains = subdomains;
+        buffers = ThreadLocal.withInitial(() -> new StringBuilder(template.length() + 32));
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return a compiled template}.
+     * @param   template        the template
+     * @param   subdomains      the subdomains to replace {@code {s}} with
+     * @throws  IllegalArgumentException  if the template contains an unknown or unterminated placeholder, or {@code {s}} but no subdomains are given
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    public static UrlTemplate compile (@Nonnull final String template, @Nonnull final String ... subdomains)
+      {
+        final var kinds = new ArrayList<Integer>();
+        final var literals = new ArrayList<String>();
+        var start = 0;
+
+        for (int open; (open = template.indexOf('{', start)) >= 0; )
+          {
+            final var close = template.indexOf('}', open);
+
+            if (close < 0)
+              {
+                throw new IllegalArgumentException("Unterminated placeholder in " + template);
+              }
+
+            if (open > start)
+              {
+                kinds.add(LITERAL);
+                literals.add(template.substring(start, open));
+              }
+
+            final var placeholder = template.substring(open + 1, close);
+            kinds.add(switch (placeholder)
+              {
+                case "z" -> ZOOM;
+                case "x" -> COLUMN;
+                case "y" -> ROW;
+                case "q" -> QUADKEY;
+                case "s" -> SUBDOMAIN;
+                default -> throw new IllegalArgumentException("Unknown placeholder {%s} in %s".formatted(placeholder, template));
+              });
+            literals.add(null);
+            start = close + 1;
+          }
+
+        if (start < template.length())
+          {
+            kinds.add(LITERAL);
+            literals.add(template.substring(start));
+          }
+
+        if (kinds.contains(SUBDOMAIN) && (subdomains.length == 0))
+          {
+            throw new IllegalArgumentException("No subdomains for " + template);
+          }
+
+        return new UrlTemplate(template,
+                               kinds.stream().mapToInt(Integer::intValue).toArray(),
+                               literals.toArray(String[]::new),
+                               subdomains.clone());
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the URL of a tile}.
+     * @param   column          the column
+     * @param   row             the row
+     * @param   zoom            the zoom level
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    public String expand (final int column, final int row, final int zoom)
+      {
+        final var buffer = buffers.get();
+        buffer.setLength(0);
+
+        for (int i = 0; i < kinds.length; i++)
+          {
+            switch (kinds[i])
+              {
+                case LITERAL -> buffer.append(literals[i]);
+                case ZOOM -> buffer.append(zoom);
+                case COLUMN -> buffer.append(column);
+                case ROW -> buffer.append(row);
+                case QUADKEY -> appendQuadKey(buffer, column, row, zoom);
+                case SUBDOMAIN -> buffer.append(subdomains[Math.floorMod(column + row, subdomains.length)]);
+                default -> throw new IllegalStateException("Unknown segment: " + kinds[i]);
+              }
+          }
+
+        return buffer.toString();
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the URI of a tile}.
+     * @param   column          the column
+     * @param   row             the row
+     * @param   zoom            the zoom level
+     * @throws  IllegalArgumentException  if the expanded template is not a valid URI
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    public URI toUri (final int column, final int row, final int zoom)
+      {
+        return URI.create(expand(column, row, zoom));
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@inheritDoc}
+     **********************************************************************************************************************************************************/
+    @Override @Nonnull
+    public String toString()
+      {
+        return template;
+      }
+
+    /***********************************************************************************************************************************************************
+     * Appends the quadkey of a tile, which has a digit per zoom level, from the lowest, each one telling the quadrant the tile belongs to.
+     **********************************************************************************************************************************************************/
+    private static void appendQuadKey (@Nonnull final StringBuilder buffer, final int column, final int row, final int zoom)
+      {
+        for (int i = zoom; i > 0; i--)
+          {
+            final var mask = 1 << (i - 1);
+            buffer.append((char)('0' + ((column & mask) != 0 ? 1 : 0) + ((row & mask) != 0 ? 2 : 0)));
+          }
+      }
+  }
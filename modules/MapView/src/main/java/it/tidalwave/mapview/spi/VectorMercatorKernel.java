@@ -0,0 +1,127 @@
+/*
+ * *************************************************************************************************************************************************************
+ *
+ * MapView: a JavaFX map renderer for tile-based servers
+ * http://tidalwave.it/projects/mapview
+ *
+ * Copyright (C) 2024 - 2025 by Tidalwave s.a.s. (http://tidalwave.it)
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.  See the License for the specific language governing permissions and limitations under the License.
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * git clone https://bitbucket.org/tidalwave/mapview-src
+ * git clone https://github.com/tidalwave-it/mapview-src
+ *
+ * *************************************************************************************************************************************************************
+ */
+package it.tidalwave.mapview.spi;
+
+import jakarta.annotation.Nonnull;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+import static jdk.incubator.vector.VectorOperators.*;
+import static java.lang.Math.PI;
+
+/***************************************************************************************************************************************************************
+ *
+ * A {@link MercatorKernel} that uses the (incubating) Vector API, processing as many points at a time as the lanes of the preferred species of the
+ * hardware. The trailing points that don't fill a vector are delegated to {@link ScalarMercatorKernel}.
+ *
+ * This class must be loaded only when the module {@code jdk.incubator.vector} has been resolved (that is, the JVM has been launched with
+ * {@code --add-modules jdk.incubator.vector}); otherwise, it fails with a {@link LinkageError}.
+ *
+ * @author  Fabrizio Giudici
+ *
+ **************************************************************************************************************************************************************/
+final class VectorMercatorKernel implements MercatorKernel
+  {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private static final double DEGREES_TO_RADIANS = PI / 180.0;
+
+    private static final double RADIANS_TO_DEGREES = 180.0 / PI;
+
+    /***********************************************************************************************************************************************************
+     * {@inheritDoc}
+     **********************************************************************************************************************************************************/
+    @Override
+    public void forward (@Nonnull final double[] latitudes,
+                         @Nonnull final double[] longitudes,
+                         @Nonnull final double[] xs,
+                         @Nonnull final double[] ys,
+                         final int from,
+                         final int to,
+                         final double pixelPerRadians)
+      {
+        final int upperBound = from + SPECIES.loopBound(to - from);
+        int i = from;
+
+        for (; i < upperBound; i += SPECIES.length())
+          {
+            // x = (PI + toRadians(longitude)) * pixelPerRadians
+            DoubleVector.fromArray(SPECIES, longitudes, i).mul(DEGREES_TO_RADIANS).add(PI).mul(pixelPerRadians).intoArray(xs, i);
+            // y = (PI - 0.5 * log((1 + sin(latitude)) / (1 - sin(latitude)))) * pixelPerRadians
+            final var sinLat = DoubleVector.fromArray(SPECIES, latitudes, i).mul(DEGREES_TO_RADIANS).lanewise(SIN);
+            sinLat.add(1.0).div(sinLat.neg().add(1.0)).lanewise(LOG).mul(-0.5).add(PI).mul(pixelPerRadians).intoArray(ys, i);
+          }
+
+        ScalarMercatorKernel.INSTANCE.forward(latitudes, longitudes, xs, ys, i, to, pixelPerRadians);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@inheritDoc}
+     **********************************************************************************************************************************************************/
+    @Override
+    public void inverse (@Nonnull final double[] xs,
+                         @Nonnull final double[] ys,
+                         @Nonnull final double[] latitudes,
+                         @Nonnull final double[] longitudes,
+                         final int from,
+                         final int to,
+                         final double radiansPerPixel)
+      {
+        final int upperBound = from + SPECIES.loopBound(to - from);
+        int i = from;
+
+        for (; i < upperBound; i += SPECIES.length())
+          {
+            // latitude = toDegrees(asin((exp - 1) / (exp + 1))) with exp = exp(2 * (PI - y * radiansPerPixel))
+            final var exp = DoubleVector.fromArray(SPECIES, ys, i).mul(-radiansPerPixel).add(PI).mul(2.0).lanewise(EXP);
+            exp.sub(1.0).div(exp.add(1.0)).lanewise(ASIN).mul(RADIANS_TO_DEGREES).intoArray(latitudes, i);
+            // longitude = toDegrees(x * radiansPerPixel - PI), normalized in the range (-180, 180]
+            var lon = DoubleVector.fromArray(SPECIES, xs, i).mul(radiansPerPixel).sub(PI).mul(RADIANS_TO_DEGREES);
+
+            for (var mask = lon.compare(LE, -180.0); mask.anyTrue(); mask = lon.compare(LE, -180.0))
+              {
+                lon = lon.add(360.0, mask);
+              }
+
+            for (var mask = lon.compare(GT, 180.0); mask.anyTrue(); mask = lon.compare(GT, 180.0))
+              {
+                lon = lon.sub(360.0, mask);
+              }
+
+            lon.intoArray(longitudes, i);
+          }
+
+        ScalarMercatorKernel.INSTANCE.inverse(xs, ys, latitudes, longitudes, i, to, radiansPerPixel);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@inheritDoc}
+     **********************************************************************************************************************************************************/
+    @Override @Nonnull
+    public String toString()
+      {
+        return "VectorMercatorKernel(" + SPECIES + ")";
+      }
+  }
@@ -26,12 +26,15 @@
 package it.tidalwave.mapview.spi;
 
 import jakarta.annotation.Nonnull;
+import java.util.Optional;
+import java.nio.DoubleBuffer;
+import java.util.stream.IntStream;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import it.tidalwave.mapview.MapCoordinates;
 import it.tidalwave.mapview.MapPoint;
 import it.tidalwave.mapview.Projection;
 import org.apiguardian.api.API;
-import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import static org.apiguardian.api.API.Status.EXPERIMENTAL;
 import static java.lang.Math.*;
 
@@ -39,17 +42,82 @@ import static java.lang.Math.*;
  *
  * An implementation of the <a href="https://epsg.io/3857">WGS84 Pseudo Mercator Projection (EPSG:3857)</a>.
  *
+ * Batch conversions compute the constants depending on the zoom level only once; large batches are split into chunks that are processed in parallel.
+ * Batch conversions on arrays are vectorized by means of the (incubating) Vector API, when it is available: that is, when this library has been built
+ * with the {@code vector-kernel} profile and the JVM has been launched with {@code --add-modules jdk.incubator.vector}; otherwise they fall back to plain
+ * Java code. The vectorized kernel is loaded by reflection, so the module doesn't depend on the incubating one. The Vector API can be disabled by setting
+ * the system property {@value #PROP_VECTORIZED} to {@code false}. The vectorized code might give results that differ by a few ULPs from single point
+ * conversions.
+ *
  * @author  Fabrizio Giudici
  *
  **************************************************************************************************************************************************************/
-@API(status = EXPERIMENTAL)
-@RequiredArgsConstructor
+@API(status = EXPERIMENTAL) @Slf4j
 public class WGS84PseudoMercatorProjection implements Projection
   {
+    /** The system property that enables the vectorized batch conversions (if the Vector API is available). @since 1.0-ALPHA-5 */
+    public static final String PROP_VECTORIZED = "it.tidalwave.mapview.vectorized";
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    private static final String VECTOR_KERNEL_CLASS = "it.tidalwave.mapview.spi.VectorMercatorKernel";
+
     private static final double EARTH_RADIUS = 6378137;
 
+    /** The number of points from which batch conversions are processed in parallel. */
+    private static final int PARALLEL_THRESHOLD = 65_536;
+
+    /** The number of points in a chunk of a batch conversion processed in parallel. */
+    private static final int CHUNK_SIZE = 16_384;
+
+    /** The kernel for batch conversions, shared by all instances. */
+    private static final MercatorKernel DEFAULT_KERNEL = selectKernel();
+
+    /*******************************************************************************************************************************************************
+     * A conversion applied to a range of indices of a batch.
+     ******************************************************************************************************************************************************/
+    @FunctionalInterface
+    private static interface RangeTask
+      {
+        public void apply (int from, int to);
+      }
+
     private final int tileSize;
 
+    /** The kernel for batch conversions on arrays. */
+    @Nonnull
+    private final MercatorKernel kernel;
+
+    /***********************************************************************************************************************************************************
+     * Creates a new instance.
+     * @param   tileSize          the size of tiles
+     **********************************************************************************************************************************************************/
+    public WGS84PseudoMercatorProjection (final int tileSize)
+      {
+        this(tileSize, DEFAULT_KERNEL);
+      }
+
+    /***********************************************************************************************************************************************************
+     * Creates a new instance with a specific kernel for batch conversions.
+     * @param   tileSize          the size of tiles
+     * @param   kernel            the kernel
+     **********************************************************************************************************************************************************/
+    /* visible for testing */ WGS84PseudoMercatorProjection (final int tileSize, @Nonnull final MercatorKernel kernel)
+      {
+        this.tileSize = tileSize;
+        this.kernel = kernel;
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return whether batch conversions on arrays are vectorized}.
+     * @since   1.0-ALPHA-5
+     **********************************************************************************************************************************************************/
+    @API(status = EXPERIMENTAL)
+    public boolean isVectorized()
+      {
+        return kernel != ScalarMercatorKernel.INSTANCE;
+      }
+
     /***********************************************************************************************************************************************************
      * {@inheritDoc}
      **********************************************************************************************************************************************************/
@@ -57,34 +125,133 @@ public class WGS84PseudoMercatorProjection implements Projection
     public MapPoint coordinatesToMapPoint (@Nonnull final MapCoordinates coordinates, final double zoomLevel)
       {
         final double pixelPerRadians = 1.0 / radiansPerPixel(zoomLevel);
-        final double sinLat = sin(toRadians(coordinates.latitude()));
-        final double y = (PI - 0.5 * log((1 + sinLat) / (1 - sinLat))) * pixelPerRadians;
-        final double x = (PI + toRadians(coordinates.longitude())) * pixelPerRadians;
-        return MapPoint.of(x, y);
+        return MapPoint.of(x(coordinates.longitude(), pixelPerRadians), y(coordinates.latitude(), pixelPerRadians));
       }
 
     /***********************************************************************************************************************************************************
      * {@inheritDoc}
      **********************************************************************************************************************************************************/
-    @Override @Nonnull @SuppressFBWarnings("FL_FLOATS_AS_LOOP_COUNTERS")
+    @Override
+    public void coordinatesToMapPoint (final double latitude, final double longitude, final double zoomLevel, @Nonnull final double[] result)
+      {
+        final double pixelPerRadians = 1.0 / radiansPerPixel(zoomLevel);
+        result[0] = x(longitude, pixelPerRadians);
+        result[1] = y(latitude, pixelPerRadians);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@inheritDoc}
+     **********************************************************************************************************************************************************/
+    @Override @Nonnull
     public MapCoordinates mapPointToCoordinates (@Nonnull final MapPoint mapPoint, final double zoomLevel)
       {
         final double radiansPerPixel = radiansPerPixel(zoomLevel);
-        final double exp = exp(2 * (PI - mapPoint.y() * radiansPerPixel));
-        final double lat = toDegrees(asin((exp - 1) / (exp + 1)));
-        double lon = toDegrees(mapPoint.x() * radiansPerPixel - PI);
+        return MapCoordinates.of(latitude(mapPoint.y(), radiansPerPixel), longitude(mapPoint.x(), radiansPerPixel));
+      }
 
-        while (lon <= -180)
+    /***********************************************************************************************************************************************************
+     * {@inheritDoc}
+     **********************************************************************************************************************************************************/
+    @Override
+    public void mapPointToCoordinates (final double x, final double y, final double zoomLevel, @Nonnull final double[] result)
+      {
+        final double radiansPerPixel = radiansPerPixel(zoomLevel);
+        result[0] = latitude(y, radiansPerPixel);
+        result[1] = longitude(x, radiansPerPixel);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@inheritDoc}
+     **********************************************************************************************************************************************************/
+    @Override
+    public void coordinatesToMapPoints (@Nonnull final double[] latitudes,
+                                        @Nonnull final double[] longitudes,
+                                        final double zoomLevel,
+                                        @Nonnull final double[] xs,
+                                        @Nonnull final double[] ys)
+      {
+        final var length = checkLengths(latitudes.length, longitudes.length, xs.length, ys.length);
+        final double pixelPerRadians = 1.0 / radiansPerPixel(zoomLevel);
+        forEachChunk(length, (from, to) -> kernel.forward(latitudes, longitudes, xs, ys, from, to, pixelPerRadians));
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@inheritDoc}
+     **********************************************************************************************************************************************************/
+    @Override
+    public void coordinatesToMapPoints (@Nonnull final DoubleBuffer latitudes,
+                                        @Nonnull final DoubleBuffer longitudes,
+                                        final double zoomLevel,
+                                        @Nonnull final DoubleBuffer xs,
+                                        @Nonnull final DoubleBuffer ys)
+      {
+        final var length = checkLengths(latitudes.remaining(), longitudes.remaining(), xs.remaining(), ys.remaining());
+        final double pixelPerRadians = 1.0 / radiansPerPixel(zoomLevel);
+        final var latitudesBase = latitudes.position();
+        final var longitudesBase = longitudes.position();
+        final var xsBase = xs.position();
+        final var ysBase = ys.position();
+        forEachChunk(length, (from, to) ->
           {
-            lon += 360;
-          }
+            final var chunkLatitudes = latitudes.duplicate(); // buffers are not thread-safe, each chunk gets its own view
+            final var chunkLongitudes = longitudes.duplicate();
+            final var chunkXs = xs.duplicate();
+            final var chunkYs = ys.duplicate();
 
-        while (lon > 180)
+            for (int i = from; i < to; i++)
+              {
+                chunkXs.put(xsBase + i, x(chunkLongitudes.get(longitudesBase + i), pixelPerRadians));
+                chunkYs.put(ysBase + i, y(chunkLatitudes.get(latitudesBase + i), pixelPerRadians));
+              }
+          });
+        advance(length, latitudes, longitudes, xs, ys);
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@inheritDoc}
+     **********************************************************************************************************************************************************/
+    @Override
+    public void mapPointsToCoordinates (@Nonnull final double[] xs,
+                                        @Nonnull final double[] ys,
+                                        final double zoomLevel,
+                                        @Nonnull final double[] latitudes,
+                                        @Nonnull final double[] longitudes)
+      {
+        final var length = checkLengths(xs.length, ys.length, latitudes.length, longitudes.length);
+        final double radiansPerPixel = radiansPerPixel(zoomLevel);
+        forEachChunk(length, (from, to) -> kernel.inverse(xs, ys, latitudes, longitudes, from, to, radiansPerPixel));
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@inheritDoc}
+     **********************************************************************************************************************************************************/
+    @Override
+    public void mapPointsToCoordinates (@Nonnull final DoubleBuffer xs,
+                                        @Nonnull final DoubleBuffer ys,
+                                        final double zoomLevel,
+                                        @Nonnull final DoubleBuffer latitudes,
+                                        @Nonnull final DoubleBuffer longitudes)
+      {
+        final var length = checkLengths(xs.remaining(), ys.remaining(), latitudes.remaining(), longitudes.remaining());
+        final double radiansPerPixel = radiansPerPixel(zoomLevel);
+        final var xsBase = xs.position();
+        final var ysBase = ys.position();
+        final var latitudesBase = latitudes.position();
+        final var longitudesBase = longitudes.position();
+        forEachChunk(length, (from, to) ->
           {
-            lon -= 360;
-          }
+            final var chunkXs = xs.duplicate(); // buffers are not thread-safe, each chunk gets its own view
+            final var chunkYs = ys.duplicate();
+            final var chunkLatitudes = latitudes.duplicate();
+            final var chunkLongitudes = longitudes.duplicate();
 
-        return MapCoordinates.of(lat, lon);
+            for (int i = from; i < to; i++)
+              {
+                chunkLatitudes.put(latitudesBase + i, latitude(chunkYs.get(ysBase + i), radiansPerPixel));
+                chunkLongitudes.put(longitudesBase + i, longitude(chunkXs.get(xsBase + i), radiansPerPixel));
+              }
+          });
+        advance(length, xs, ys, latitudes, longitudes);
       }
 
     /***********************************************************************************************************************************************************
@@ -104,4 +271,153 @@ public class WGS84PseudoMercatorProjection implements Projection
       {
         return 2.0 * PI / (pow(2, zoomLevel) * tileSize);
       }
+
+    /***********************************************************************************************************************************************************
+     * {@return the x map coordinate of a longitude}.
+     * @param   longitude         the longitude
+     * @param   pixelPerRadians   the scale
+     **********************************************************************************************************************************************************/
+    /* visible for kernels */ static double x (final double longitude, final double pixelPerRadians)
+      {
+        return (PI + toRadians(longitude)) * pixelPerRadians;
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the y map coordinate of a latitude}.
+     * @param   latitude          the latitude
+     * @param   pixelPerRadians   the scale
+     **********************************************************************************************************************************************************/
+    /* visible for kernels */ static double y (final double latitude, final double pixelPerRadians)
+      {
+        final double sinLat = sin(toRadians(latitude));
+        return (PI - 0.5 * log((1 + sinLat) / (1 - sinLat))) * pixelPerRadians;
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the latitude of a y map coordinate}.
+     * @param   y                 the y map coordinate
+     * @param   radiansPerPixel   the scale
+     **********************************************************************************************************************************************************/
+    /* visible for kernels */ static double latitude (final double y, final double radiansPerPixel)
+      {
+        final double exp = exp(2 * (PI - y * radiansPerPixel));
+        return toDegrees(asin((exp - 1) / (exp + 1)));
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the longitude of a x map coordinate}, normalized in the range (-180, 180].
+     * @param   x                 the x map coordinate
+     * @param   radiansPerPixel   the scale
+     **********************************************************************************************************************************************************/
+    @SuppressFBWarnings("FL_FLOATS_AS_LOOP_COUNTERS")
+    /* visible for kernels */ static double longitude (final double x, final double radiansPerPixel)
+      {
+        double lon = toDegrees(x * radiansPerPixel - PI);
+
+        while (lon <= -180)
+          {
+            lon += 360;
+          }
+
+        while (lon > 180)
+          {
+            lon -= 360;
+          }
+
+        return lon;
+      }
+
+    /***********************************************************************************************************************************************************
+     * Applies a task to all the indices of a batch; large batches are split into chunks processed in parallel.
+     * @param   length            the size of the batch
+     * @param   task              the task
+     **********************************************************************************************************************************************************/
+    private static void forEachChunk (final int length, @Nonnull final RangeTask task)
+      {
+        if (length < PARALLEL_THRESHOLD)
+          {
+            task.apply(0, length);
+          }
+        else
+          {
+            final var chunks = (length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            IntStream.range(0, chunks).parallel().forEach(chunk -> task.apply(chunk * CHUNK_SIZE, min(length, (chunk + 1) * CHUNK_SIZE)));
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the common length of the arrays or buffers of a batch conversion}. It's the same check as the default methods of {@link Projection},
+     * whose helper being private can't be shared.
+     * @param   length1           the length of the first input
+     * @param   length2           the length of the second input
+     * @param   length3           the length of the first output
+     * @param   length4           the length of the second output
+     * @throws  IllegalArgumentException if the lengths differ
+     **********************************************************************************************************************************************************/
+    private static int checkLengths (final int length1, final int length2, final int length3, final int length4)
+      {
+        if ((length1 != length2) || (length1 != length3) || (length1 != length4))
+          {
+            throw new IllegalArgumentException(String.format("Mismatched lengths: %d, %d, %d, %d", length1, length2, length3, length4));
+          }
+
+        return length1;
+      }
+
+    /***********************************************************************************************************************************************************
+     * Advances the position of buffers after a batch conversion.
+     * @param   length            the size of the batch
+     * @param   buffers           the buffers
+     **********************************************************************************************************************************************************/
+    private static void advance (final int length, @Nonnull final DoubleBuffer ... buffers)
+      {
+        for (final var buffer : buffers)
+          {
+            buffer.position(buffer.position() + length);
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the vectorized kernel}, if it has been compiled and the Vector API is available. Since this module doesn't declare a dependency on the
+     * incubating module, it's added at runtime to the modules read by this one.
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    /* visible for testing */ static Optional<MercatorKernel> vectorKernel()
+      {
+        final var vectorModule = ModuleLayer.boot().findModule(VECTOR_MODULE);
+
+        if (vectorModule.isEmpty())
+          {
+            return Optional.empty();
+          }
+
+        try
+          {
+            WGS84PseudoMercatorProjection.class.getModule().addReads(vectorModule.get());
+            final var kernelClass = Class.forName(VECTOR_KERNEL_CLASS).asSubclass(MercatorKernel.class);
+            return Optional.of(kernelClass.getDeclaredConstructor().newInstance());
+          }
+        catch (ClassNotFoundException e)
+          {
+            log.debug("The vectorized kernel has not been compiled");
+            return Optional.empty();
+          }
+        catch (ReflectiveOperationException | LinkageError e)
+          {
+            log.warn("Cannot use the Vector API: {}", e.toString());
+            return Optional.empty();
+          }
+      }
+
+    /***********************************************************************************************************************************************************
+     * {@return the best available kernel}, honouring the system property {@value #PROP_VECTORIZED}.
+     **********************************************************************************************************************************************************/
+    @Nonnull
+    private static MercatorKernel selectKernel()
+      {
+        final var vectorized = Boolean.parseBoolean(System.getProperty(PROP_VECTORIZED, "true"));
+        final var kernel = vectorized ? vectorKernel().orElse(ScalarMercatorKernel.INSTANCE) : ScalarMercatorKernel.INSTANCE;
+        log.info("Kernel for batch projections: {}", kernel);
+        return kernel;
+      }
   }
@@ -0,0 +1,78 @@
+/*
+ * *************************************************************************************************************************************************************
+ *
+ * MapView: a JavaFX map renderer for tile-based servers
+ * http://tidalwave.it/projects/mapview
+ *
+ * Copyright (C) 2024 - 2025 by Tidalwave s.a.s. (http://tidalwave.it)
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.  See the License for the specific language governing permissions and limitations under the License.
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * git clone https://bitbucket.org/tidalwave/mapview-src
+ * git clone https://github.com/tidalwave-it/mapview-src
+ *
+ * *************************************************************************************************************************************************************
+ */
+package it.tidalwave.mapview;
+
+import java.net.URI;
+import org.testng.annotations.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/***************************************************************************************************************************************************************
+ *
+ * @author  Fabrizio Giudici
+ *
+ **************************************************************************************************************************************************************/
+public class OpenStreetMapTileSourceTest
+  {
+    /** A subclass written before 1.0-ALPHA-5. */
+    static class LegacyTileSource extends OpenStreetMapTileSource
+      {
+        LegacyTileSource()
+          {
+            super(18, "https://tiles.example.org/%d/%d/%d.png", "Legacy", "Legacy");
+          }
+
+        String legacyTileUri (final int column, final int row, final int zoom)
+          {
+            return pattern.formatted(zoom, column, row);
+          }
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void must_produce_tile_uris_from_the_default_pattern()
+      {
+        // given
+        final var underTest = new OpenStreetMapTileSource();
+        // when
+        final var actual = underTest.getTileUri(3, 5, 4);
+        // then
+        assertThat(actual).isEqualTo(URI.create("https://tile.openstreetmap.org/4/3/5.png"));
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void legacy_subclass_must_keep_its_pattern_as_passed()
+      {
+        // given
+        final var underTest = new LegacyTileSource();
+        // when
+        final var actual = underTest.getTileUri(3, 5, 4);
+        // then
+        assertThat(actual).isEqualTo(URI.create("https://tiles.example.org/4/3/5.png"));
+        assertThat(underTest.pattern).isEqualTo("https://tiles.example.org/%d/%d/%d.png");
+        assertThat(underTest.legacyTileUri(3, 5, 4)).isEqualTo(actual.toString());
+      }
+  }
@@ -0,0 +1,142 @@
+/*
+ * *************************************************************************************************************************************************************
+ *
+ * MapView: a JavaFX map renderer for tile-based servers
+ * http://tidalwave.it/projects/mapview
+ *
+ * Copyright (C) 2024 - 2025 by Tidalwave s.a.s. (http://tidalwave.it)
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.  See the License for the specific language governing permissions and limitations under the License.
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * git clone https://bitbucket.org/tidalwave/mapview-src
+ * git clone https://github.com/tidalwave-it/mapview-src
+ *
+ * *************************************************************************************************************************************************************
+ */
+package it.tidalwave.mapview.impl;
+
+import jakarta.annotation.Nonnull;
+import java.time.Instant;
+import java.util.Map;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.testng.annotations.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/***************************************************************************************************************************************************************
+ *
+ * @author  Fabrizio Giudici
+ *
+ **************************************************************************************************************************************************************/
+public class DiskCacheIndexTest
+  {
+    private static final Path CACHE_FOLDER = Path.of("target/index-cache");
+
+    private static final Path TILE_PATH = CACHE_FOLDER.resolve("Source/00/01/localhost/1/2/3.png");
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void tiles_in_the_cache_folder_must_be_indexed_and_other_files_ignored()
+            throws IOException, InterruptedException
+      {
+        // given
+        Files.createDirectories(TILE_PATH.getParent());
+        Files.writeString(TILE_PATH, "tile");
+        Files.writeString(TileMetadata.sidecarOf(TILE_PATH), "metadata");
+        Files.writeString(TILE_PATH.resolveSibling("4.png.123" + TileCache.TEMP_SUFFIX), "partial tile");
+        // when
+        final var underTest = new DiskCacheIndex(CACHE_FOLDER);
+        // then
+        waitForCompletion(underTest);
+        assertThat(underTest.entries).containsOnlyKeys(TILE_PATH);
+        assertThat(underTest.contains(TILE_PATH)).isTrue();
+        assertThat(underTest.getFolders()).containsExactly(CACHE_FOLDER.resolve("Source"));
+        assertThat(underTest.getBytes(CACHE_FOLDER.resolve("Source"))).isEqualTo(4);
+        assertThat(underTest.getTileCount(CACHE_FOLDER.resolve("Source"))).isEqualTo(1);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void index_must_be_kept_up_to_date()
+            throws InterruptedException
+      {
+        // given
+        final var cacheFolder = Path.of("target/does-not-exist");
+        final var underTest = new DiskCacheIndex(cacheFolder);
+        waitForCompletion(underTest);
+        final var folder = cacheFolder.resolve("Source");
+        final var path = folder.resolve("tile.png");
+        // when
+        underTest.added(path, 100);
+        // then
+        assertThat(underTest.contains(path)).isTrue();
+        assertThat(underTest.getBytes(folder)).isEqualTo(100);
+        assertThat(underTest.getTileCount(folder)).isEqualTo(1);
+        // when
+        underTest.added(path, 150);
+        // then
+        assertThat(underTest.getBytes(folder)).isEqualTo(150);
+        assertThat(underTest.getTileCount(folder)).isEqualTo(1);
+        // when
+        underTest.removed(path);
+        // then
+        assertThat(underTest.contains(path)).isFalse();
+        assertThat(underTest.getBytes(folder)).isZero();
+        assertThat(underTest.getTileCount(folder)).isZero();
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void index_must_be_saved_when_disposed_and_loaded_at_next_startup()
+            throws IOException, InterruptedException
+      {
+        // given
+        final var cacheFolder = Files.createTempDirectory(Files.createDirectories(Path.of("target")), "index-cache-");
+        final var tilePath = cacheFolder.resolve("Source/00/01/localhost/1/2/3.png");
+        final var indexFile = cacheFolder.resolve(DiskCacheIndex.INDEX_FILE);
+        Files.createDirectories(tilePath.getParent());
+        Files.writeString(tilePath, "tile");
+        final var expiry = Instant.parse("2025-01-01T00:00:00Z");
+        final var previous = new DiskCacheIndex(cacheFolder);
+        waitForCompletion(previous);
+        previous.recordAccess(tilePath);
+        previous.setExpiry(tilePath, expiry);
+        final var entry = previous.entries.get(tilePath);
+        // when
+        previous.dispose();
+        // then
+        assertThat(indexFile).exists();
+        // given
+        Files.delete(tilePath); // so it can be indexed only by loading the saved index
+        // when
+        final var underTest = new DiskCacheIndex(cacheFolder);
+        // then
+        waitForCompletion(underTest);
+        assertThat(underTest.entries).containsExactly(Map.entry(tilePath, entry));
+        assertThat(entry.expiry()).isEqualTo(expiry);
+        assertThat(indexFile).doesNotExist();
+      }
+
+    /**********************************************************************************************************************************************************/
+    private static void waitForCompletion (@Nonnull final DiskCacheIndex underTest)
+            throws InterruptedException
+      {
+        for (int i = 0; !underTest.isComplete() && (i < 100); i++)
+          {
+            Thread.sleep(20);
+          }
+
+        assertThat(underTest.isComplete()).isTrue();
+      }
+  }
@@ -0,0 +1,183 @@
+/*
+ * *************************************************************************************************************************************************************
+ *
+ * MapView: a JavaFX map renderer for tile-based servers
+ * http://tidalwave.it/projects/mapview
+ *
+ * Copyright (C) 2024 - 2025 by Tidalwave s.a.s. (http://tidalwave.it)
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.  See the License for the specific language governing permissions and limitations under the License.
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * git clone https://bitbucket.org/tidalwave/mapview-src
+ * git clone https://github.com/tidalwave-it/mapview-src
+ *
+ * *************************************************************************************************************************************************************
+ */
+package it.tidalwave.mapview.impl;
+
+import jakarta.annotation.Nonnull;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/***************************************************************************************************************************************************************
+ *
+ * @author  Fabrizio Giudici
+ *
+ **************************************************************************************************************************************************************/
+public class DiskCacheJanitorTest
+  {
+    private static final Path CACHE_FOLDER = Path.of("target/janitor-cache");
+
+    private static final Path SOURCE_FOLDER = CACHE_FOLDER.resolve("Source/00/01/localhost");
+
+    private DiskCacheIndex index;
+
+    private DiskCacheJanitor underTest;
+
+    /**********************************************************************************************************************************************************/
+    @BeforeMethod
+    public void setup()
+            throws IOException
+      {
+        if (Files.exists(CACHE_FOLDER))
+          {
+            try (final var files = Files.walk(CACHE_FOLDER))
+              {
+                for (final var file : files.sorted(Comparator.reverseOrder()).toList())
+                  {
+                    Files.delete(file);
+                  }
+              }
+          }
+
+        Files.createDirectories(SOURCE_FOLDER);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @AfterMethod
+    public void tearDown()
+      {
+        underTest.dispose();
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void least_recently_used_tiles_must_be_evicted_when_the_tile_quota_is_exceeded()
+            throws IOException, InterruptedException
+      {
+        // given
+        final var oldest = createTile("1.png", 100, Duration.ofHours(3));
+        final var older = createTile("2.png", 100, Duration.ofHours(2));
+        final var recent = createTile("3.png", 100, Duration.ofHours(1));
+        new TileMetadata(null, null, Instant.now()).store(oldest);
+        createJanitor(Long.MAX_VALUE, 2);
+        // when
+        underTest.sweep();
+        // then
+        assertThat(oldest).doesNotExist();
+        assertThat(TileMetadata.sidecarOf(oldest)).doesNotExist();
+        assertThat(older).exists();
+        assertThat(recent).exists();
+        assertThat(index.entries).containsOnlyKeys(older, recent);
+        assertThat(index.getBytes(CACHE_FOLDER.resolve("Source"))).isEqualTo(200);
+        assertThat(index.getTileCount(CACHE_FOLDER.resolve("Source"))).isEqualTo(2);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void access_time_must_take_precedence_over_modified_time()
+            throws IOException, InterruptedException
+      {
+        // given
+        final var oldest = createTile("1.png", 100, Duration.ofHours(3));
+        final var older = createTile("2.png", 100, Duration.ofHours(2));
+        final var recent = createTile("3.png", 100, Duration.ofHours(1));
+        createJanitor(250, Integer.MAX_VALUE);
+        index.entries.computeIfPresent(oldest, (path, entry) -> entry.withLastAccess(System.currentTimeMillis() - Duration.ofMinutes(30).toMillis()));
+        // when
+        underTest.sweep();
+        // then
+        assertThat(oldest).exists();
+        assertThat(older).doesNotExist();
+        assertThat(recent).exists();
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void recently_accessed_tiles_must_never_be_evicted()
+            throws IOException, InterruptedException
+      {
+        // given
+        final var tile1 = createTile("1.png", 100, Duration.ofHours(1));
+        final var tile2 = createTile("2.png", 100, Duration.ofHours(1));
+        createJanitor(Long.MAX_VALUE, 1);
+        index.recordAccess(tile1);
+        index.recordAccess(tile2);
+        // when
+        underTest.sweep();
+        // then
+        assertThat(tile1).exists();
+        assertThat(tile2).exists();
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void downloads_in_progress_must_be_ignored()
+            throws IOException, InterruptedException
+      {
+        // given
+        final var tile = createTile("1.png", 100, Duration.ofHours(2));
+        final var temp = createTile("2.png.123" + TileCache.TEMP_SUFFIX, 100, Duration.ofHours(3));
+        createJanitor(Long.MAX_VALUE, 1);
+        // when
+        underTest.sweep();
+        // then
+        assertThat(tile).exists();
+        assertThat(temp).exists();
+      }
+
+    /**********************************************************************************************************************************************************/
+    private void createJanitor (final long maxBytes, final int maxFiles)
+            throws InterruptedException
+      {
+        index = new DiskCacheIndex(CACHE_FOLDER);
+
+        for (int i = 0; !index.isComplete() && (i < 100); i++)
+          {
+            Thread.sleep(20);
+          }
+
+        assertThat(index.isComplete()).isTrue();
+        underTest = new DiskCacheJanitor(index, maxBytes, maxFiles);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Nonnull
+    private static Path createTile (@Nonnull final String name, final int size, @Nonnull final Duration age)
+            throws IOException
+      {
+        final var path = SOURCE_FOLDER.resolve(name);
+        Files.write(path, new byte[size]);
+        Files.setLastModifiedTime(path, FileTime.from(Instant.now().minus(age)));
+        return path;
+      }
+  }
@@ -0,0 +1,124 @@
+/*
+ * *************************************************************************************************************************************************************
+ *
+ * MapView: a JavaFX map renderer for tile-based servers
+ * http://tidalwave.it/projects/mapview
+ *
+ * Copyright (C) 2024 - 2025 by Tidalwave s.a.s. (http://tidalwave.it)
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.  See the License for the specific language governing permissions and limitations under the License.
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * git clone https://bitbucket.org/tidalwave/mapview-src
+ * git clone https://github.com/tidalwave-it/mapview-src
+ *
+ * *************************************************************************************************************************************************************
+ */
+package it.tidalwave.mapview.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/***************************************************************************************************************************************************************
+ *
+ * @author  Fabrizio Giudici
+ *
+ **************************************************************************************************************************************************************/
+public class LongObjectHashMapTest
+  {
+    private LongObjectHashMap<String> underTest;
+
+    /**********************************************************************************************************************************************************/
+    @BeforeMethod
+    public void setup()
+      {
+        underTest = new LongObjectHashMap<>();
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void mappings_must_be_put_and_removed()
+      {
+        // when
+        final var previous1 = underTest.put(1, "one");
+        final var previous2 = underTest.put(1, "uno");
+        final var absent = underTest.putIfAbsent(1, "eins");
+        underTest.put(2, "two");
+        // then
+        assertThat(previous1).isNull();
+        assertThat(previous2).isEqualTo("one");
+        assertThat(absent).isEqualTo("uno");
+        assertThat(underTest.get(1)).isEqualTo("uno");
+        assertThat(underTest.size()).isEqualTo(2);
+        // when
+        final var notRemoved = underTest.remove(2, "deux");
+        final var removed = underTest.remove(2);
+        // then
+        assertThat(notRemoved).isFalse();
+        assertThat(removed).isEqualTo("two");
+        assertThat(underTest.containsKey(2)).isFalse();
+        assertThat(underTest.size()).isEqualTo(1);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void random_operations_must_behave_as_in_a_hash_map()
+      {
+        // given
+        final var random = new Random(42);
+        final Map<Long, String> expected = new HashMap<>();
+
+        for (int i = 0; i < 20_000; i++)
+          {
+            // keys are shifted so they collide in the lowest bits
+            final long key = (long)random.nextInt(500) << 25;
+            // when
+            switch (random.nextInt(4))
+              {
+                case 0, 1 -> assertThat(underTest.put(key, "v" + i)).isEqualTo(expected.put(key, "v" + i));
+                case 2 -> assertThat(underTest.remove(key)).isEqualTo(expected.remove(key));
+                default -> assertThat(underTest.get(key)).isEqualTo(expected.get(key));
+              }
+            // then
+            assertThat(underTest.size()).isEqualTo(expected.size());
+          }
+
+        final Map<Long, String> actual = new HashMap<>();
+        underTest.forEach(actual::put);
+        assertThat(actual).isEqualTo(expected);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void removeIf_must_remove_all_the_matching_mappings()
+      {
+        // given
+        for (long key = 0; key < 1000; key++)
+          {
+            underTest.put(key, (key % 3 == 0) ? "remove" : "keep");
+          }
+        // when
+        final var removed = underTest.removeIf((key, value) -> value.equals("remove"));
+        // then
+        assertThat(removed).isTrue();
+        assertThat(underTest.size()).isEqualTo(666);
+
+        for (long key = 0; key < 1000; key++)
+          {
+            assertThat(underTest.containsKey(key)).isEqualTo(key % 3 != 0);
+          }
+      }
+  }
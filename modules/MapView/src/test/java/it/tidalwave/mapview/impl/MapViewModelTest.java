@@ -26,6 +26,7 @@
 package it.tidalwave.mapview.impl;
 
 import jakarta.annotation.Nonnull;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import it.tidalwave.mapview.MapArea;
 import it.tidalwave.mapview.MapCoordinates;
@@ -38,6 +39,7 @@ import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 import static it.tidalwave.mapview.impl.Distances.distance;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assumptions.assumeThat;
 
 @Slf4j
 public class MapViewModelTest
@@ -233,6 +235,45 @@ public class MapViewModelTest
           };
       }
 
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void primitive_methods_must_not_allocate()
+      {
+        // given
+        final var threadMXBean = ManagementFactory.getThreadMXBean();
+        assumeThat(threadMXBean).isInstanceOf(com.sun.management.ThreadMXBean.class);
+        final var allocationMXBean = (com.sun.management.ThreadMXBean)threadMXBean;
+        assumeThat(allocationMXBean.isThreadAllocatedMemorySupported()).isTrue();
+        allocationMXBean.setThreadAllocatedMemoryEnabled(true);
+        underTest.updateGridSize(800, 600);
+        underTest.setCenterAndZoom(MapCoordinates.of(44.4, 8.95), 18);
+        final var result = new double[2];
+        final var checksum = new long[1];
+        final MapViewModel.GridConsumer consumer = (gridColumn, gridRow, key) -> checksum[0] += gridColumn + gridRow + key;
+        final var iterations = 10_000;
+        simulateInteraction(iterations, result, consumer); // warm up
+        // when
+        final var before = allocationMXBean.getCurrentThreadAllocatedBytes();
+        simulateInteraction(iterations, result, consumer);
+        final var allocated = allocationMXBean.getCurrentThreadAllocatedBytes() - before;
+        // then
+        log.info("Allocated {} bytes in {} iterations (checksum {})", allocated, iterations, checksum[0]);
+        assertThat(allocated).isLessThan(iterations); // i.e. less than a byte per iteration, the MXBean itself might account a few bytes
+      }
+
+    /**********************************************************************************************************************************************************/
+    private void simulateInteraction (final int iterations, @Nonnull final double[] result, @Nonnull final MapViewModel.GridConsumer consumer)
+      {
+        for (int i = 0; i < iterations; i++)
+          {
+            final var delta = (i % 2 == 0) ? 7 : -5; // a drag wandering across tile boundaries
+            underTest.setCenterAndZoom(underTest.pointCenterX() + delta, underTest.pointCenterY() - delta, underTest.zoom());
+            underTest.mapViewPointToCoordinates(i % 800, i % 600, result);
+            underTest.coordinatesToMapViewPoint(result[0], result[1], result);
+            underTest.iterateOnGrid(consumer);
+          }
+      }
+
     /**********************************************************************************************************************************************************/
     @Test(dataProvider = "areas")
     public void test_computeFittingZoom (@Nonnull final MapArea area, final int mapViewWidth, final int mapViewHeight, final int fitZoom)
@@ -0,0 +1,128 @@
+/*
+ * *************************************************************************************************************************************************************
+ *
+ * MapView: a JavaFX map renderer for tile-based servers
+ * http://tidalwave.it/projects/mapview
+ *
+ * Copyright (C) 2024 - 2025 by Tidalwave s.a.s. (http://tidalwave.it)
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.  See the License for the specific language governing permissions and limitations under the License.
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * git clone https://bitbucket.org/tidalwave/mapview-src
+ * git clone https://github.com/tidalwave-it/mapview-src
+ *
+ * *************************************************************************************************************************************************************
+ */
+package it.tidalwave.mapview.impl;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/***************************************************************************************************************************************************************
+ *
+ * @author  Fabrizio Giudici
+ *
+ **************************************************************************************************************************************************************/
+public class MemoryImageCacheTest
+  {
+    private static final long KEY_1 = TileKey.of(0, 1, 0, 0);
+
+    private static final long KEY_2 = TileKey.of(0, 1, 0, 1);
+
+    private static final long KEY_3 = TileKey.of(0, 1, 1, 0);
+
+    private MemoryImageCache underTest;
+
+    /**********************************************************************************************************************************************************/
+    @BeforeMethod
+    public void setup()
+      {
+        underTest = new MemoryImageCache(300);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void least_recently_used_images_must_be_evicted_when_the_budget_is_exceeded()
+      {
+        // given
+        underTest.put(KEY_1, "image 1", 100);
+        underTest.put(KEY_2, "image 2", 100);
+        underTest.get(KEY_1);
+        // when
+        underTest.put(KEY_3, "image 3", 150);
+        // then
+        assertThat(underTest.keys()).containsOnly(KEY_1, KEY_3);
+        final var stats = underTest.getStats();
+        assertThat(stats.evictionCount()).isEqualTo(1);
+        assertThat(stats.weight()).isEqualTo(250);
+        assertThat(stats.size()).isEqualTo(2);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void replacing_an_image_must_update_the_weight()
+      {
+        // given
+        underTest.put(KEY_1, "image 1", 100);
+        // when
+        underTest.put(KEY_1, "image 1 bis", 200);
+        // then
+        assertThat(underTest.get(KEY_1)).hasValue("image 1 bis");
+        assertThat(underTest.getStats().weight()).isEqualTo(200);
+        assertThat(underTest.getStats().evictionCount()).isZero();
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void images_heavier_than_the_budget_must_not_be_cached()
+      {
+        // given
+        underTest.put(KEY_1, "image 1", 100);
+        // when
+        underTest.put(KEY_2, "image 2", 301);
+        // then
+        assertThat(underTest.keys()).containsOnly(KEY_1);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void hits_and_misses_must_be_counted()
+      {
+        // given
+        underTest.put(KEY_1, "image 1", 100);
+        // when
+        underTest.get(KEY_1);
+        underTest.get(KEY_1);
+        underTest.get(KEY_2);
+        // then
+        assertThat(underTest.getStats().hitCount()).isEqualTo(2);
+        assertThat(underTest.getStats().missCount()).isEqualTo(1);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void peeks_must_not_be_counted()
+      {
+        // given
+        underTest.put(KEY_1, "image 1", 100);
+        // when
+        final var hit = underTest.peek(KEY_1);
+        final var miss = underTest.peek(KEY_2);
+        // then
+        assertThat(hit).hasValue("image 1");
+        assertThat(miss).isEmpty();
+        assertThat(underTest.getStats().hitCount()).isZero();
+        assertThat(underTest.getStats().missCount()).isZero();
+      }
+  }
@@ -0,0 +1,123 @@
+/*
+ * *************************************************************************************************************************************************************
+ *
+ * MapView: a JavaFX map renderer for tile-based servers
+ * http://tidalwave.it/projects/mapview
+ *
+ * Copyright (C) 2024 - 2025 by Tidalwave s.a.s. (http://tidalwave.it)
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.  See the License for the specific language governing permissions and limitations under the License.
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * git clone https://bitbucket.org/tidalwave/mapview-src
+ * git clone https://github.com/tidalwave-it/mapview-src
+ *
+ * *************************************************************************************************************************************************************
+ */
+package it.tidalwave.mapview.impl;
+
+import java.util.concurrent.TimeUnit;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/***************************************************************************************************************************************************************
+ *
+ * @author  Fabrizio Giudici
+ *
+ **************************************************************************************************************************************************************/
+public class RateLimiterTest
+  {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private RateLimiter underTest;
+
+    /**********************************************************************************************************************************************************/
+    @BeforeMethod
+    public void setup()
+      {
+        underTest = new RateLimiter();
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void bucket_must_allow_a_burst_up_to_its_capacity_and_then_ask_to_wait()
+      {
+        // given
+        final var bucket = new RateLimiter.Bucket();
+        // when
+        for (int i = 0; i < 4; i++)
+          {
+            assertThat(bucket.tryAcquire(4, 0)).isZero();
+          }
+        // then
+        assertThat(bucket.tryAcquire(4, 0)).isEqualTo(SECOND / 4);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void bucket_must_be_refilled_at_the_given_rate()
+      {
+        // given
+        final var bucket = new RateLimiter.Bucket();
+        bucket.tryAcquire(2, 0);
+        bucket.tryAcquire(2, 0);
+        // when
+        final var early = bucket.tryAcquire(2, SECOND / 4);
+        final var onTime = bucket.tryAcquire(2, SECOND / 2);
+        // then
+        assertThat(early).isEqualTo(SECOND / 4);
+        assertThat(onTime).isZero();
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void slow_rate_must_allow_one_request_at_a_time()
+      {
+        // given
+        final var bucket = new RateLimiter.Bucket();
+        // when
+        final var first = bucket.tryAcquire(0.5, 0);
+        final var second = bucket.tryAcquire(0.5, 0);
+        // then
+        assertThat(first).isZero();
+        assertThat(second).isEqualTo(2 * SECOND);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void hosts_must_have_separate_buckets()
+      {
+        // when
+        final var first = underTest.tryAcquire("a.tile.example.org", 1);
+        final var second = underTest.tryAcquire("b.tile.example.org", 1);
+        final var third = underTest.tryAcquire("a.tile.example.org", 1);
+        // then
+        assertThat(first).isZero();
+        assertThat(second).isZero();
+        assertThat(third).isPositive();
+        assertThat(underTest.bucketsByHost).containsOnlyKeys("a.tile.example.org", "b.tile.example.org");
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void infinite_rate_must_never_limit()
+      {
+        // when
+        for (int i = 0; i < 1000; i++)
+          {
+            assertThat(underTest.tryAcquire("tile.example.org", Double.POSITIVE_INFINITY)).isZero();
+          }
+        // then
+        assertThat(underTest.bucketsByHost).isEmpty();
+      }
+  }
@@ -0,0 +1,159 @@
+/*
+ * *************************************************************************************************************************************************************
+ *
+ * MapView: a JavaFX map renderer for tile-based servers
+ * http://tidalwave.it/projects/mapview
+ *
+ * Copyright (C) 2024 - 2025 by Tidalwave s.a.s. (http://tidalwave.it)
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.  See the License for the specific language governing permissions and limitations under the License.
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * git clone https://bitbucket.org/tidalwave/mapview-src
+ * git clone https://github.com/tidalwave-it/mapview-src
+ *
+ * *************************************************************************************************************************************************************
+ */
+package it.tidalwave.mapview.impl;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.net.URI;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static java.time.format.DateTimeFormatter.RFC_1123_DATE_TIME;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+/***************************************************************************************************************************************************************
+ *
+ * @author  Fabrizio Giudici
+ *
+ **************************************************************************************************************************************************************/
+public class RetrySchedulerTest
+  {
+    private static final URI TILE_URI = URI.create("https://tile.openstreetmap.org/17/68647/47546.png");
+
+    private Predicate<AbstractTile> resubmitter;
+
+    private RetryScheduler underTest;
+
+    private AbstractTile tile;
+
+    /**********************************************************************************************************************************************************/
+    @BeforeMethod
+    public void setup()
+      {
+        resubmitter = mock();
+        when(resubmitter.test(any())).thenReturn(true);
+        underTest = new RetryScheduler(3, Duration.ofMillis(10), resubmitter);
+        tile = mock(AbstractTile.class);
+        when(tile.getUri()).thenReturn(TILE_URI);
+        when(tile.getZoom()).thenReturn(17);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @AfterMethod
+    public void tearDown()
+      {
+        underTest.dispose();
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void must_resubmit_tile_after_delay()
+      {
+        // when
+        final var scheduled = underTest.schedule(tile, Optional.empty());
+        // then
+        assertThat(scheduled).isTrue();
+        verify(resubmitter, timeout(2000)).test(tile);
+        assertThat(underTest.attemptsByUri).containsEntry(TILE_URI, 1);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void must_give_up_after_max_attempts()
+      {
+        // when
+        final var first = underTest.schedule(tile, Optional.empty());
+        final var second = underTest.schedule(tile, Optional.empty());
+        final var third = underTest.schedule(tile, Optional.empty());
+        // then
+        assertThat(first).isTrue();
+        assertThat(second).isTrue();
+        assertThat(third).isFalse();
+        assertThat(underTest.attemptsByUri).doesNotContainKey(TILE_URI);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void succeeded_must_reset_attempts()
+      {
+        // given
+        underTest.schedule(tile, Optional.empty());
+        // when
+        underTest.succeeded(tile);
+        // then
+        assertThat(underTest.attemptsByUri).doesNotContainKey(TILE_URI);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void retain_must_discard_tiles_of_other_zoom_levels()
+      {
+        // given
+        underTest.schedule(tile, Optional.of(Duration.ofMinutes(1)));
+        // when
+        underTest.retain(16);
+        // then
+        assertThat(underTest.getPendingCount()).isZero();
+        assertThat(underTest.attemptsByUri).isEmpty();
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void computeDelay_must_grow_exponentially_with_jitter()
+      {
+        for (int attempts = 1; attempts <= 5; attempts++)
+          {
+            // when
+            final var delay = underTest.computeDelay(attempts, Optional.empty());
+            // then
+            final var backoff = Duration.ofMillis(10L << (attempts - 1));
+            assertThat(delay).isBetween(backoff.dividedBy(2), backoff);
+          }
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void computeDelay_must_honor_retry_after()
+      {
+        // when
+        final var delay = underTest.computeDelay(1, Optional.of(Duration.ofSeconds(30)));
+        // then
+        assertThat(delay).isEqualTo(Duration.ofSeconds(30));
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void parseRetryAfter_must_accept_seconds_and_dates()
+      {
+        assertThat(RetryScheduler.parseRetryAfter("120")).contains(Duration.ofSeconds(120));
+        assertThat(RetryScheduler.parseRetryAfter(ZonedDateTime.now().plusMinutes(5).format(RFC_1123_DATE_TIME)))
+                .hasValueSatisfying(d -> assertThat(d).isBetween(Duration.ofMinutes(4), Duration.ofMinutes(5)));
+        assertThat(RetryScheduler.parseRetryAfter("garbage")).isEmpty();
+      }
+  }
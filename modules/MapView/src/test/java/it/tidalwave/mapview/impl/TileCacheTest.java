@@ -25,21 +25,38 @@
  */
 package it.tidalwave.mapview.impl;
 
-import java.lang.ref.SoftReference;
 import jakarta.annotation.Nonnull;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.URI;
 import javafx.scene.image.Image;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
 import it.tidalwave.mapview.OpenStreetMapTileSource;
 import it.tidalwave.mapview.javafx.MapView;
-import org.assertj.core.api.Condition;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -58,9 +75,15 @@ public class TileCacheTest
 
     private static final URI TILE_URI = URI.create("https://tile.openstreetmap.org/17/68647/47546.png");
 
-    private static final Path CACHE_FOLDER = Path.of("target/cache");
+    private static final byte[] TILE_CONTENT = "mock tile content".getBytes(StandardCharsets.UTF_8);
 
-    private static final Path CACHED_TILE_PATH = CACHE_FOLDER.resolve("OpenStreetMap/43/57/tile.openstreetmap.org/17/68647/47546.png");
+    private static final long TILE_KEY = TileKey.of(new OpenStreetMapTileSource(), 17, 68647, 47546);
+
+    private static final String CACHED_TILE_NAME = "OpenStreetMap/43/57/tile.openstreetmap.org/17/68647/47546.png";
+
+    private Path cacheFolder;
+
+    private Path cachedTilePath;
 
     private TileCache underTest;
 
@@ -74,18 +97,36 @@ public class TileCacheTest
             throws IOException
       {
         final var tileSource = new OpenStreetMapTileSource();
+        cacheFolder = Files.createTempDirectory(Files.createDirectories(Path.of("target")), "cache-");
+        cachedTilePath = cacheFolder.resolve(CACHED_TILE_NAME);
         final var executorService = mock(ExecutorService.class);
         final var waitingImage = mock(Image.class);
         options = MapView.options()
-                         .withCacheFolder(CACHE_FOLDER)
+                         .withCacheFolder(cacheFolder)
                          .withWaitingImage(() -> waitingImage)
                          .withExecutorService(ignored -> executorService);
-        underTest = new TileCache(options);
+        underTest = new TileCache(options, Runnable::run);
         tile = mock(AbstractTile.class);
         when(tile.getSource()).thenReturn(tileSource);
         when(tile.getUri()).thenReturn(TILE_URI);
+        when(tile.getKey()).thenReturn(TILE_KEY);
         when(tile.setImageByPath(any(Path.class))).thenReturn(Optional.of(new MockImage(TILE_URI)));
-        Files.deleteIfExists(CACHED_TILE_PATH);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @AfterMethod
+    public void tearDown()
+            throws IOException
+      {
+        underTest.dispose();
+
+        try (final var files = Files.walk(cacheFolder))
+          {
+            for (final var file : files.sorted(Comparator.reverseOrder()).toList())
+              {
+                Files.delete(file);
+              }
+          }
       }
 
     /**********************************************************************************************************************************************************/
@@ -95,19 +136,122 @@ public class TileCacheTest
         // when
         underTest.loadTileInBackground(tile);
         // then
-        assertThat(underTest.tileQueue).containsExactly(tile);
-        assertThat(underTest.memoryImageCache).isEmpty();
+        assertThat(underTest.tileQueue).extracting(TileCache.QueuedTile::tile).containsExactly(tile);
+        assertThat(underTest.memoryImageCache.keys()).isEmpty();
         assertThat(underTest.getPendingTileCount()).isEqualTo(1);
         verify(tile).setImageByBitmap(same(options.waitingImage().get()));
       }
 
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void disk_cache_must_be_looked_up_by_the_io_executor()
+      {
+        // given
+        final var ioExecutor = mock(Executor.class);
+        final var underTest = new TileCache(options, ioExecutor);
+        // when
+        underTest.loadTileInBackground(tile);
+        // then
+        verify(tile).setImageByBitmap(same(options.waitingImage().get()));
+        assertThat(underTest.tileQueue).isEmpty();
+        final var captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(ioExecutor).execute(captor.capture());
+        // when
+        captor.getValue().run();
+        // then
+        assertThat(underTest.tileQueue).extracting(TileCache.QueuedTile::tile).containsExactly(tile);
+        underTest.dispose();
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void tiles_with_the_same_uri_must_be_loaded_only_once()
+      {
+        // given
+        final var tile1 = createMockTile(4, 1, 1);
+        final var tile2 = createMockTile(4, 1, 1);
+        // when
+        underTest.loadTileInBackground(tile1);
+        underTest.loadTileInBackground(tile2);
+        // then
+        assertThat(underTest.tileQueue).extracting(TileCache.QueuedTile::tile).containsExactly(tile1);
+        assertThat(underTest.inFlightByKey.get(tile1.getKey())).extracting(TileCache.InFlight::leader).isSameAs(tile1);
+        verify(tile2).setImageByBitmap(same(options.waitingImage().get()));
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void tile_waiting_for_a_dropped_one_must_be_loaded_on_its_own()
+            throws InterruptedException
+      {
+        // given
+        final var ioTasks = new LinkedBlockingQueue<Runnable>();
+        final var underTest = new TileCache(options.withTileQueueCapacity(1), ioTasks::add);
+        final var leader = createMockTile(17, 1, 1);
+        final var follower = createMockTile(17, 1, 1);
+        final var other = createMockTile(17, 2, 2);
+        underTest.loadTileInBackground(leader);
+        underTest.loadTileInBackground(follower);
+        runAll(ioTasks);
+        assertThat(underTest.tileQueue).extracting(TileCache.QueuedTile::tile).containsExactly(leader);
+        // when
+        underTest.tileQueue.clear(); // taken by a loader, whose download fails
+        underTest.loadTileInBackground(other);
+        runAll(ioTasks);
+        underTest.retryScheduler.schedule(leader, Optional.of(Duration.ZERO)); // the queue is full when the retry is due
+        final var resolveFollower = ioTasks.poll(5, TimeUnit.SECONDS);
+        // then
+        assertThat(resolveFollower).isNotNull();
+        assertThat(underTest.tileQueue).extracting(TileCache.QueuedTile::tile).containsExactly(other);
+        assertThat(underTest.inFlightByKey.get(leader.getKey())).isNull();
+        // when
+        underTest.tileQueue.clear();
+        resolveFollower.run();
+        // then
+        assertThat(underTest.tileQueue).extracting(TileCache.QueuedTile::tile).containsExactly(follower);
+        assertThat(underTest.inFlightByKey.get(follower.getKey())).extracting(TileCache.InFlight::leader).isSameAs(follower);
+        underTest.dispose();
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void pending_tiles_must_be_ranked_by_distance_from_priority_center()
+      {
+        // given
+        final var far = createMockTile(4, 8, 8);
+        final var near = createMockTile(4, 3, 2);
+        final var wrapped = createMockTile(4, 15, 1);
+        final var center = createMockTile(4, 1, 1);
+        List.of(far, near, wrapped, center).forEach(underTest::loadTileInBackground);
+        // when
+        underTest.setPriorityCenter(TilePos.of(1, 1));
+        // then
+        final var actual = new ArrayList<TileCache.QueuedTile>();
+        underTest.tileQueue.drainTo(actual);
+        assertThat(actual).extracting(TileCache.QueuedTile::tile).containsExactly(center, wrapped, near, far);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void discarded_tiles_must_be_ranked_last()
+      {
+        // given
+        final var tile1 = createMockTile(4, 1, 1);
+        final var tile2 = createMockTile(5, 2, 2);
+        // when
+        underTest.retainPendingTiles(5);
+        // then
+        assertThat(underTest.priorityDistance(tile1)).isEqualTo(Long.MAX_VALUE);
+        assertThat(underTest.priorityDistance(tile2)).isEqualTo(8);
+      }
+
     /**********************************************************************************************************************************************************/
     @Test
     public void test_tile_was_in_memory_cache()
       {
         // given
         final var image = new MockImage(tile.getUri());
-        underTest.memoryImageCache.put(TILE_URI, new SoftReference<>(image));
+        underTest.memoryImageCache.put(TILE_KEY, image, 1);
         // when
         underTest.loadTileInBackground(tile);
         // then
@@ -116,24 +260,151 @@ public class TileCacheTest
         verify(tile).setImageByBitmap(same(image));
       }
 
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void ancestor_tile_in_memory_cache_must_be_used_as_placeholder()
+      {
+        // given
+        final var tile = createMockTile(6, 21, 10);
+        final var image = new MockImage(tile.getUri());
+        underTest.memoryImageCache.put(TileKey.of(tile.getSource(), 4, 5, 2), image, 1);
+        // when
+        underTest.loadTileInBackground(tile);
+        // then
+        verify(tile).setPlaceholderBitmap(same(image), eq(0.25), eq(0.5), eq(0.25));
+        verify(tile, never()).setImageByBitmap(any());
+        assertThat(underTest.tileQueue).extracting(TileCache.QueuedTile::tile).containsExactly(tile);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void missing_tile_must_be_synthesized_from_its_children()
+      {
+        // given
+        final var underTest = new TileCache(options.withDownloadAllowed(false), Runnable::run);
+        final var tile = createMockTile(4, 1, 1);
+        final var source = tile.getSource();
+        final var children = new MockImage[4];
+
+        for (int i = 0; i < children.length; i++)
+          {
+            final var uri = source.getTileUri(2 + (i & 1), 2 + (i >> 1), 5);
+            children[i] = new MockImage(uri);
+            underTest.memoryImageCache.put(TileKey.of(source, 5, 2 + (i & 1), 2 + (i >> 1)), children[i], 1);
+          }
+
+        final var synthesized = new MockImage(tile.getUri());
+        when(tile.composeBitmap(any())).thenReturn(synthesized);
+        // when
+        underTest.loadTileInBackground(tile);
+        // then
+        verify(tile).composeBitmap(aryEq(children));
+        verify(tile).setImageByBitmap(same(synthesized));
+        assertThat(underTest.memoryImageCache.keys()).contains(TileKey.synthesized(tile.getKey()));
+        assertThat(underTest.memoryImageCache.keys()).doesNotContain(tile.getKey());
+        underTest.dispose();
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void tile_must_not_be_synthesized_if_it_is_going_to_be_downloaded_soon()
+      {
+        // given
+        final var tile = createMockTile(4, 1, 1);
+        final var source = tile.getSource();
+
+        for (int i = 0; i < 4; i++)
+          {
+            underTest.memoryImageCache.put(TileKey.of(source, 5, 2 + (i & 1), 2 + (i >> 1)), new MockImage(TILE_URI), 1);
+          }
+
+        // when
+        underTest.loadTileInBackground(tile);
+        // then
+        verify(tile, never()).composeBitmap(any());
+        assertThat(underTest.tileQueue).extracting(TileCache.QueuedTile::tile).containsExactly(tile);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void tile_must_not_be_synthesized_if_a_child_is_missing()
+      {
+        // given
+        final var underTest = new TileCache(options.withDownloadAllowed(false), Runnable::run);
+        final var tile = createMockTile(4, 1, 1);
+        final var source = tile.getSource();
+        underTest.memoryImageCache.put(TileKey.of(source, 5, 2, 2), new MockImage(TILE_URI), 1);
+        underTest.memoryImageCache.put(TileKey.of(source, 5, 3, 2), new MockImage(TILE_URI), 1);
+        underTest.memoryImageCache.put(TileKey.of(source, 5, 2, 3), new MockImage(TILE_URI), 1);
+        // when
+        underTest.loadTileInBackground(tile);
+        // then
+        verify(tile, never()).composeBitmap(any());
+        verify(tile).setImageByBitmap(same(options.waitingImage().get()));
+        underTest.dispose();
+      }
+
     /**********************************************************************************************************************************************************/
     @Test
     public void test_tile_was_in_disk_cache()
             throws IOException
       {
         // given
-        Files.createDirectories(CACHED_TILE_PATH.getParent());
-        Files.writeString(CACHED_TILE_PATH, "mock tile content");
+        Files.createDirectories(cachedTilePath.getParent());
+        Files.writeString(cachedTilePath, "mock tile content");
+        underTest.diskCacheIndex.added(cachedTilePath, TILE_CONTENT.length);
         // when
         underTest.loadTileInBackground(tile);
         // then
         assertThat(underTest.tileQueue).isEmpty();
         assertThat(underTest.getPendingTileCount()).isZero();
-        assertThat(underTest.memoryImageCache).hasEntrySatisfying(TILE_URI,
-                                                                  new Condition<>(c -> (c instanceof final SoftReference<?> sr)
-                                                                        && (sr.get() instanceof MockImage(final var uri))
-                                                                        && uri.equals(tile.getUri()), "SoftRererence to " + new MockImage(tile.getUri())));
-        verify(tile).setImageByPath(CACHED_TILE_PATH);
+        assertThat(underTest.memoryImageCache.get(TILE_KEY)).hasValue(new MockImage(TILE_URI));
+        assertThat(underTest.getMemoryCacheStats().weight()).isEqualTo(256 * 256 * 4);
+        verify(tile).setImageByPath(cachedTilePath);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void unreadable_tile_in_disk_cache_must_be_removed_from_index_and_downloaded_again()
+      {
+        // given
+        underTest.diskCacheIndex.added(cachedTilePath, TILE_CONTENT.length); // e.g. deleted by hand after being indexed
+        when(tile.setImageByPath(any(Path.class))).thenReturn(Optional.empty());
+        // when
+        underTest.loadTileInBackground(tile);
+        // then
+        verify(tile).setImageByPath(cachedTilePath);
+        assertThat(underTest.diskCacheIndex.entries).doesNotContainKey(cachedTilePath);
+        assertThat(underTest.memoryImageCache.keys()).isEmpty();
+        assertThat(underTest.tileQueue).extracting(TileCache.QueuedTile::tile).containsExactly(tile);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void with_virtual_threads_tile_not_present_and_download_not_allowed_must_be_set_to_no_image()
+      {
+        // given
+        final var underTest = new TileCache(options.withVirtualThreads().withDownloadAllowed(false));
+        // when
+        underTest.loadTileInBackground(tile);
+        // then
+        verify(tile, timeout(2000)).setImageByPath(null);
+        underTest.dispose();
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void with_virtual_threads_the_configured_executor_must_not_be_used()
+      {
+        // given
+        final var executorService = mock(ExecutorService.class);
+        final var underTest = new TileCache(options.withExecutorService(ignored -> executorService).withVirtualThreads(true).withDownloadAllowed(false));
+        // when
+        underTest.loadTileInBackground(tile);
+        // then
+        verify(tile, timeout(2000)).setImageByPath(null);
+        verifyNoInteractions(executorService);
+        underTest.dispose();
       }
 
     /**********************************************************************************************************************************************************/
@@ -142,10 +413,11 @@ public class TileCacheTest
             throws NoSuchAlgorithmException, IOException
       {
         // when
-        TileCache.downloadTile(CACHED_TILE_PATH, TILE_URI);
+        underTest.downloadTile(cachedTilePath, TILE_URI).join();
         // then
-        assertThat(Files.exists(CACHED_TILE_PATH)).isTrue();
-        assertThat(sha256Of(CACHED_TILE_PATH)).isEqualTo("1c77b348765c66299f86929a49254e3e6d7893d3930322ff7879dda6d9071899");
+        assertThat(Files.exists(cachedTilePath)).isTrue();
+        assertThat(sha256Of(cachedTilePath)).isEqualTo("1c77b348765c66299f86929a49254e3e6d7893d3930322ff7879dda6d9071899");
+        assertThat(tempFilesIn(cachedTilePath.getParent())).isEmpty();
       }
 
     /**********************************************************************************************************************************************************/
@@ -153,9 +425,12 @@ public class TileCacheTest
     public void downloadTile_from_invalid_url_must_not_store_anything()
       {
         // when
-        TileCache.downloadTile(CACHED_TILE_PATH, URI.create("https://tile.openstreetmap.org/17/68647/this-tile-does-not-exist.png"));
+        underTest.downloadTile(cachedTilePath, URI.create("https://tile.openstreetmap.org/17/68647/this-tile-does-not-exist.png"))
+                 .exceptionally(e -> null)
+                 .join();
         // then
-        assertThat(Files.exists(CACHED_TILE_PATH)).isFalse();
+        assertThat(Files.exists(cachedTilePath)).isFalse();
+        assertThat(tempFilesIn(cachedTilePath.getParent())).isEmpty();
       }
 
     /**********************************************************************************************************************************************************/
@@ -163,9 +438,132 @@ public class TileCacheTest
     public void downloadTile_from_broken_url_must_not_store_anything()
       {
         // when
-        TileCache.downloadTile(CACHED_TILE_PATH, URI.create("https://this.uri.does.not/exist"));
+        underTest.downloadTile(cachedTilePath, URI.create("https://this.uri.does.not/exist")).exceptionally(e -> null).join();
         // then
-        assertThat(Files.exists(CACHED_TILE_PATH)).isFalse();
+        assertThat(Files.exists(cachedTilePath)).isFalse();
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void throttled_download_must_be_retried()
+            throws IOException
+      {
+        // given
+        final var requestCount = new AtomicInteger();
+        final var server = startServer(exchange ->
+          {
+            if (requestCount.incrementAndGet() == 1)
+              {
+                exchange.getResponseHeaders().add("Retry-After", "0");
+                exchange.sendResponseHeaders(503, -1);
+              }
+            else
+              {
+                exchange.sendResponseHeaders(200, TILE_CONTENT.length);
+                exchange.getResponseBody().write(TILE_CONTENT);
+              }
+
+            exchange.close();
+          });
+        final var underTest = new TileCache(options.withExecutorService(Executors::newFixedThreadPool).withRetryBaseDelay(Duration.ofMillis(10)));
+        final var tile = createMockTile(17, 1, 1, baseUriOf(server));
+
+        try
+          {
+            // when
+            underTest.loadTileInBackground(tile);
+            // then
+            verify(tile, timeout(5000)).setImageByPath(any(Path.class));
+            assertThat(requestCount).hasValue(2);
+            assertThat(underTest.retryScheduler.attemptsByUri).isEmpty();
+          }
+        finally
+          {
+            underTest.dispose();
+            server.stop(0);
+          }
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void downloads_must_be_paced_by_the_rate_limit()
+            throws IOException
+      {
+        // given
+        final var requestTimes = new ConcurrentLinkedQueue<Long>();
+        final var server = startServer(exchange ->
+          {
+            requestTimes.add(System.nanoTime());
+            exchange.sendResponseHeaders(200, TILE_CONTENT.length);
+            exchange.getResponseBody().write(TILE_CONTENT);
+            exchange.close();
+          });
+        final var underTest = new TileCache(options.withExecutorService(Executors::newFixedThreadPool).withMaxRequestsPerSecond(2));
+        final var tiles = IntStream.range(0, 4).mapToObj(i -> createMockTile(17, i, 1, baseUriOf(server))).toList();
+
+        try
+          {
+            // when
+            tiles.forEach(underTest::loadTileInBackground);
+            // then
+            tiles.forEach(tile -> verify(tile, timeout(5000)).setImageByPath(any(Path.class)));
+            assertThat(requestTimes).hasSize(4);
+            // a burst of two requests, then one every 500 msec
+            final var first = requestTimes.stream().mapToLong(Long::longValue).min().orElseThrow();
+            final var last = requestTimes.stream().mapToLong(Long::longValue).max().orElseThrow();
+            assertThat(Duration.ofNanos(last - first)).isGreaterThanOrEqualTo(Duration.ofMillis(900));
+          }
+        finally
+          {
+            underTest.dispose();
+            server.stop(0);
+          }
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void throttled_backlog_must_be_served_in_distance_order_without_dropping_tiles()
+            throws IOException
+      {
+        // given
+        final var requestedPaths = new ConcurrentLinkedQueue<String>();
+        final var server = startServer(exchange ->
+          {
+            requestedPaths.add(exchange.getRequestURI().getPath());
+            exchange.sendResponseHeaders(200, TILE_CONTENT.length);
+            exchange.getResponseBody().write(TILE_CONTENT);
+            exchange.close();
+          });
+        final var rate = 5.0;
+        final var underTest = new TileCache(options.withExecutorService(Executors::newFixedThreadPool)
+                                                   .withPoolSize(1)
+                                                   .withMaxConcurrentRequests(1)
+                                                   .withMaxRequestsPerSecond(rate)
+                                                   .withTileQueueCapacity(6),
+                                            Runnable::run);
+        final var tiles = IntStream.rangeClosed(1, 6).mapToObj(column -> createMockTile(17, column, 1, baseUriOf(server))).toList();
+        final var host = tiles.get(0).getUri().getHost();
+
+        try
+          {
+            while (underTest.rateLimiter.tryAcquire(host, rate) == 0)
+              {
+                // use up the burst, so the host is throttled from now on
+              }
+
+            tiles.forEach(underTest::loadTileInBackground);
+            // when
+            underTest.setPriorityCenter(TilePos.of(6, 1));
+            // then
+            tiles.forEach(tile -> verify(tile, timeout(5000)).setImageByPath(any(Path.class)));
+            assertThat(requestedPaths).containsExactly("/17/6/1.png", "/17/5/1.png", "/17/4/1.png", "/17/3/1.png", "/17/2/1.png", "/17/1/1.png");
+            assertThat(underTest.tileQueue).isEmpty();
+          }
+        finally
+          {
+            underTest.dispose();
+            server.stop(0);
+          }
       }
 
     /**********************************************************************************************************************************************************/
@@ -183,6 +581,7 @@ public class TileCacheTest
             // TODO: would be better tested by connecting to a mock server that make incoming calls stuck
             when(tile.getUri()).thenReturn(URI.create("https://tile.openstreetmap.org/17/68647/%d.png".formatted(47000 + i)));
             when(tile.getZoom()).thenReturn(17);
+            when(tile.getKey()).thenReturn(TileKey.of(tileSource, 17, 68647, 47000 + i));
             underTest.loadTileInBackground(tile);
           }
         // when
@@ -193,6 +592,46 @@ public class TileCacheTest
         assertThat(unterminatedRunnables).withFailMessage(unterminatedRunnables.toString()).isEmpty();
       }
 
+    /**********************************************************************************************************************************************************/
+    private static void runAll (@Nonnull final Queue<Runnable> tasks)
+      {
+        Runnable task;
+
+        while ((task = tasks.poll()) != null)
+          {
+            task.run();
+          }
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Nonnull
+    private static HttpServer startServer (@Nonnull final HttpHandler handler)
+            throws IOException
+      {
+        final var server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", handler);
+        server.start();
+        return server;
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Nonnull
+    private static String baseUriOf (@Nonnull final HttpServer server)
+      {
+        return "http://%s:%d".formatted(server.getAddress().getAddress().getHostAddress(), server.getAddress().getPort());
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Nonnull
+    private static List<Path> tempFilesIn (@Nonnull final Path folder)
+            throws IOException
+      {
+        try (final var stream = Files.list(folder))
+          {
+            return stream.filter(p -> p.getFileName().toString().endsWith(TileCache.TEMP_SUFFIX)).toList();
+          }
+      }
+
     /**********************************************************************************************************************************************************/
     @Nonnull
     private static String sha256Of (@Nonnull final Path path)
@@ -223,4 +662,26 @@ public class TileCacheTest
 
         return builder.toString();
       }
-  }
\ No newline at end of file
+
+    /**********************************************************************************************************************************************************/
+    @Nonnull
+    private static AbstractTile createMockTile (final int zoom, final int column, final int row)
+      {
+        return createMockTile(zoom, column, row, "https://localhost");
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Nonnull
+    private static AbstractTile createMockTile (final int zoom, final int column, final int row, @Nonnull final String baseUri)
+      {
+        final var tileSource = new OpenStreetMapTileSource();
+        final var tile = mock(AbstractTile.class);
+        when(tile.getSource()).thenReturn(tileSource);
+        when(tile.getUri()).thenReturn(URI.create("%s/%d/%d/%d.png".formatted(baseUri, zoom, column, row)));
+        when(tile.getKey()).thenReturn(TileKey.of(tileSource, zoom, column, row));
+        when(tile.getZoom()).thenReturn(zoom);
+        when(tile.getColumn()).thenReturn(column);
+        when(tile.getRow()).thenReturn(row);
+        return tile;
+      }
+  }
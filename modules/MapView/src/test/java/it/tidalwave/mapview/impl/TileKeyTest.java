@@ -0,0 +1,115 @@
+/*
+ * *************************************************************************************************************************************************************
+ *
+ * MapView: a JavaFX map renderer for tile-based servers
+ * http://tidalwave.it/projects/mapview
+ *
+ * Copyright (C) 2024 - 2025 by Tidalwave s.a.s. (http://tidalwave.it)
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.  See the License for the specific language governing permissions and limitations under the License.
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * git clone https://bitbucket.org/tidalwave/mapview-src
+ * git clone https://github.com/tidalwave-it/mapview-src
+ *
+ * *************************************************************************************************************************************************************
+ */
+package it.tidalwave.mapview.impl;
+
+import it.tidalwave.mapview.OpenStreetMapTileSource;
+import it.tidalwave.mapview.OpenTopoMapTileSource;
+import org.testng.annotations.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/***************************************************************************************************************************************************************
+ *
+ * @author  Fabrizio Giudici
+ *
+ **************************************************************************************************************************************************************/
+public class TileKeyTest
+  {
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void key_must_be_unpacked_into_its_fields()
+      {
+        // when
+        final var key = TileKey.of(5, 17, 68647, 47546);
+        // then
+        assertThat(TileKey.sourceId(key)).isEqualTo(5);
+        assertThat(TileKey.zoom(key)).isEqualTo(17);
+        assertThat(TileKey.column(key)).isEqualTo(68647);
+        assertThat(TileKey.row(key)).isEqualTo(47546);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void fields_at_their_maximum_must_not_overlap()
+      {
+        // given
+        final var max = (1 << TileKey.MAX_ZOOM) - 1;
+        // when
+        final var key = TileKey.synthesized(TileKey.of(127, TileKey.MAX_ZOOM, max, max));
+        // then
+        assertThat(TileKey.sourceId(key)).isEqualTo(127);
+        assertThat(TileKey.zoom(key)).isEqualTo(TileKey.MAX_ZOOM);
+        assertThat(TileKey.column(key)).isEqualTo(max);
+        assertThat(TileKey.row(key)).isEqualTo(max);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void coordinates_out_of_range_must_be_rejected()
+      {
+        assertThatThrownBy(() -> TileKey.of(0, 3, 8, 0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> TileKey.of(0, 3, 0, -1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> TileKey.of(0, TileKey.MAX_ZOOM + 1, 0, 0)).isInstanceOf(IllegalArgumentException.class);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void ancestors_and_children_must_cover_each_other()
+      {
+        // given
+        final var key = TileKey.of(0, 6, 21, 10);
+        // when
+        final var ancestor = TileKey.ancestor(key, 2);
+        // then
+        assertThat(ancestor).isEqualTo(TileKey.of(0, 4, 5, 2));
+        assertThat(TileKey.child(TileKey.child(ancestor, 2), 1)).isEqualTo(key);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void synthesized_key_must_differ_from_the_tile_key()
+      {
+        // given
+        final var key = TileKey.of(0, 6, 21, 10);
+        // when
+        final var synthesized = TileKey.synthesized(key);
+        // then
+        assertThat(synthesized).isNotEqualTo(key);
+        assertThat(TileKey.zoom(synthesized)).isEqualTo(6);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void sources_must_have_different_ids()
+      {
+        // when
+        final var osmId = TileKey.sourceId(new OpenStreetMapTileSource());
+        final var otmId = TileKey.sourceId(new OpenTopoMapTileSource());
+        // then
+        assertThat(osmId).isNotEqualTo(otmId);
+        assertThat(TileKey.sourceId(new OpenStreetMapTileSource())).isEqualTo(osmId);
+      }
+  }
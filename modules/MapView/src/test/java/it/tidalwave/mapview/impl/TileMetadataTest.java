@@ -0,0 +1,182 @@
+/*
+ * *************************************************************************************************************************************************************
+ *
+ * MapView: a JavaFX map renderer for tile-based servers
+ * http://tidalwave.it/projects/mapview
+ *
+ * Copyright (C) 2024 - 2025 by Tidalwave s.a.s. (http://tidalwave.it)
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.  See the License for the specific language governing permissions and limitations under the License.
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * git clone https://bitbucket.org/tidalwave/mapview-src
+ * git clone https://github.com/tidalwave-it/mapview-src
+ *
+ * *************************************************************************************************************************************************************
+ */
+package it.tidalwave.mapview.impl;
+
+import jakarta.annotation.Nonnull;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import org.testng.annotations.Test;
+import static java.time.format.DateTimeFormatter.RFC_1123_DATE_TIME;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/***************************************************************************************************************************************************************
+ *
+ * @author  Fabrizio Giudici
+ *
+ **************************************************************************************************************************************************************/
+public class TileMetadataTest
+  {
+    private static final Instant NOW = Instant.parse("2025-01-01T00:00:00Z");
+
+    private static final Path TILE_PATH = Path.of("target/metadata-cache/17/68647/47546.png");
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void expiry_must_be_computed_from_max_age()
+      {
+        // when
+        final var underTest = TileMetadata.of(headers(Map.of("Cache-Control", "public, max-age=3600", "ETag", "\"abc\"")), NOW);
+        // then
+        assertThat(underTest.etag()).isEqualTo("\"abc\"");
+        assertThat(underTest.expiry()).isEqualTo(NOW.plusSeconds(3600));
+        assertThat(underTest.isStale(NOW.plusSeconds(3599))).isFalse();
+        assertThat(underTest.isStale(NOW.plusSeconds(3600))).isTrue();
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void expiry_must_be_computed_from_expires_when_max_age_is_missing()
+      {
+        // given
+        final var expires = RFC_1123_DATE_TIME.format(NOW.plus(Duration.ofHours(2)).atZone(ZoneOffset.UTC));
+        // when
+        final var underTest = TileMetadata.of(headers(Map.of("Expires", expires)), NOW);
+        // then
+        assertThat(underTest.expiry()).isEqualTo(NOW.plus(Duration.ofHours(2)));
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void no_cache_must_make_the_tile_immediately_stale()
+      {
+        // when
+        final var underTest = TileMetadata.of(headers(Map.of("Cache-Control", "no-cache, max-age=3600")), NOW);
+        // then
+        assertThat(underTest.isStale(NOW)).isTrue();
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void default_lifetime_must_be_used_when_the_server_does_not_tell()
+      {
+        // when
+        final var underTest = TileMetadata.of(headers(Map.of()), NOW);
+        // then
+        assertThat(underTest.expiry()).isEqualTo(NOW.plus(TileMetadata.DEFAULT_MAX_AGE));
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void refresh_must_keep_validators_not_repeated_by_the_server()
+      {
+        // given
+        final var underTest = new TileMetadata("\"abc\"", "Wed, 01 Jan 2025 00:00:00 GMT", NOW);
+        // when
+        final var actual = underTest.refreshedBy(headers(Map.of("Cache-Control", "max-age=60")), NOW);
+        // then
+        assertThat(actual).isEqualTo(new TileMetadata("\"abc\"", "Wed, 01 Jan 2025 00:00:00 GMT", NOW.plusSeconds(60)));
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void conditional_headers_must_carry_the_validators()
+      {
+        // given
+        final var underTest = new TileMetadata("\"abc\"", "Wed, 01 Jan 2025 00:00:00 GMT", NOW);
+        // when
+        final var request = underTest.addConditionalHeaders(HttpRequest.newBuilder(URI.create("https://localhost/1.png"))).build();
+        // then
+        assertThat(request.headers().firstValue("If-None-Match")).hasValue("\"abc\"");
+        assertThat(request.headers().firstValue("If-Modified-Since")).hasValue("Wed, 01 Jan 2025 00:00:00 GMT");
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void stored_metadata_must_be_loaded_back()
+            throws IOException
+      {
+        // given
+        Files.createDirectories(TILE_PATH.getParent());
+        final var underTest = new TileMetadata("\"abc\"", null, NOW);
+        // when
+        underTest.store(TILE_PATH);
+        // then
+        assertThat(TileMetadata.load(TILE_PATH)).hasValue(underTest);
+
+        try (final var files = Files.list(TILE_PATH.getParent()))
+          {
+            assertThat(files.filter(f -> f.getFileName().toString().endsWith(TileCache.TEMP_SUFFIX))).isEmpty();
+          }
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void missing_metadata_must_be_loaded_as_empty()
+            throws IOException
+      {
+        // given
+        Files.deleteIfExists(TileMetadata.sidecarOf(TILE_PATH));
+        // when
+        final var actual = TileMetadata.load(TILE_PATH);
+        // then
+        assertThat(actual).isEmpty();
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void missing_metadata_must_default_to_fresh_since_the_tile_was_stored()
+            throws IOException
+      {
+        // given
+        Files.createDirectories(TILE_PATH.getParent());
+        Files.writeString(TILE_PATH, "tile");
+        Files.setLastModifiedTime(TILE_PATH, FileTime.from(NOW));
+        Files.deleteIfExists(TileMetadata.sidecarOf(TILE_PATH));
+        // when
+        final var actual = TileMetadata.loadOrDefault(TILE_PATH);
+        // then
+        assertThat(actual).isEqualTo(new TileMetadata(null, null, NOW.plus(TileMetadata.DEFAULT_MAX_AGE)));
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Nonnull
+    private static HttpHeaders headers (@Nonnull final Map<String, String> map)
+      {
+        return HttpHeaders.of(map.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> List.of(e.getValue()))),
+                              (name, value) -> true);
+      }
+  }
@@ -0,0 +1,94 @@
+/*
+ * *************************************************************************************************************************************************************
+ *
+ * MapView: a JavaFX map renderer for tile-based servers
+ * http://tidalwave.it/projects/mapview
+ *
+ * Copyright (C) 2024 - 2025 by Tidalwave s.a.s. (http://tidalwave.it)
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.  See the License for the specific language governing permissions and limitations under the License.
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * git clone https://bitbucket.org/tidalwave/mapview-src
+ * git clone https://github.com/tidalwave-it/mapview-src
+ *
+ * *************************************************************************************************************************************************************
+ */
+package it.tidalwave.mapview.javafx;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.nio.file.Path;
+import javafx.scene.image.Image;
+import org.testng.annotations.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/***************************************************************************************************************************************************************
+ *
+ * @author  Fabrizio Giudici
+ *
+ **************************************************************************************************************************************************************/
+public class MapViewOptionsTest
+  {
+    /**********************************************************************************************************************************************************/
+    @Test @SuppressWarnings("deprecation")
+    public void legacy_constructor_must_use_defaults_for_the_other_attributes()
+      {
+        // given
+        final var cacheFolder = Path.of("target/cache");
+        final Supplier<Image> waitingImage = () -> null;
+        final Function<Integer, ExecutorService> executorService = ignored -> null;
+        // when
+        final var actual = new MapView.Options(cacheFolder, false, 3, 50, waitingImage, executorService);
+        // then
+        assertThat(actual).isEqualTo(MapView.options()
+                                            .withCacheFolder(cacheFolder)
+                                            .withDownloadAllowed(false)
+                                            .withPoolSize(3)
+                                            .withTileQueueCapacity(50)
+                                            .withWaitingImage(waitingImage)
+                                            .withExecutorService(executorService));
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void virtual_threads_must_be_switched_on_and_off_preserving_the_other_attributes()
+      {
+        // given
+        final var underTest = MapView.options()
+                                     .withCacheFolder(Path.of("target/cache"))
+                                     .withDownloadAllowed(false)
+                                     .withSyncDownloads(true)
+                                     .withPoolSize(3)
+                                     .withMaxConcurrentRequests(5)
+                                     .withMaxRequestsPerSecond(7.5)
+                                     .withMaxDownloadAttempts(4)
+                                     .withRetryBaseDelay(Duration.ofSeconds(3))
+                                     .withTileQueueCapacity(50)
+                                     .withMemoryCacheBudget(1234)
+                                     .withDiskCacheMaxBytes(5678)
+                                     .withDiskCacheMaxTiles(90)
+                                     .withMaxSynthesisDepth(1)
+                                     .withWaitingImage(() -> null)
+                                     .withExecutorService(ignored -> null)
+                                     .withCanvasRendering(true);
+        // when
+        final var on = underTest.withVirtualThreads();
+        final var off = on.withVirtualThreads(false);
+        // then
+        assertThat(on.virtualThreads()).isTrue();
+        assertThat(on).isEqualTo(underTest.withVirtualThreads(true));
+        assertThat(off).isEqualTo(underTest);
+      }
+  }
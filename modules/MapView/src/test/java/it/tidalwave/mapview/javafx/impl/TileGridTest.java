@@ -0,0 +1,210 @@
+/*
+ * *************************************************************************************************************************************************************
+ *
+ * MapView: a JavaFX map renderer for tile-based servers
+ * http://tidalwave.it/projects/mapview
+ *
+ * Copyright (C) 2024 - 2025 by Tidalwave s.a.s. (http://tidalwave.it)
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.  See the License for the specific language governing permissions and limitations under the License.
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * git clone https://bitbucket.org/tidalwave/mapview-src
+ * git clone https://github.com/tidalwave-it/mapview-src
+ *
+ * *************************************************************************************************************************************************************
+ */
+package it.tidalwave.mapview.javafx.impl;
+
+import jakarta.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import it.tidalwave.mapview.MapCoordinates;
+import it.tidalwave.mapview.OpenStreetMapTileSource;
+import it.tidalwave.mapview.OpenTopoMapTileSource;
+import it.tidalwave.mapview.TileSource;
+import it.tidalwave.mapview.impl.AbstractTile;
+import it.tidalwave.mapview.impl.MapViewModel;
+import it.tidalwave.mapview.impl.TileCache;
+import it.tidalwave.mapview.javafx.MapView;
+import it.tidalwave.mapview.javafx.TestNGApplicationTest;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/***************************************************************************************************************************************************************
+ *
+ * @author  Fabrizio Giudici
+ *
+ **************************************************************************************************************************************************************/
+public class TileGridTest extends TestNGApplicationTest
+  {
+    private static final int TILE_SIZE = 256;
+
+    private Path cacheFolder;
+
+    private MapView.Options options;
+
+    private TileCache tileCache;
+
+    private ObjectProperty<TileSource> tileSource;
+
+    private MapViewModel model;
+
+    /**********************************************************************************************************************************************************/
+    @BeforeMethod
+    public void setup()
+            throws IOException
+      {
+        cacheFolder = Files.createTempDirectory(Files.createDirectories(Path.of("target")), "cache-");
+        options = MapView.options().withCacheFolder(cacheFolder).withDownloadAllowed(false);
+        tileCache = new TileCache(options);
+        tileSource = new SimpleObjectProperty<>(new OpenStreetMapTileSource());
+        model = new MapViewModel(tileSource.get());
+        model.updateGridSize(800, 600);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @AfterMethod
+    public void tearDown()
+            throws IOException
+      {
+        tileCache.dispose();
+
+        try (final var files = Files.walk(cacheFolder))
+          {
+            for (final var file : files.sorted(Comparator.reverseOrder()).toList())
+              {
+                Files.delete(file);
+              }
+          }
+      }
+
+    /**********************************************************************************************************************************************************/
+    @DataProvider
+    public static Object[][] renderings()
+      {
+        return new Object[][] { { false }, { true } };
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test(dataProvider = "renderings")
+    public void shifting_by_one_column_must_only_create_the_tiles_of_the_new_edge (final boolean canvasRendering)
+      {
+        // given
+        final var underTest = createTileGrid(canvasRendering);
+        interact(() -> underTest.setCenterAndZoom(MapCoordinates.of(44.5, 9), 10));
+        final var oldTiles = tilesByKey(underTest);
+        // when
+        interact(() -> underTest.translate(-TILE_SIZE, 0));
+        // then
+        final var newTiles = tilesByKey(underTest);
+        final var keptKeys = new HashSet<>(oldTiles.keySet());
+        keptKeys.retainAll(newTiles.keySet());
+        assertThat(newTiles).hasSize(model.columns() * model.rows());
+        assertThat(keptKeys).hasSize((model.columns() - 1) * model.rows());
+        keptKeys.forEach(key -> assertThat(newTiles.get(key).get(0)).isSameAs(oldTiles.get(key).get(0)));
+        assertRenderedTiles(underTest, newTiles);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test(dataProvider = "renderings")
+    public void repeated_tiles_of_a_wrapped_around_grid_must_each_have_their_own_node (final boolean canvasRendering)
+      {
+        // given
+        final var underTest = createTileGrid(canvasRendering);
+        final var cellCount = model.columns() * model.rows();
+        // when
+        interact(() -> underTest.setCenterAndZoom(MapCoordinates.of(0, 1), 1));
+        // then
+        final var oldTiles = tilesByKey(underTest);
+        assertThat(oldTiles).hasSize(4); // the whole world at zoom level 1
+        assertThat(allOf(oldTiles)).hasSize(cellCount).doesNotHaveDuplicates();
+        assertRenderedTiles(underTest, oldTiles);
+        // when
+        interact(() -> underTest.translate(-TILE_SIZE, 0));
+        // then
+        final var newTiles = tilesByKey(underTest);
+        final var createdTiles = new HashSet<>(allOf(newTiles));
+        createdTiles.removeAll(allOf(oldTiles));
+        final var expectedCreatedCount = newTiles.entrySet()
+                                                 .stream()
+                                                 .mapToInt(e -> Math.max(0, e.getValue().size() - oldTiles.getOrDefault(e.getKey(), List.of()).size()))
+                                                 .sum();
+        assertThat(allOf(newTiles)).hasSize(cellCount).doesNotHaveDuplicates();
+        assertThat(createdTiles).hasSize(expectedCreatedCount);
+        assertRenderedTiles(underTest, newTiles);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test(dataProvider = "renderings")
+    public void changing_the_tile_source_must_not_recycle_tiles (final boolean canvasRendering)
+      {
+        // given
+        final var underTest = createTileGrid(canvasRendering);
+        interact(() -> underTest.setCenterAndZoom(MapCoordinates.of(44.5, 9), 10));
+        final var oldTiles = allOf(tilesByKey(underTest));
+        // when
+        interact(() -> tileSource.set(new OpenTopoMapTileSource()));
+        // then
+        final var newTiles = tilesByKey(underTest);
+        assertThat(allOf(newTiles)).hasSize(model.columns() * model.rows()).doesNotContainAnyElementsOf(oldTiles);
+        assertRenderedTiles(underTest, newTiles);
+      }
+
+    /***********************************************************************************************************************************************************
+     * Asserts that exactly the given tiles are rendered, either as nodes of the grid pane or on the canvas.
+     **********************************************************************************************************************************************************/
+    private static void assertRenderedTiles (@Nonnull final TileGrid underTest, @Nonnull final Map<Long, List<AbstractTile>> tilesByKey)
+      {
+        final var rendered = (underTest.tileCanvas != null) ? new ArrayList<Object>(underTest.tileCanvas.tiles)
+                                                            : new ArrayList<Object>(underTest.tilePane.getChildren());
+        assertThat(rendered).containsExactlyInAnyOrderElementsOf(allOf(tilesByKey));
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Nonnull
+    private TileGrid createTileGrid (final boolean canvasRendering)
+      {
+        final var result = new AtomicReference<TileGrid>();
+        interact(() -> result.set(new TileGrid(new MapView(options), model, tileSource, tileCache, canvasRendering)));
+        return result.get();
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Nonnull
+    private static Map<Long, List<AbstractTile>> tilesByKey (@Nonnull final TileGrid tileGrid)
+      {
+        final var result = new HashMap<Long, List<AbstractTile>>();
+        tileGrid.tilesByKey.forEach((key, tiles) -> result.put(key, List.copyOf(tiles)));
+        return result;
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Nonnull
+    private static List<AbstractTile> allOf (@Nonnull final Map<Long, List<AbstractTile>> tilesByKey)
+      {
+        return tilesByKey.values().stream().flatMap(List::stream).toList();
+      }
+  }
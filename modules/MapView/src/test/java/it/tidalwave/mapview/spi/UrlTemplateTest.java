@@ -0,0 +1,89 @@
+/*
+ * *************************************************************************************************************************************************************
+ *
+ * MapView: a JavaFX map renderer for tile-based servers
+ * http://tidalwave.it/projects/mapview
+ *
+ * Copyright (C) 2024 - 2025 by Tidalwave s.a.s. (http://tidalwave.it)
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.  See the License for the specific language governing permissions and limitations under the License.
+ *
+ * *************************************************************************************************************************************************************
+ *
+ * git clone https://bitbucket.org/tidalwave/mapview-src
+ * git clone https://github.com/tidalwave-it/mapview-src
+ *
+ * *************************************************************************************************************************************************************
+ */
+package it.tidalwave.mapview.spi;
+
+import java.net.URI;
+import org.testng.annotations.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/***************************************************************************************************************************************************************
+ *
+ * @author  Fabrizio Giudici
+ *
+ **************************************************************************************************************************************************************/
+public class UrlTemplateTest
+  {
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void placeholders_must_be_expanded()
+      {
+        // given
+        final var underTest = UrlTemplate.compile("https://tile.openstreetmap.org/{z}/{x}/{y}.png");
+        // when
+        final var actual = underTest.toUri(68647, 47546, 17);
+        // then
+        assertThat(actual).isEqualTo(URI.create("https://tile.openstreetmap.org/17/68647/47546.png"));
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void quadkey_must_be_expanded()
+      {
+        // given
+        final var underTest = UrlTemplate.compile("https://example.org/tiles/{q}.png?x={x}");
+        // when
+        final var actual = underTest.expand(3, 5, 3);
+        // then
+        assertThat(actual).isEqualTo("https://example.org/tiles/213.png?x=3");
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void subdomains_must_be_assigned_in_rotation_and_stable()
+      {
+        // given
+        final var underTest = UrlTemplate.compile("https://{s}.tile.example.org/{z}/{x}/{y}.png", "a", "b", "c");
+        // when
+        final var tile1 = underTest.expand(0, 0, 2);
+        final var tile2 = underTest.expand(1, 0, 2);
+        final var tile3 = underTest.expand(1, 1, 2);
+        // then
+        assertThat(tile1).isEqualTo("https://a.tile.example.org/2/0/0.png");
+        assertThat(tile2).isEqualTo("https://b.tile.example.org/2/1/0.png");
+        assertThat(tile3).isEqualTo("https://c.tile.example.org/2/1/1.png");
+        assertThat(underTest.expand(1, 0, 2)).isEqualTo(tile2);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void invalid_templates_must_be_rejected()
+      {
+        assertThatThrownBy(() -> UrlTemplate.compile("https://example.org/{z}/{w}.png")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> UrlTemplate.compile("https://example.org/{z/{x}.png")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> UrlTemplate.compile("https://{s}.example.org/{z}.png")).isInstanceOf(IllegalArgumentException.class);
+      }
+  }
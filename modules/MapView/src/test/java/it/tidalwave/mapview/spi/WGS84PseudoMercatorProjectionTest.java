@@ -25,12 +25,17 @@
  */
 package it.tidalwave.mapview.spi;
 
+import java.util.Random;
+import java.nio.DoubleBuffer;
 import it.tidalwave.mapview.MapCoordinates;
 import it.tidalwave.mapview.MapPoint;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 import static it.tidalwave.mapview.impl.Distances.distance;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+import static org.assertj.core.api.Assumptions.assumeThat;
 
 /***************************************************************************************************************************************************************
  *
@@ -62,6 +67,127 @@ public class WGS84PseudoMercatorProjectionTest
         assertThat(distance(actual, coordinates)).withFailMessage("actual: %s, expected: %s", actual, coordinates).isLessThan(1E-2);
       }
 
+    /**********************************************************************************************************************************************************/
+    @Test(dataProvider = "batchSizes")
+    public void batch_conversions_must_be_consistent_with_single_conversions (final int size)
+      {
+        // given
+        final var underTest = new WGS84PseudoMercatorProjection(256);
+        final var zoom = 12;
+        final var random = new Random(size);
+        final var latitudes = random.doubles(size, -85, 85).toArray();
+        final var longitudes = random.doubles(size, -180, 180).toArray();
+        final var xs = new double[size];
+        final var ys = new double[size];
+        final var latitudes2 = new double[size];
+        final var longitudes2 = new double[size];
+        // when
+        underTest.coordinatesToMapPoints(latitudes, longitudes, zoom, xs, ys);
+        underTest.mapPointsToCoordinates(xs, ys, zoom, latitudes2, longitudes2);
+        // then
+        final var expectedXs = new double[size];
+        final var expectedYs = new double[size];
+        final var expectedLatitudes = new double[size];
+        final var expectedLongitudes = new double[size];
+
+        for (int i = 0; i < size; i++)
+          {
+            final var point = underTest.coordinatesToMapPoint(MapCoordinates.of(latitudes[i], longitudes[i]), zoom);
+            final var coordinates = underTest.mapPointToCoordinates(point, zoom);
+            expectedXs[i] = point.x();
+            expectedYs[i] = point.y();
+            expectedLatitudes[i] = coordinates.latitude();
+            expectedLongitudes[i] = coordinates.longitude();
+          }
+
+        assertThat(xs).containsExactly(expectedXs, within(1E-9));
+        assertThat(ys).containsExactly(expectedYs, within(1E-9));
+        assertThat(latitudes2).containsExactly(expectedLatitudes, within(1E-9));
+        assertThat(longitudes2).containsExactly(expectedLongitudes, within(1E-9));
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test(dataProvider = "batchSizes")
+    public void batch_conversions_with_buffers_must_be_consistent_with_arrays (final int size)
+      {
+        // given
+        final var underTest = new WGS84PseudoMercatorProjection(256);
+        final var zoom = 12;
+        final var random = new Random(size);
+        final var latitudes = random.doubles(size, -85, 85).toArray();
+        final var longitudes = random.doubles(size, -180, 180).toArray();
+        final var xs = new double[size];
+        final var ys = new double[size];
+        underTest.coordinatesToMapPoints(latitudes, longitudes, zoom, xs, ys);
+        final var offset = 3; // buffers not starting at zero
+        final var latitudesBuffer = DoubleBuffer.allocate(size + offset).position(offset).put(latitudes).position(offset);
+        final var longitudesBuffer = DoubleBuffer.wrap(longitudes);
+        final var xsBuffer = DoubleBuffer.allocate(size);
+        final var ysBuffer = DoubleBuffer.allocate(size + offset).position(offset);
+        // when
+        underTest.coordinatesToMapPoints(latitudesBuffer, longitudesBuffer, zoom, xsBuffer, ysBuffer);
+        // then
+        assertThat(latitudesBuffer.remaining()).isZero();
+        assertThat(longitudesBuffer.remaining()).isZero();
+        assertThat(xsBuffer.remaining()).isZero();
+        assertThat(ysBuffer.remaining()).isZero();
+        assertThat(xsBuffer.array()).containsExactly(xs);
+        assertThat(ysBuffer.array()).endsWith(ys);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test(dataProvider = "batchSizes")
+    public void vectorized_batch_conversions_must_be_consistent_with_scalar_ones (final int size)
+      {
+        // given
+        final var vectorKernel = WGS84PseudoMercatorProjection.vectorKernel();
+        assumeThat(vectorKernel).as("Vector API not available").isPresent();
+        final var underTest = new WGS84PseudoMercatorProjection(256, vectorKernel.orElseThrow());
+        final var scalar = new WGS84PseudoMercatorProjection(256, ScalarMercatorKernel.INSTANCE);
+        final var zoom = 12;
+        final var random = new Random(size);
+        final var latitudes = random.doubles(size, -85, 85).toArray();
+        final var longitudes = random.doubles(size, -180, 180).toArray();
+        final var xs = new double[size];
+        final var ys = new double[size];
+        final var expectedXs = new double[size];
+        final var expectedYs = new double[size];
+        final var latitudes2 = new double[size];
+        final var longitudes2 = new double[size];
+        final var expectedLatitudes = new double[size];
+        final var expectedLongitudes = new double[size];
+        // when
+        underTest.coordinatesToMapPoints(latitudes, longitudes, zoom, xs, ys);
+        underTest.mapPointsToCoordinates(xs, ys, zoom, latitudes2, longitudes2);
+        // then
+        scalar.coordinatesToMapPoints(latitudes, longitudes, zoom, expectedXs, expectedYs);
+        scalar.mapPointsToCoordinates(xs, ys, zoom, expectedLatitudes, expectedLongitudes);
+        assertThat(xs).containsExactly(expectedXs, within(1E-6));
+        assertThat(ys).containsExactly(expectedYs, within(1E-6));
+        assertThat(latitudes2).containsExactly(expectedLatitudes, within(1E-9));
+        assertThat(longitudes2).containsExactly(expectedLongitudes, within(1E-9));
+        assertThat(underTest.isVectorized()).isTrue();
+        assertThat(scalar.isVectorized()).isFalse();
+      }
+
+    /**********************************************************************************************************************************************************/
+    @Test
+    public void batch_conversions_must_reject_mismatched_lengths()
+      {
+        final var underTest = new WGS84PseudoMercatorProjection(256);
+        assertThatThrownBy(() -> underTest.coordinatesToMapPoints(new double[3], new double[3], 1, new double[3], new double[2]))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> underTest.mapPointsToCoordinates(new double[3], new double[2], 1, new double[3], new double[3]))
+                .isInstanceOf(IllegalArgumentException.class);
+      }
+
+    /**********************************************************************************************************************************************************/
+    @DataProvider
+    public static Object[][] batchSizes()
+      {
+        return new Object[][] { { 0 }, { 1 }, { 1000 }, { 100_000 } }; // the latter is processed in parallel chunks
+      }
+
     /**********************************************************************************************************************************************************/
     @DataProvider
     public Object[][] coordinates()